@@ -0,0 +1,95 @@
+#!/usr/bin/env bash
+#
+# Compara o cold start do backend em cada modo de execução:
+#   jvm      java -jar do jar comum (o que o Dockerfile fazia antes)
+#   aot-cds  jar extraído + código AOT (-Dspring.aot.enabled) + arquivo CDS
+#   native   executável GraalVM (só se target/commitgen existir: mvn -Pnative native:compile)
+#
+# Para cada modo mede, em RUNS execuções: tempo até o /api/health responder, latência do primeiro
+# POST /api/generate (contra um stub local da GroqCloud) e RSS após essa requisição.
+#
+# Uso: scripts/startup-benchmark.sh [RUNS]     (rodar a partir de backend/)
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+STUB_PORT=${STUB_PORT:-19099}
+JAVA=${JAVA:-java}
+WORK=target/startup-benchmark
+JAR=target/commit-message-generator-1.0.0.jar
+
+command -v curl >/dev/null || { echo "curl é necessário" >&2; exit 1; }
+command -v python3 >/dev/null || { echo "python3 é necessário (stub da GroqCloud)" >&2; exit 1; }
+
+echo "==> Build com o profile aot"
+mvn -B -q -Paot package -DskipTests
+
+echo "==> Extraindo o jar e gerando o arquivo CDS (treino com spring.context.exit=onRefresh)"
+rm -rf "$WORK" && mkdir -p "$WORK"
+"$JAVA" -Djarmode=tools -jar "$JAR" extract --destination "$WORK/app" >/dev/null
+(cd "$WORK/app" && "$JAVA" -XX:ArchiveClassesAtExit=app.jsa -Dspring.context.exit=onRefresh \
+    -Dspring.aot.enabled=true -jar commit-message-generator-1.0.0.jar \
+    --groq.api-key=training >/dev/null 2>&1)
+
+# Stub da GroqCloud: responde na hora, para medir só o backend
+python3 - "$STUB_PORT" <<'EOF' &
+import http.server, json, sys
+body = json.dumps({"choices": [{"message": {"content": "1. feat: add benchmark"}}],
+                   "usage": {"prompt_tokens": 100, "completion_tokens": 8}}).encode()
+class Handler(http.server.BaseHTTPRequestHandler):
+    def do_POST(self):
+        self.rfile.read(int(self.headers.get("Content-Length", 0)))
+        self.send_response(200)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+    def log_message(self, *args):
+        pass
+http.server.ThreadingHTTPServer(("127.0.0.1", int(sys.argv[1])), Handler).serve_forever()
+EOF
+STUB_PID=$!
+trap 'kill $STUB_PID 2>/dev/null || true' EXIT
+
+APP_ARGS=(--server.port="$PORT" --groq.api-key=benchmark --groq.base-url="http://127.0.0.1:$STUB_PORT"
+          --groq.http.prewarm-connections=0)
+
+declare -A COMMANDS=(
+    [jvm]="$JAVA -jar $JAR"
+    [aot-cds]="$JAVA -XX:SharedArchiveFile=$WORK/app/app.jsa -Dspring.aot.enabled=true -jar $WORK/app/commit-message-generator-1.0.0.jar"
+)
+MODES=(jvm aot-cds)
+if [[ -x target/commitgen ]]; then
+    COMMANDS[native]="target/commitgen"
+    MODES+=(native)
+fi
+
+now_ms() { date +%s%3N; }
+
+median() { sort -n | awk '{a[NR]=$1} END {print (NR % 2) ? a[(NR+1)/2] : int((a[NR/2] + a[NR/2+1]) / 2)}'; }
+
+printf '\n%-8s %14s %20s %10s\n' "modo" "health (ms)" "1º /generate (ms)" "RSS (MB)"
+for mode in "${MODES[@]}"; do
+    ready=() first=() rss=()
+    for ((run = 1; run <= RUNS; run++)); do
+        start=$(now_ms)
+        ${COMMANDS[$mode]} "${APP_ARGS[@]}" >"$WORK/$mode-$run.log" 2>&1 &
+        pid=$!
+        until curl -sf -o /dev/null "http://127.0.0.1:$PORT/api/health"; do
+            kill -0 $pid 2>/dev/null || { echo "$mode não subiu, veja $WORK/$mode-$run.log" >&2; exit 1; }
+            sleep 0.01
+        done
+        ready+=($(( $(now_ms) - start )))
+        # diff único por execução para não cair no cache de respostas
+        seconds=$(curl -s -o /dev/null -w '%{time_total}' -H 'Content-Type: application/json' \
+            -d "{\"diff\": \"+ benchmark $mode $run\", \"quantity\": 1}" "http://127.0.0.1:$PORT/api/generate")
+        first+=($(awk -v s="$seconds" 'BEGIN {printf "%d", s * 1000}'))
+        rss+=($(( $(awk '/VmRSS/ {print $2}' /proc/$pid/status) / 1024 )))
+        kill $pid && wait $pid 2>/dev/null || true
+    done
+    printf '%-8s %14s %20s %10s\n' "$mode" \
+        "$(printf '%s\n' "${ready[@]}" | median)" \
+        "$(printf '%s\n' "${first[@]}" | median)" \
+        "$(printf '%s\n' "${rss[@]}" | median)"
+done
+echo "(medianas de $RUNS execuções)"
@@ -0,0 +1,133 @@
+package com.commitgen.service;
+
+import com.commitgen.dto.CommitResponse.Suggestion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Busca do prompt de sistema pré-montado, montagem do prompt de usuário e parse da resposta, sem
+ * chamar a API: diff de ~10 KB e uma resposta típica de 5 sugestões (numerada, sem numeração,
+ * que cai no fallback, e em JSON mode).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitServiceBenchmark {
+
+    static final int DIFF_CHARS = 10 * 1024;
+
+    private static final PromptTemplateRegistry PROMPTS = PromptTemplateRegistry.classpath();
+
+    private static final String NUMBERED_RESPONSE = """
+            1. feat(auth): allow login with one-time codes
+            2. fix(auth): prevent session reuse after logout
+            3. refactor(user): extract password policy into its own service
+            4. test(auth): cover expired one-time codes
+            5. chore: update security dependencies
+            """;
+
+    private static final String JSON_RESPONSE = """
+            {"suggestions": [
+              {"type": "feat", "scope": "auth", "description": "allow login with one-time codes"},
+              {"type": "fix", "scope": "auth", "description": "prevent session reuse after logout"},
+              {"type": "refactor", "scope": "user", "description": "extract password policy into its own service"},
+              {"type": "test", "scope": "auth", "description": "cover expired one-time codes"},
+              {"type": "chore", "scope": null, "description": "update security dependencies"}
+            ]}
+            """;
+
+    private CommitService commitService;
+    private String diff;
+    private String unnumberedResponse;
+
+    @Setup
+    public void setUp() {
+        commitService = newCommitService();
+        diff = diffOf(DIFF_CHARS);
+        unnumberedResponse = NUMBERED_RESPONSE.replaceAll("(?m)^\\d+\\.\\s+", "");
+    }
+
+    @Benchmark
+    public PromptTemplateRegistry.SystemPrompt systemPrompt() {
+        return PROMPTS.systemPrompt("conventional", "en");
+    }
+
+    @Benchmark
+    public String buildUserPrompt() {
+        return commitService.buildUserPrompt(diff, 3, 8000, CommitService.OutputFormat.TEXT);
+    }
+
+    @Benchmark
+    public String sanitizeDiff() {
+        return commitService.sanitizeDiff(diff);
+    }
+
+    @Benchmark
+    public List<Suggestion> parseResponse() {
+        return commitService.parseResponse(NUMBERED_RESPONSE, "conventional");
+    }
+
+    @Benchmark
+    public List<Suggestion> parseResponseFallback() {
+        return commitService.parseResponse(unnumberedResponse, "conventional");
+    }
+
+    @Benchmark
+    public List<Suggestion> parseJsonResponse() {
+        return commitService.parseJsonResponse(JSON_RESPONSE, "conventional");
+    }
+
+    @Benchmark
+    public Suggestion parseSuggestion() {
+        return commitService.parseSuggestion("feat(auth): allow login with one-time codes", "conventional");
+    }
+
+    static CommitService newCommitService() {
+        return new CommitService(null,
+                new DiffCompactor(1, 150, 12000, DiffCompactor.DEFAULT_GENERATED_PATTERNS.split(",")),
+                new TokenEstimator(), GenerationMetrics.noop(), PROMPTS);
+    }
+
+    /**
+     * Diff unificado com vários arquivos e hunks, com pelo menos {@code chars} caracteres.
+     */
+    static String diffOf(int chars) {
+        StringBuilder diff = new StringBuilder(chars + 512);
+        for (int file = 0; diff.length() < chars; file++) {
+            String path = "src/main/java/com/example/module" + file + "/Service" + file + ".java";
+            diff.append("diff --git a/").append(path).append(" b/").append(path).append('\n')
+                    .append("index 3f2a1b4..9c8d7e6 100644\n")
+                    .append("--- a/").append(path).append('\n')
+                    .append("+++ b/").append(path).append('\n');
+            for (int hunk = 0; hunk < 4 && diff.length() < chars; hunk++) {
+                diff.append("@@ -").append(hunk * 40 + 10).append(",7 +").append(hunk * 40 + 10)
+                        .append(",9 @@ public class Service").append(file).append(" {\n")
+                        .append("     private final Repository repository;\n")
+                        .append("     private final Clock clock;\n")
+                        .append("-    public Result handle(Request request) {\n")
+                        .append("+    public Result handle(Request request, Context context) {\n")
+                        .append("+        validator.validate(request, context.locale());\n")
+                        .append("+        log.debug(\"Handling {} for {}\", request.id(), context.user());\n")
+                        .append("         Entity entity = repository.findById(request.id()).orElseThrow();\n")
+                        .append("-        return Result.of(entity);\n")
+                        .append("+        return Result.of(entity, clock.instant());\n")
+                        .append("     }\n");
+            }
+        }
+        return diff.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.commitgen.service;
+
+import com.commitgen.dto.CommitRequest;
+import com.commitgen.service.RateLimitService.RateLimitInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limit com 4 threads disputando os mesmos clientes. Depois do aquecimento quase todos
+ * estão no limite, então {@code consume} mede principalmente o caminho de recusa, o mais comum
+ * sob abuso; {@code consumeHotClient} concentra todas as threads num único IP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RateLimitServiceBenchmark {
+
+    // abaixo do limite de buckets em cache, para não medir a evicção do Caffeine
+    private static final int CLIENTS = 8192;
+
+    @Param({"bucket4j", "gcra"})
+    public String backend;
+
+    @Param({"requests", "weighted"})
+    public String mode;
+
+    private RateLimitService rateLimitService;
+    private String[] clients;
+    private CommitRequest request;
+
+    @Setup
+    public void setUp() {
+        RateLimitBackend store = switch (backend) {
+            case "bucket4j" -> new BucketRateLimitBackend();
+            case "gcra" -> new GcraRateLimitBackend(1 << 16);
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+        rateLimitService = new RateLimitService(store, CommitServiceBenchmark.newCommitService(), mode, 1000, 40_000);
+
+        clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "10.0." + (i >> 8) + "." + (i & 0xff);
+        }
+        request = new CommitRequest();
+        request.setDiff(CommitServiceBenchmark.diffOf(2048));
+    }
+
+    @Benchmark
+    public RateLimitInfo consume() {
+        return rateLimitService.consume(randomClient(), request);
+    }
+
+    @Benchmark
+    public RateLimitInfo consumeHotClient() {
+        return rateLimitService.consume(clients[0], request);
+    }
+
+    @Benchmark
+    public RateLimitInfo getInfo() {
+        return rateLimitService.getInfo(randomClient());
+    }
+
+    private String randomClient() {
+        return clients[ThreadLocalRandom.current().nextInt(CLIENTS)];
+    }
+}
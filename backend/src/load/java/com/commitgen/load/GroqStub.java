@@ -0,0 +1,193 @@
+package com.commitgen.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
+
+/**
+ * Stub em processo de {@code POST /chat/completions} da GroqCloud: responde depois de uma
+ * latência sorteada, devolve 5xx e 429 (com {@code retry-after}) nas taxas configuradas e,
+ * com {@code "stream": true}, envia a resposta em chunks SSE espaçados ao longo da latência.
+ */
+final class GroqStub implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<String> SUGGESTIONS = List.of(
+            "feat(auth): allow login with one-time codes",
+            "fix(auth): prevent session reuse after logout",
+            "refactor(user): extract password policy",
+            "test(auth): cover expired one-time codes",
+            "chore: update security dependencies");
+
+    private static final String JSON_SUGGESTIONS = """
+            {"suggestions": [
+              {"type": "feat", "scope": "auth", "description": "allow login with one-time codes"},
+              {"type": "fix", "scope": "auth", "description": "prevent session reuse after logout"},
+              {"type": "refactor", "scope": "user", "description": "extract password policy"},
+              {"type": "test", "scope": "auth", "description": "cover expired one-time codes"},
+              {"type": "chore", "scope": null, "description": "update security dependencies"}
+            ]}""";
+
+    /**
+     * @param errorRate           fração das chamadas que recebe 503
+     * @param tooManyRequestsRate fração das chamadas que recebe 429
+     * @param retryAfter          valor do {@code retry-after} nos 429
+     * @param streamChunks        chunks SSE por resposta em streaming
+     */
+    record Settings(LatencyDistribution latency, double errorRate, double tooManyRequestsRate,
+                    Duration retryAfter, int streamChunks) {
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder streamed = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder injectedTooManyRequests = new LongAdder();
+
+    private GroqStub(Settings settings, HttpServer server) {
+        this.settings = settings;
+        this.server = server;
+    }
+
+    static GroqStub start(Settings settings) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        GroqStub stub = new GroqStub(settings, server);
+        server.setExecutor(stub.executor);
+        server.createContext("/chat/completions", stub::handle);
+        server.start();
+        return stub;
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Contadores desde o start, para comparar chamadas ao upstream com requisições recebidas
+     * (retries, hedge e map-reduce multiplicam as chamadas).
+     */
+    Map<String, Long> stats() {
+        return Map.of(
+                "calls", calls.sum(),
+                "streamed", streamed.sum(),
+                "injected_5xx", injectedErrors.sum(),
+                "injected_429", injectedTooManyRequests.sum());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            calls.increment();
+            JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+            RandomGenerator random = ThreadLocalRandom.current();
+            long latencyNanos = settings.latency().sampleNanos(random);
+
+            double roll = random.nextDouble();
+            if (roll < settings.tooManyRequestsRate()) {
+                injectedTooManyRequests.increment();
+                sleep(latencyNanos / 10); // recusas do upstream chegam rápido
+                exchange.getResponseHeaders().add("retry-after",
+                        String.valueOf(settings.retryAfter().toMillis() / 1000.0));
+                sendJson(exchange, 429, "{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"tokens\"}}");
+                return;
+            }
+            if (roll < settings.tooManyRequestsRate() + settings.errorRate()) {
+                injectedErrors.increment();
+                sleep(latencyNanos);
+                sendJson(exchange, 503, "{\"error\":{\"message\":\"Service unavailable\"}}");
+                return;
+            }
+
+            String content = content(request.path("messages"), request.path("response_format").has("type"));
+            if (request.path("stream").asBoolean()) {
+                streamed.increment();
+                stream(exchange, content, latencyNanos);
+            } else {
+                sleep(latencyNanos);
+                sendJson(exchange, 200, MAPPER.writeValueAsString(Map.of(
+                        "choices", List.of(Map.of("message", Map.of("role", "assistant", "content", content))),
+                        "usage", usage(content))));
+            }
+        }
+    }
+
+    // a etapa map do map-reduce pede bullets; as demais, a lista numerada ou, em JSON mode, o objeto
+    private static String content(JsonNode messages, boolean json) {
+        String system = messages.path(0).path("content").asText();
+        if (system.contains("one part of a larger git diff")) {
+            return "- Adds one-time code login to the auth module\n- Invalidates sessions on logout";
+        }
+        if (json) {
+            return JSON_SUGGESTIONS;
+        }
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < SUGGESTIONS.size(); i++) {
+            list.append(i + 1).append(". ").append(SUGGESTIONS.get(i)).append('\n');
+        }
+        return list.toString();
+    }
+
+    private static Map<String, Object> usage(String content) {
+        return Map.of("prompt_tokens", 600, "completion_tokens", content.length() / 4);
+    }
+
+    // chunks espaçados igualmente ao longo da latência sorteada; o último traz o usage em x_groq
+    private void stream(HttpExchange exchange, String content, long latencyNanos) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        int chunks = Math.max(1, settings.streamChunks());
+        int step = (content.length() + chunks - 1) / chunks;
+        for (int i = 0; i < chunks; i++) {
+            sleep(latencyNanos / chunks);
+            String delta = content.substring(Math.min(content.length(), i * step),
+                    Math.min(content.length(), (i + 1) * step));
+            Map<String, Object> chunk = i < chunks - 1
+                    ? Map.of("choices", List.of(Map.of("delta", Map.of("content", delta))))
+                    : Map.of("choices", List.of(Map.of("delta", Map.of("content", delta))),
+                    "x_groq", Map.of("usage", usage(content)));
+            out.write(("data: " + MAPPER.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,62 @@
+package com.commitgen.load;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * Latência simulada do upstream.
+ * <ul>
+ *   <li>{@code fixed:800ms}</li>
+ *   <li>{@code uniform:200ms-1500ms}</li>
+ *   <li>{@code lognormal:800ms,p99=3s} — mediana e p99; cauda longa, como a de um LLM real</li>
+ * </ul>
+ */
+interface LatencyDistribution {
+
+    // quantil 0,99 da normal padrão
+    double Z_99 = 2.3263;
+
+    long sampleNanos(RandomGenerator random);
+
+    static LatencyDistribution parse(String spec) {
+        int colon = spec.indexOf(':');
+        String kind = colon < 0 ? spec : spec.substring(0, colon);
+        String args = colon < 0 ? "" : spec.substring(colon + 1);
+        return switch (kind) {
+            case "fixed" -> {
+                long nanos = nanos(args);
+                yield random -> nanos;
+            }
+            case "uniform" -> {
+                String[] range = args.split("-", 2);
+                long min = nanos(range[0]);
+                long max = nanos(range[1]);
+                if (max < min) {
+                    throw new IllegalArgumentException("uniform latency max is below min: " + spec);
+                }
+                yield random -> min + (max > min ? random.nextLong(max - min + 1) : 0);
+            }
+            case "lognormal" -> {
+                String[] parts = args.split(",p99=", 2);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected lognormal:<median>,p99=<p99>, got " + spec);
+                }
+                double median = nanos(parts[0]);
+                double sigma = Math.log(nanos(parts[1]) / median) / Z_99;
+                if (!(sigma >= 0)) {
+                    throw new IllegalArgumentException("lognormal p99 is below the median: " + spec);
+                }
+                yield random -> (long) (median * Math.exp(sigma * random.nextGaussian()));
+            }
+            default -> throw new IllegalArgumentException(
+                    "Unknown latency distribution '" + kind + "' (expected fixed, uniform or lognormal)");
+        };
+    }
+
+    private static long nanos(String value) {
+        Duration duration = DurationStyle.detectAndParse(value.trim());
+        return duration.toNanos();
+    }
+}
@@ -0,0 +1,341 @@
+package com.commitgen.load;
+
+import com.commitgen.CommitGenApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Teste de carga de ponta a ponta sem gastar cota da GroqCloud: sobe o {@link GroqStub} e o
+ * backend inteiro apontando para ele, e dispara {@code /api/generate} (ou {@code /stream}) num
+ * modelo aberto. As chegadas seguem um processo de Poisson na taxa pedida, independente das
+ * respostas, e a latência conta a partir do instante planejado de cada envio. Assim, um backend
+ * lento não reduz a carga que recebe e a fila aparece nos números.
+ * <p>
+ * Opções {@code --nome=valor} (padrões em {@link #DEFAULTS}); {@code --app.<propriedade>=valor}
+ * repassa propriedades ao backend, ex.: {@code --app.admission.max-concurrent=32}.
+ */
+public final class LoadTest {
+
+    static final Map<String, String> DEFAULTS = defaults();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static Map<String, String> defaults() {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("rate", "20");                                // requisições por segundo
+        defaults.put("arrival", "poisson");                        // poisson | uniform
+        defaults.put("duration", "60s");                           // janela medida
+        defaults.put("warmup", "10s");                             // carga antes da janela, descartada
+        defaults.put("endpoint", "generate");                      // generate | stream
+        defaults.put("quantity", "3");
+        defaults.put("diff-chars", "2000");
+        defaults.put("timeout", "60s");
+        defaults.put("stub-latency", "lognormal:700ms,p99=3s");    // ver LatencyDistribution
+        defaults.put("stub-error-rate", "0.01");                   // 503
+        defaults.put("stub-429-rate", "0.02");
+        defaults.put("stub-retry-after", "200ms");
+        defaults.put("stub-chunks", "5");
+        defaults.put("result", "target/load-result.json");
+        return defaults;
+    }
+
+    private final Map<String, String> options;
+    private final Map<String, String> appProperties;
+
+    private final LongAdder sent = new LongAdder();
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LatencyRecorder okLatencies = new LatencyRecorder();
+    private final LatencyRecorder allLatencies = new LatencyRecorder();
+    private final LatencyRecorder firstByteLatencies = new LatencyRecorder();
+
+    private LoadTest(Map<String, String> options, Map<String, String> appProperties) {
+        this.options = options;
+        this.appProperties = appProperties;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        Map<String, String> appProperties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.startsWith("app.")) {
+                appProperties.put(name.substring(4), value);
+            } else if (options.containsKey(name)) {
+                options.put(name, value);
+            } else {
+                throw new IllegalArgumentException("Unknown option --" + name + "; known: " + DEFAULTS.keySet());
+            }
+        }
+        new LoadTest(options, appProperties).run();
+        // threads do backend e do HttpClient não devem segurar o processo
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        GroqStub.Settings stubSettings = new GroqStub.Settings(
+                LatencyDistribution.parse(options.get("stub-latency")),
+                Double.parseDouble(options.get("stub-error-rate")),
+                Double.parseDouble(options.get("stub-429-rate")),
+                duration("stub-retry-after"),
+                Integer.parseInt(options.get("stub-chunks")));
+
+        try (GroqStub stub = GroqStub.start(stubSettings);
+             ConfigurableApplicationContext app = startBackend(stub)) {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            String path = "stream".equals(options.get("endpoint")) ? "/api/generate/stream" : "/api/generate";
+            System.out.printf("Backend on :%d, stub on %s; driving %s at %s req/s (%s) for %s after %s warmup%n",
+                    port, stub.baseUrl(), path, options.get("rate"), options.get("arrival"),
+                    options.get("duration"), options.get("warmup"));
+
+            drive(URI.create("http://127.0.0.1:" + port + path));
+            report(stub.stats());
+        }
+    }
+
+    private ConfigurableApplicationContext startBackend(GroqStub stub) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("groq.api-key", "load-test");
+        properties.put("groq.base-url", stub.baseUrl());
+        properties.put("spring.main.banner-mode", "off");
+        // log por requisição distorce a medida
+        properties.put("logging.level.com.commitgen", "ERROR");
+        properties.putAll(appProperties);
+        return SpringApplication.run(CommitGenApplication.class, properties.entrySet().stream()
+                .map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+                .toArray(String[]::new));
+    }
+
+    private void drive(URI target) {
+        double rate = Double.parseDouble(options.get("rate"));
+        boolean poisson = switch (options.get("arrival")) {
+            case "poisson" -> true;
+            case "uniform" -> false;
+            default -> throw new IllegalArgumentException("Unknown --arrival " + options.get("arrival"));
+        };
+        Duration timeout = duration("timeout");
+        String diff = diffOf(Integer.parseInt(options.get("diff-chars")));
+        int quantity = Integer.parseInt(options.get("quantity"));
+        // diffs distintos por execução e por requisição: nem cache nem single-flight entram na medida
+        long run = System.currentTimeMillis();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        long start = System.nanoTime();
+        long measureFrom = start + duration("warmup").toNanos();
+        long end = measureFrom + duration("duration").toNanos();
+        double meanGapNanos = 1e9 / rate;
+
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            double next = start;
+            for (long n = 0; ; n++) {
+                next += poisson ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos : meanGapNanos;
+                long intended = (long) next;
+                if (intended >= end) break;
+                for (long wait; (wait = intended - System.nanoTime()) > 0; ) {
+                    LockSupport.parkNanos(wait);
+                }
+                boolean measured = intended >= measureFrom;
+                String body = requestBody(diff, run, n, quantity);
+                String ip = "10." + ((n >> 16) & 255) + "." + ((n >> 8) & 255) + "." + (n & 255);
+                HttpRequest request = HttpRequest.newBuilder(target)
+                        .timeout(timeout)
+                        .header("Content-Type", "application/json")
+                        // um IP por requisição: o rate limit por IP roda, mas não recusa a carga
+                        .header("X-Forwarded-For", ip)
+                        // classe bulk, a de SLO mais longo: mede a fila em vez de descartar cedo
+                        .header("X-Request-Priority", "bulk")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+                requests.submit(() -> send(client, request, intended, measured));
+            }
+            System.out.printf("All requests sent; waiting up to %s for in-flight responses%n", timeout);
+        }
+    }
+
+    private void send(HttpClient client, HttpRequest request, long intended, boolean measured) {
+        String outcome;
+        long firstByte = -1;
+        boolean ok = false;
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (body.read() >= 0) {
+                    firstByte = System.nanoTime();
+                }
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            outcome = String.valueOf(response.statusCode());
+            ok = response.statusCode() == 200;
+        } catch (HttpTimeoutException e) {
+            outcome = "timeout";
+        } catch (IOException e) {
+            outcome = "io_error";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long done = System.nanoTime();
+        if (!measured) return;
+
+        sent.increment();
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+        allLatencies.record(done - intended);
+        if (ok) {
+            okLatencies.record(done - intended);
+            if (firstByte > 0) {
+                firstByteLatencies.record(firstByte - intended);
+            }
+        }
+    }
+
+    private void report(Map<String, Long> stubStats) throws IOException {
+        double seconds = duration("duration").toNanos() / 1e9;
+        long total = sent.sum();
+        long ok = okLatencies.count();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("options", options);
+        result.put("app_properties", appProperties);
+        result.put("requests", total);
+        result.put("offered_rate", total / seconds);
+        result.put("throughput_ok", ok / seconds);
+        Map<String, Long> outcomeCounts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> outcomeCounts.put(outcome, count.sum()));
+        result.put("outcomes", outcomeCounts);
+        result.put("latency_ok_ms", okLatencies.summary());
+        result.put("latency_all_ms", allLatencies.summary());
+        if ("stream".equals(options.get("endpoint"))) {
+            result.put("first_byte_ok_ms", firstByteLatencies.summary());
+        }
+        result.put("upstream", stubStats);
+        result.put("upstream_calls_per_request", total > 0 ? (double) stubStats.get("calls") / total : 0);
+
+        System.out.println();
+        System.out.printf("Requests        %d in %.0fs (%.1f/s offered), %d ok (%.1f/s)%n",
+                total, seconds, total / seconds, ok, ok / seconds);
+        System.out.printf("Latency ok      %s%n", format(okLatencies.summary()));
+        System.out.printf("Latency all     %s%n", format(allLatencies.summary()));
+        if (result.containsKey("first_byte_ok_ms")) {
+            System.out.printf("First byte ok   %s%n", format(firstByteLatencies.summary()));
+        }
+        System.out.print("Outcomes       ");
+        outcomeCounts.forEach((outcome, count) ->
+                System.out.printf(" %s=%d (%.1f%%)", outcome, count, 100.0 * count / Math.max(1, total)));
+        System.out.println();
+        System.out.printf("Upstream        %s, %.2f calls per request%n",
+                stubStats, result.get("upstream_calls_per_request"));
+
+        Path path = Path.of(options.get("result"));
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        MAPPER.writeValue(path.toFile(), result);
+        System.out.println("Result saved to " + path.toAbsolutePath());
+    }
+
+    private static String format(Map<String, Double> summary) {
+        StringBuilder line = new StringBuilder();
+        summary.forEach((name, value) -> line.append(String.format("%s=%.0f ", name, value)));
+        return line.append("ms").toString();
+    }
+
+    private Duration duration(String option) {
+        return DurationStyle.detectAndParse(options.get(option));
+    }
+
+    private static String requestBody(String diff, long run, long n, int quantity) {
+        try {
+            return MAPPER.writeValueAsString(Map.of(
+                    "diff", "+ // load " + run + "-" + n + "\n" + diff,
+                    "quantity", quantity,
+                    "style", "conventional",
+                    "language", "en"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String diffOf(int chars) {
+        StringBuilder diff = new StringBuilder("diff --git a/src/App.java b/src/App.java\n"
+                + "--- a/src/App.java\n+++ b/src/App.java\n@@ -10,6 +10,40 @@ public class App {\n");
+        for (int line = 0; diff.length() < chars; line++) {
+            diff.append("+    private final Handler handler").append(line)
+                    .append(" = new Handler(config.timeout(), registry);\n");
+        }
+        return diff.toString();
+    }
+
+    /**
+     * Latências em nanos; percentis exatos (nearest-rank) sobre todas as amostras.
+     */
+    private static final class LatencyRecorder {
+
+        private long[] samples = new long[1024];
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+        }
+
+        synchronized long count() {
+            return size;
+        }
+
+        synchronized Map<String, Double> summary() {
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            Map<String, Double> summary = new LinkedHashMap<>();
+            summary.put("p50", percentile(sorted, 0.50));
+            summary.put("p90", percentile(sorted, 0.90));
+            summary.put("p99", percentile(sorted, 0.99));
+            summary.put("p99.9", percentile(sorted, 0.999));
+            summary.put("max", sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0);
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(quantile * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+}
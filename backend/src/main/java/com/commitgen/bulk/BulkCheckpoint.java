@@ -0,0 +1,101 @@
+package com.commitgen.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checkpoint JSONL do modo bulk: uma linha por commit, gravada (e com flush) assim que o
+ * commit termina. Ao reabrir, uma última linha cortada por crash é descartada e os commits
+ * com resultado final são pulados. Se um commit aparece mais de uma vez, vale a última linha.
+ */
+@Slf4j
+final class BulkCheckpoint implements Closeable {
+
+    private final ObjectMapper objectMapper;
+    private final BufferedWriter writer;
+    private final Set<String> completed;
+
+    private BulkCheckpoint(ObjectMapper objectMapper, BufferedWriter writer, Set<String> completed) {
+        this.objectMapper = objectMapper;
+        this.writer = writer;
+        this.completed = completed;
+    }
+
+    static BulkCheckpoint open(Path file, ObjectMapper objectMapper) throws IOException {
+        Set<String> completed = new HashSet<>();
+        if (Files.exists(file)) {
+            truncatePartialLine(file);
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.isBlank()) continue;
+                try {
+                    // só commit e status importam aqui
+                    JsonNode result = objectMapper.readTree(line);
+                    String commit = result.path("commit").asText();
+                    if (BulkResult.ERROR.equals(result.path("status").asText())) {
+                        completed.remove(commit);
+                    } else {
+                        completed.add(commit);
+                    }
+                } catch (JsonProcessingException e) {
+                    log.warn("Ignoring unreadable checkpoint line: {}", e.getOriginalMessage());
+                }
+            }
+            log.info("Resuming from {}: {} commits already done", file, completed.size());
+        } else if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new BulkCheckpoint(objectMapper, writer, completed);
+    }
+
+    Set<String> completed() {
+        return Set.copyOf(completed);
+    }
+
+    synchronized void append(BulkResult result) throws IOException {
+        writer.write(objectMapper.writeValueAsString(result));
+        writer.newLine();
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    // Corta o que vier depois da última quebra de linha (escrita interrompida no meio)
+    private static void truncatePartialLine(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer oneByte = ByteBuffer.allocate(1);
+            long position = end;
+            while (position > 0) {
+                oneByte.clear();
+                channel.read(oneByte, position - 1);
+                if (oneByte.get(0) == '\n') break;
+                position--;
+            }
+            if (position < end) {
+                log.warn("Discarding {} bytes of a partially written checkpoint line", end - position);
+                channel.truncate(position);
+            }
+        }
+    }
+}
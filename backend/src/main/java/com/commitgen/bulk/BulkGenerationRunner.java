@@ -0,0 +1,145 @@
+package com.commitgen.bulk;
+
+import com.commitgen.config.BulkProperties;
+import com.commitgen.dto.CommitRequest;
+import com.commitgen.dto.CommitResponse;
+import com.commitgen.service.CommitService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Modo bulk ({@code --spring.profiles.active=bulk}): lê os commits de {@code bulk.range} no
+ * repositório local, gera mensagens com {@code bulk.workers} gerações em paralelo e grava cada
+ * resultado no checkpoint JSONL. Reexecutar com o mesmo {@code bulk.output} continua de onde parou.
+ */
+@Slf4j
+@Component
+@Profile("bulk")
+@EnableConfigurationProperties(BulkProperties.class)
+@RequiredArgsConstructor
+public class BulkGenerationRunner implements ApplicationRunner {
+
+    private static final int PROGRESS_EVERY = 50;
+
+    private final CommitService commitService;
+    private final BulkProperties properties;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        Summary summary = generate();
+        log.info("Bulk generation finished in {}s: {} ok, {} failed, {} skipped, {} already done ({} commits/min)",
+                summary.elapsedMillis() / 1000, summary.succeeded(), summary.failed(), summary.skipped(),
+                summary.alreadyDone(), String.format("%.1f", summary.commitsPerMinute()));
+    }
+
+    Summary generate() throws IOException {
+        long startTime = System.currentTimeMillis();
+        int workers = Math.max(1, properties.getWorkers());
+        LongAdder succeeded = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder skipped = new LongAdder();
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        Set<String> done;
+
+        log.info("Bulk generation: repository={}, range={}, output={}, workers={}",
+                properties.getRepository(), properties.getRange(), properties.getOutput(), workers);
+
+        try (BulkCheckpoint checkpoint = BulkCheckpoint.open(properties.getOutput(), objectMapper);
+             GitDiffReader reader = new GitDiffReader(properties.getRepository());
+             ExecutorService executor = Executors.newFixedThreadPool(
+                     workers, Thread.ofVirtual().name("bulk-worker-", 0).factory())) {
+            done = checkpoint.completed();
+            // limita quantos diffs ficam em memória esperando um worker
+            Semaphore backlog = new Semaphore(workers * 2);
+
+            reader.forEachCommit(properties.getRange(), properties.isIncludeMerges(), properties.getMaxDiffChars(),
+                    done::contains, commit -> {
+                        if (writeFailure.get() != null) throw writeFailure.get();
+                        backlog.acquireUninterruptibly();
+                        executor.execute(() -> {
+                            try {
+                                BulkResult result = process(commit);
+                                checkpoint.append(result);
+                                switch (result.status()) {
+                                    case BulkResult.OK -> succeeded.increment();
+                                    case BulkResult.SKIPPED -> skipped.increment();
+                                    default -> failed.increment();
+                                }
+                                logProgress(succeeded.sum() + failed.sum() + skipped.sum(), startTime);
+                            } catch (IOException e) {
+                                writeFailure.compareAndSet(null, e);
+                            } finally {
+                                backlog.release();
+                            }
+                        });
+                    });
+        }
+        if (writeFailure.get() != null) {
+            throw new UncheckedIOException("Failed to write checkpoint " + properties.getOutput(), writeFailure.get());
+        }
+
+        return new Summary(succeeded.sum(), failed.sum(), skipped.sum(), done.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    private BulkResult process(GitDiffReader.CommitDiff commit) {
+        if (commit.diff() == null) {
+            return BulkResult.failed(BulkResult.SKIPPED, commit.id(), commit.message(),
+                    "Diff larger than " + properties.getMaxDiffChars() + " chars");
+        }
+        if (commit.diff().isBlank()) {
+            return BulkResult.failed(BulkResult.SKIPPED, commit.id(), commit.message(), "Empty diff");
+        }
+
+        CommitRequest request = new CommitRequest();
+        request.setDiff(commit.diff());
+        request.setStyle(properties.getStyle());
+        request.setLanguage(properties.getLanguage());
+        request.setQuantity(properties.getQuantity());
+        try {
+            CommitResponse response = commitService.generateCommitMessages(request);
+            return BulkResult.ok(commit.id(), commit.message(), response.getSuggestions(),
+                    response.getModel(), response.getProcessingTimeMs());
+        } catch (RuntimeException e) {
+            log.warn("Bulk generation failed for {}: {}", commit.id(), e.getMessage());
+            return BulkResult.failed(BulkResult.ERROR, commit.id(), commit.message(), e.getMessage());
+        }
+    }
+
+    private static void logProgress(long processed, long startTime) {
+        if (processed % PROGRESS_EVERY == 0) {
+            log.info("Bulk progress: {} commits ({} commits/min)", processed,
+                    String.format("%.1f", perMinute(processed, System.currentTimeMillis() - startTime)));
+        }
+    }
+
+    private static double perMinute(long commits, long elapsedMillis) {
+        return elapsedMillis == 0 ? 0 : commits * 60_000.0 / elapsedMillis;
+    }
+
+    /**
+     * Resultado de uma execução; {@code alreadyDone} são os commits pulados pelo checkpoint.
+     */
+    record Summary(long succeeded, long failed, long skipped, long alreadyDone, long elapsedMillis) {
+
+        double commitsPerMinute() {
+            return perMinute(succeeded + failed + skipped, elapsedMillis);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.commitgen.bulk;
+
+import com.commitgen.dto.CommitResponse.Suggestion;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Uma linha do checkpoint JSONL do modo bulk.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkResult(String commit, String status, String originalMessage,
+                         List<Suggestion> suggestions, String model, String error, Long processingTimeMs) {
+
+    public static final String OK = "ok";
+    // Erros são tentados de novo na próxima execução; ok e skipped, não
+    public static final String ERROR = "error";
+    public static final String SKIPPED = "skipped";
+
+    static BulkResult ok(String commit, String originalMessage, List<Suggestion> suggestions,
+                         String model, long processingTimeMs) {
+        return new BulkResult(commit, OK, originalMessage, suggestions, model, null, processingTimeMs);
+    }
+
+    static BulkResult failed(String status, String commit, String originalMessage, String error) {
+        return new BulkResult(commit, status, originalMessage, null, null, error, null);
+    }
+}
@@ -0,0 +1,135 @@
+package com.commitgen.bulk;
+
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+/**
+ * Lê commits e seus diffs direto do object store com JGit, sem chamar o binário do git.
+ * Cada commit é comparado com o primeiro pai (ou com a árvore vazia, no commit raiz).
+ * Não é thread-safe: um leitor por thread.
+ */
+public class GitDiffReader implements AutoCloseable {
+
+    private final Repository repository;
+
+    public GitDiffReader(Path path) throws IOException {
+        this.repository = new FileRepositoryBuilder()
+                .findGitDir(path.toFile())
+                .setMustExist(true)
+                .build();
+    }
+
+    /**
+     * Percorre {@code range} do commit mais antigo para o mais novo.
+     *
+     * @param range "A..B" ou uma revisão só (todo o histórico até ela)
+     * @param skip  commits já processados; o diff deles nem é montado
+     */
+    public void forEachCommit(String range, boolean includeMerges, int maxDiffChars,
+                              Predicate<String> skip, CommitVisitor visitor) throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.sort(RevSort.TOPO, true);
+            walk.sort(RevSort.REVERSE, true);
+            int separator = range.indexOf("..");
+            if (separator >= 0) {
+                walk.markStart(walk.parseCommit(resolve(range.substring(separator + 2))));
+                walk.markUninteresting(walk.parseCommit(resolve(range.substring(0, separator))));
+            } else {
+                walk.markStart(walk.parseCommit(resolve(range)));
+            }
+
+            for (RevCommit commit : walk) {
+                if (commit.getParentCount() > 1 && !includeMerges) continue;
+                if (skip.test(commit.getName())) continue;
+                visitor.visit(new CommitDiff(commit.getName(), commit.getFullMessage(),
+                        diff(walk, commit, maxDiffChars)));
+            }
+        }
+    }
+
+    private ObjectId resolve(String revision) throws IOException {
+        ObjectId id = repository.resolve(revision.isBlank() ? "HEAD" : revision);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown revision: " + revision);
+        }
+        return id;
+    }
+
+    // null quando passa de maxDiffChars
+    private String diff(RevWalk walk, RevCommit commit, int maxDiffChars) throws IOException {
+        BoundedBuffer out = new BoundedBuffer(maxDiffChars);
+        try (DiffFormatter formatter = new DiffFormatter(out)) {
+            formatter.setRepository(repository);
+            formatter.setDiffComparator(RawTextComparator.DEFAULT);
+            formatter.setDetectRenames(true);
+            RevCommit parent = commit.getParentCount() > 0 ? walk.parseCommit(commit.getParent(0)) : null;
+            formatter.format(parent != null ? parent.getTree() : null, commit.getTree());
+            formatter.flush();
+        } catch (DiffTooLargeException e) {
+            return null;
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        repository.close();
+    }
+
+    /**
+     * Um commit do intervalo; {@code diff} é null quando passou do limite de tamanho.
+     */
+    public record CommitDiff(String id, String message, String diff) {
+    }
+
+    @FunctionalInterface
+    public interface CommitVisitor {
+        void visit(CommitDiff commit) throws IOException;
+    }
+
+    private static final class DiffTooLargeException extends IOException {
+        DiffTooLargeException() {
+            super("Diff too large");
+        }
+    }
+
+    private static final class BoundedBuffer extends OutputStream {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final int limit;
+
+        BoundedBuffer(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (buffer.size() + len > limit) throw new DiffTooLargeException();
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (buffer.size() + 1 > limit) throw new DiffTooLargeException();
+            buffer.write(b);
+        }
+
+        String toString(Charset charset) {
+            return buffer.toString(charset);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.commitgen.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Modo bulk (profile {@code bulk}): gera mensagens para um intervalo de commits
+ * de um repositório local, sem subir o servidor web.
+ */
+@Data
+@ConfigurationProperties(prefix = "bulk")
+public class BulkProperties {
+
+    private Path repository = Path.of(".");
+
+    // "A..B" (commits de B que não estão em A) ou uma revisão só (todo o histórico até ela)
+    private String range = "HEAD";
+
+    // JSONL com um resultado por commit; reexecutar continua de onde parou
+    private Path output = Path.of("commitgen-bulk.jsonl");
+
+    private int workers = 4;
+
+    private boolean includeMerges = false;
+
+    // Diffs maiores que isso nem são montados por inteiro; o commit é marcado como "skipped"
+    private int maxDiffChars = 1_000_000;
+
+    private String style = "conventional";
+    private String language = "en";
+    private int quantity = 1;
+}
@@ -0,0 +1,45 @@
+package com.commitgen.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Endpoints OpenAI-compatíveis usados pelo roteador. Lista vazia = apenas o endpoint
+ * definido em {@code groq.base-url}/{@code groq.api-key}/{@code groq.model}.
+ */
+@Data
+@ConfigurationProperties(prefix = "llm")
+public class LlmProperties {
+
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    // Endpoint sem amostra há mais que isso recebe uma requisição de sondagem
+    private Duration probeInterval = Duration.ofSeconds(10);
+
+    // Meia-vida da taxa de erro de um endpoint
+    private Duration errorDecay = Duration.ofSeconds(30);
+
+    private CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
+    @Data
+    public static class Endpoint {
+        private String name;
+        private String baseUrl;
+        private String apiKey;
+        private String model;
+    }
+
+    @Data
+    public static class CircuitBreakerProperties {
+        // Fração de falhas na janela que abre o circuito
+        private double failureRateThreshold = 0.5;
+        private int windowSize = 20;
+        // Chamadas mínimas na janela antes de avaliar a taxa
+        private int minCalls = 10;
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,65 @@
+package com.commitgen.config;
+
+import com.commitgen.bulk.BulkResult;
+import com.commitgen.dto.BatchItemResult;
+import com.commitgen.dto.BatchRequest;
+import com.commitgen.dto.BatchResponse;
+import com.commitgen.dto.CommitRequest;
+import com.commitgen.dto.CommitResponse;
+import com.commitgen.exception.ErrorResponse;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import java.util.List;
+
+/**
+ * Hints de reflexão para o build AOT/native (profiles {@code aot} e {@code native}).
+ * Na JVM comum não têm efeito.
+ */
+@Configuration(proxyBeanMethods = false)
+@ImportRuntimeHints(NativeHintsConfig.CommitGenRuntimeHints.class)
+public class NativeHintsConfig {
+
+    // DTOs Lombok serializados pelo Jackson via getters/setters gerados
+    static final List<Class<?>> JSON_TYPES = List.of(
+            CommitRequest.class, CommitResponse.class, CommitResponse.Suggestion.class,
+            BatchRequest.class, BatchResponse.class, BatchItemResult.class,
+            ErrorResponse.class, BulkResult.class);
+
+    /*
+     * O Caffeine escolhe a implementação do cache e do nó pelo nome da classe, conforme as opções
+     * do builder (Class.forName + MethodHandles). Um builder novo ou alterado pode exigir outro
+     * par: o teste NativeHintsConfigTest falha se os caches dos services saírem desta lista.
+     */
+    static final List<String> CAFFEINE_TYPES = List.of(
+            // BucketRateLimitBackend: expireAfterAccess + maximumSize
+            "com.github.benmanes.caffeine.cache.SSMSA",
+            "com.github.benmanes.caffeine.cache.PSAMS",
+            // CommitService: expireAfterWrite + maximumWeight
+            "com.github.benmanes.caffeine.cache.SSMWW",
+            "com.github.benmanes.caffeine.cache.PSWMW");
+
+    static class CommitGenRuntimeHints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            for (Class<?> type : JSON_TYPES) {
+                hints.reflection().registerType(type,
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                        MemberCategory.INVOKE_PUBLIC_METHODS,
+                        MemberCategory.DECLARED_FIELDS);
+            }
+            for (String type : CAFFEINE_TYPES) {
+                hints.reflection().registerType(TypeReference.of(type),
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+            }
+            // Templates do PromptTemplateRegistry, lidos do classpath no startup
+            hints.resources().registerPattern("prompts/**");
+            // O Bucket4j local (LockFreeBucket) não usa reflexão; nada a registrar
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.commitgen.config;
+
+import com.commitgen.service.BucketRateLimitBackend;
+import com.commitgen.service.GcraRateLimitBackend;
+import com.commitgen.service.HazelcastRateLimitBackend;
+import com.commitgen.service.RateLimitBackend;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Escolhe o armazenamento do rate limit por IP ({@code rate-limit.backend}).
+ */
+@Slf4j
+@Configuration
+public class RateLimitConfig {
+
+    @Bean
+    public RateLimitBackend rateLimitBackend(
+            @Value("${rate-limit.backend:bucket4j}") String backend,
+            @Value("${rate-limit.gcra.capacity:" + GcraRateLimitBackend.DEFAULT_CAPACITY + "}") int capacity,
+            @Value("${rate-limit.hazelcast.cluster-name:commitgen}") String clusterName,
+            @Value("${rate-limit.hazelcast.port:5701}") int port,
+            @Value("${rate-limit.hazelcast.members:}") List<String> members,
+            @Value("${rate-limit.hazelcast.max-unsynchronized-tokens:2}") long maxUnsynchronizedTokens,
+            @Value("${rate-limit.hazelcast.max-unsynchronized-timeout:1s}") Duration maxUnsynchronizedTimeout) {
+        return switch (backend) {
+            case "bucket4j" -> new BucketRateLimitBackend();
+            case "gcra" -> {
+                GcraRateLimitBackend gcra = new GcraRateLimitBackend(capacity);
+                log.info("GCRA rate limiter: {} slots, {} MB", gcra.capacity(), gcra.memoryBytes() >> 20);
+                yield gcra;
+            }
+            // Fechado pelo Spring (close() inferido) no shutdown do contexto
+            case "hazelcast" -> HazelcastRateLimitBackend.start(
+                    HazelcastRateLimitBackend.config(clusterName, port, members),
+                    maxUnsynchronizedTokens > 0
+                            ? new DelayParameters(maxUnsynchronizedTokens, maxUnsynchronizedTimeout)
+                            : null);
+            default -> throw new IllegalStateException("Unknown rate-limit.backend: " + backend
+                    + " (expected bucket4j, gcra or hazelcast)");
+        };
+    }
+}
@@ -1,14 +1,33 @@
 package com.commitgen.config;
 
+import com.commitgen.service.CircuitBreaker;
+import com.commitgen.service.LlmEndpoint;
+import com.commitgen.service.LlmRouter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
 
+@Slf4j
 @Configuration
+@EnableConfigurationProperties(LlmProperties.class)
 public class RestClientConfig {
 
     @Value("${groq.api-key}")
@@ -17,16 +36,141 @@ public class RestClientConfig {
     @Value("${groq.base-url:https://api.groq.com/openai/v1}")
     private String baseUrl;
 
+    @Value("${groq.http.connect-timeout:10s}")
+    private Duration connectTimeout;
+
+    @Value("${groq.http.read-timeout:30s}")
+    private Duration readTimeout;
+
+    // 0 = sem limite (default do JDK)
+    @Value("${groq.http.pool-size:0}")
+    private int poolSize;
+
+    @Value("${groq.http.keep-alive:5m}")
+    private Duration keepAlive;
+
+    @Value("${groq.http.prewarm-connections:2}")
+    private int prewarmConnections;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Bean
-    public RestClient restClient() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(Duration.ofSeconds(10));
-        factory.setReadTimeout(Duration.ofSeconds(30));
+    public HttpClient groqHttpClient() {
+        configureConnectionPool();
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout);
+        if (virtualThreads) {
+            // tarefas internas do client (handshake, leitura de corpo) também em virtual threads
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public LlmRouter llmRouter(HttpClient groqHttpClient, LlmProperties properties) {
+        List<LlmEndpoint> endpoints = resolveEndpoints(properties).stream()
+                .map(endpoint -> new LlmEndpoint(endpoint.getName(), endpoint.getModel(),
+                        restClient(groqHttpClient, endpoint.getBaseUrl(), endpoint.getApiKey())))
+                .toList();
+        log.info("LLM endpoints: {}", endpoints.stream().map(LlmEndpoint::name).toList());
+        LlmProperties.CircuitBreakerProperties breaker = properties.getCircuitBreaker();
+        return new LlmRouter(endpoints, properties.getProbeInterval(), properties.getErrorDecay(),
+                new CircuitBreaker.Settings(breaker.getFailureRateThreshold(), breaker.getWindowSize(),
+                        breaker.getMinCalls(), breaker.getOpenDuration()));
+    }
+
+    /**
+     * Completa cada endpoint com os valores de {@code groq.*}; sem {@code llm.endpoints},
+     * usa só a GroqCloud com o modelo padrão.
+     */
+    private List<LlmProperties.Endpoint> resolveEndpoints(LlmProperties properties) {
+        if (properties.getEndpoints().isEmpty()) {
+            LlmProperties.Endpoint groq = new LlmProperties.Endpoint();
+            groq.setName("groq");
+            groq.setBaseUrl(baseUrl);
+            groq.setApiKey(apiKey);
+            return List.of(groq);
+        }
+        List<LlmProperties.Endpoint> resolved = new ArrayList<>();
+        for (LlmProperties.Endpoint endpoint : properties.getEndpoints()) {
+            LlmProperties.Endpoint copy = new LlmProperties.Endpoint();
+            copy.setBaseUrl(endpoint.getBaseUrl() != null ? endpoint.getBaseUrl() : baseUrl);
+            copy.setApiKey(endpoint.getApiKey() != null ? endpoint.getApiKey() : apiKey);
+            copy.setName(endpoint.getName() != null ? endpoint.getName() : copy.getBaseUrl());
+            copy.setModel(endpoint.getModel());
+            resolved.add(copy);
+        }
+        return resolved;
+    }
+
+    private RestClient restClient(HttpClient httpClient, String url, String key) {
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(readTimeout);
 
         return RestClient.builder()
-                .baseUrl(baseUrl)
-                .defaultHeader("Authorization", "Bearer " + apiKey)
+                .baseUrl(url)
+                .defaultHeader("Authorization", "Bearer " + key)
                 .requestFactory(factory)
                 .build();
     }
+
+    /**
+     * Abre as conexões (TCP + TLS + negociação HTTP/2) com cada endpoint logo no startup,
+     * para que as primeiras requisições após o deploy não paguem o handshake.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarmConnections(ApplicationReadyEvent event) {
+        if (prewarmConnections <= 0) {
+            return;
+        }
+        LlmProperties properties = event.getApplicationContext().getBean(LlmProperties.class);
+        // uma rodada por host: endpoints que só trocam de modelo compartilham as conexões
+        Map<String, String> keysByUrl = new LinkedHashMap<>();
+        resolveEndpoints(properties).forEach(endpoint ->
+                keysByUrl.putIfAbsent(endpoint.getBaseUrl(), endpoint.getApiKey()));
+        HttpClient client = groqHttpClient();
+        keysByUrl.forEach((url, key) -> prewarm(client, url, key));
+    }
+
+    private void prewarm(HttpClient client, String url, String key) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/models"))
+                .header("Authorization", "Bearer " + key)
+                .timeout(connectTimeout)
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        CompletableFuture<?>[] warmups = new CompletableFuture<?>[prewarmConnections];
+        for (int i = 0; i < prewarmConnections; i++) {
+            warmups[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> log.debug("Prewarm {} -> {} ({})",
+                            request.uri(), response.statusCode(), response.version()));
+        }
+        CompletableFuture.allOf(warmups).whenComplete((ignored, error) -> {
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            if (error != null) {
+                log.warn("Connection prewarm to {} failed after {}ms: {}", url, elapsedMs, error.getMessage());
+            } else {
+                log.info("Prewarmed {} connection(s) to {} in {}ms", prewarmConnections, url, elapsedMs);
+            }
+        });
+    }
+
+    /**
+     * O pool do {@link HttpClient} do JDK só é configurável por system properties,
+     * lidas na primeira criação de um client. Propriedades já definidas na JVM têm precedência.
+     */
+    private void configureConnectionPool() {
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(poolSize));
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAlive.toSeconds()));
+        setIfAbsent("jdk.httpclient.keepalive.timeout.h2", String.valueOf(keepAlive.toSeconds()));
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
 }
@@ -1,67 +1,289 @@
 package com.commitgen.controller;
 
+import com.commitgen.dto.BatchItemResult;
+import com.commitgen.dto.BatchRequest;
+import com.commitgen.dto.BatchResponse;
 import com.commitgen.dto.CommitRequest;
 import com.commitgen.dto.CommitResponse;
 import com.commitgen.exception.ErrorResponse;
+import com.commitgen.exception.GlobalExceptionHandler;
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.PromptTooLargeException;
+import com.commitgen.exception.ServiceOverloadedException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import com.commitgen.service.AdmissionService;
+import com.commitgen.service.AdmissionService.Permit;
+import com.commitgen.service.AdmissionService.Priority;
+import com.commitgen.service.BatchService;
+import com.commitgen.service.BatchService.Charge;
 import com.commitgen.service.CommitService;
 import com.commitgen.service.RateLimitService;
 import com.commitgen.service.RateLimitService.RateLimitInfo;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+@Slf4j
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
 public class CommitController {
 
+    private static final Duration STREAM_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration BATCH_STREAM_TIMEOUT = Duration.ofMinutes(10);
+    private static final String PRIORITY_HEADER = "X-Request-Priority";
+
     private final CommitService commitService;
     private final RateLimitService rateLimitService;
+    private final AdmissionService admissionService;
+    private final BatchService batchService;
+
+    // Uma virtual thread por stream (simples ou em lote), iniciada na hora: a admissão já limita quantas
+    // gerações rodam juntas, e nada fica parado na fila de um pool de tamanho fixo segurando permit e conexão
+    private final ExecutorService streamExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-stream-", 0).factory());
+
+    // Interrompe os streams em andamento: virtual threads não seguram o shutdown, mas sem isso
+    // continuariam gerando (e gastando cota) para conexões que o servidor já está fechando
+    @PreDestroy
+    public void shutdown() {
+        streamExecutor.shutdownNow();
+    }
 
     @PostMapping("/generate")
     public ResponseEntity<Object> generate(
             @Valid @RequestBody CommitRequest request,
+            @RequestHeader(value = PRIORITY_HEADER, required = false) String priority,
             HttpServletRequest httpRequest) {
 
         String ip = getClientIp(httpRequest);
-        RateLimitInfo info = rateLimitService.consume(ip);
+        RateLimitInfo info = rateLimitService.consume(ip, request);
 
         if (!info.isAllowed()) {
             return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
                     .headers(h -> addRateLimitHeaders(h, info))
                     .header("Retry-After", String.valueOf(info.getRetryAfterSeconds()))
-                    .body(ErrorResponse.of(
-                            429,
-                            "Rate limit excedido. Você pode fazer "
-                                    + info.getLimit()
-                                    + " requisições por hora. Tente novamente mais tarde."
-                    ));
+                    .body(rateLimitExceeded(info));
         }
 
-        CommitResponse response = commitService.generateCommitMessages(request);
+        Permit permit;
+        try {
+            permit = admissionService.acquire(Priority.ofRequest(priority));
+        } catch (ServiceOverloadedException e) {
+            // descartada sem gerar nada: não gasta o rate limit do cliente
+            rateLimitService.refund(ip, info);
+            throw e;
+        }
+        CommitResponse response;
+        try (permit) {
+            response = commitService.generateCommitMessages(request, permit.deadlineNanos());
+            if (response.isCached()) {
+                permit.skipServiceTime();
+            }
+        }
 
         return ResponseEntity.ok()
                 .headers(h -> addRateLimitHeaders(h, info))
                 .body(response);
     }
 
+    /**
+     * Mesmo contrato de {@code /generate}, mas via Server-Sent Events:
+     * um evento {@code suggestion} por sugestão assim que fica pronta,
+     * depois {@code done} com a resposta completa (ou {@code error}).
+     */
+    @PostMapping("/generate/stream")
+    public ResponseEntity<SseEmitter> generateStream(
+            @Valid @RequestBody CommitRequest request,
+            @RequestHeader(value = PRIORITY_HEADER, required = false) String priority,
+            HttpServletRequest httpRequest) {
+
+        String ip = getClientIp(httpRequest);
+        RateLimitInfo info = rateLimitService.consume(ip, request);
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+
+        if (!info.isAllowed()) {
+            sendEvent(emitter, "error", rateLimitExceeded(info));
+            emitter.complete();
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .headers(h -> addRateLimitHeaders(h, info))
+                    .header("Retry-After", String.valueOf(info.getRetryAfterSeconds()))
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(emitter);
+        }
+
+        // a espera na fila acontece antes de abrir o stream, para o descarte ainda virar 503
+        Permit permit;
+        try {
+            permit = admissionService.acquire(Priority.ofRequest(priority));
+        } catch (ServiceOverloadedException e) {
+            RateLimitInfo refunded = rateLimitService.refund(ip, info);
+            sendEvent(emitter, "error", ErrorResponse.of(503, e.getMessage(), GlobalExceptionHandler.OVERLOADED));
+            emitter.complete();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .headers(h -> addRateLimitHeaders(h, refunded))
+                    .header("Retry-After", String.valueOf(e.getRetryAfterSeconds()))
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(emitter);
+        }
+
+        streamExecutor.execute(() -> {
+            try (permit) {
+                CommitResponse response = commitService.streamCommitMessages(request, permit.deadlineNanos(),
+                        suggestion -> sendEvent(emitter, "suggestion", suggestion));
+                if (response.isCached()) {
+                    permit.skipServiceTime();
+                }
+                sendEvent(emitter, "done", response);
+                emitter.complete();
+            } catch (GroqApiException e) {
+                log.error("GroqCloud API error during stream: {}", e.getMessage());
+                String reason = e instanceof UpstreamUnavailableException unavailable
+                        ? unavailable.getReason().code()
+                        : GlobalExceptionHandler.UPSTREAM_ERROR;
+                sendEvent(emitter, "error", ErrorResponse.of(503,
+                        "AI service temporarily unavailable: " + e.getMessage(), reason));
+                emitter.complete();
+            } catch (PromptTooLargeException e) {
+                sendEvent(emitter, "error", ErrorResponse.of(413, e.getMessage()));
+                emitter.complete();
+            } catch (UncheckedIOException e) {
+                // cliente desconectou — interrompe a leitura do upstream
+                log.debug("Stream client disconnected: {}", e.getMessage());
+                emitter.completeWithError(e.getCause());
+            } catch (RuntimeException e) {
+                log.error("Unexpected error during stream: {}", e.getMessage(), e);
+                emitter.completeWithError(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .headers(h -> addRateLimitHeaders(h, info))
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(emitter);
+    }
+
+    /**
+     * Vários diffs numa chamada. Cada item distinto é cobrado do rate limit como um {@code /generate};
+     * itens recusados, descartados ou com erro voltam com {@code error} na sua posição.
+     */
+    @PostMapping("/generate/batch")
+    public ResponseEntity<Object> generateBatch(
+            @Valid @RequestBody BatchRequest request,
+            HttpServletRequest httpRequest) {
+
+        AtomicReference<RateLimitInfo> lastInfo = new AtomicReference<>();
+        BatchResponse response = batchService.generate(request.getItems(), Priority.BULK,
+                chargePerItem(getClientIp(httpRequest), lastInfo), result -> { });
+
+        RateLimitInfo info = lastInfo.get();
+        boolean allRateLimited = response.getResults().stream()
+                .allMatch(result -> result.getError() != null && result.getError().getStatus() == 429);
+        if (allRateLimited) {
+            // nenhum item passou do rate limit: mesmo contrato de /generate
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .headers(h -> addRateLimitHeaders(h, info))
+                    .header("Retry-After", String.valueOf(info.getRetryAfterSeconds()))
+                    .body(rateLimitExceeded(info));
+        }
+
+        return ResponseEntity.ok()
+                .headers(h -> addRateLimitHeaders(h, info))
+                .body(response);
+    }
+
+    /**
+     * Lote via Server-Sent Events: um evento {@code item} por item assim que termina
+     * (fora de ordem, com {@code index}), depois {@code done} com o {@link BatchResponse}.
+     * Se o cliente desconectar ou o stream expirar, o lote é cancelado: nenhum item novo é
+     * cobrado nem enviado à geração, e os em andamento são interrompidos.
+     */
+    @PostMapping("/generate/batch/stream")
+    public ResponseEntity<SseEmitter> generateBatchStream(
+            @Valid @RequestBody BatchRequest request,
+            HttpServletRequest httpRequest) {
+
+        String ip = getClientIp(httpRequest);
+        SseEmitter emitter = new SseEmitter(BATCH_STREAM_TIMEOUT.toMillis());
+        AtomicReference<FutureTask<Void>> batch = new AtomicReference<>();
+
+        Consumer<BatchItemResult> onResult = result -> {
+            if (batch.get().isCancelled()) return;
+            try {
+                sendEvent(emitter, "item", result);
+            } catch (UncheckedIOException | IllegalStateException e) {
+                // cliente desconectou: para de cobrar e gerar o resto do lote
+                log.debug("Batch stream client disconnected: {}", e.getMessage());
+                batch.get().cancel(true);
+            }
+        };
+        batch.set(new FutureTask<>(() -> {
+            try {
+                BatchResponse response = batchService.generate(request.getItems(), Priority.BULK,
+                        chargePerItem(ip, new AtomicReference<>()), onResult);
+                sendEvent(emitter, "done", response);
+                emitter.complete();
+            } catch (CancellationException e) {
+                log.debug("Batch stream cancelled: {}", e.getMessage());
+            } catch (UncheckedIOException e) {
+                log.debug("Batch stream client disconnected: {}", e.getMessage());
+                emitter.completeWithError(e.getCause());
+            } catch (RuntimeException e) {
+                log.error("Unexpected error during batch stream: {}", e.getMessage(), e);
+                emitter.completeWithError(e);
+            }
+        }, null));
+        Runnable cancel = () -> batch.get().cancel(true);
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+        emitter.onCompletion(cancel);
+        streamExecutor.execute(batch.get());
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(emitter);
+    }
+
     @GetMapping("/rate-limit")
     public ResponseEntity<Map<String, Object>> getRateLimit(HttpServletRequest httpRequest) {
         String ip = getClientIp(httpRequest);
         RateLimitInfo info = rateLimitService.getInfo(ip);
 
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("remaining", info.getRemaining());
+        body.put("limit", info.getLimit());
+        body.put("resetAt", info.getResetAtEpochSeconds());
+        body.put("unit", info.getUnit());
+        RateLimitInfo tokens = info.getTokens();
+        if (tokens != null) {
+            body.put("tokensRemaining", tokens.getRemaining());
+            body.put("tokensLimit", tokens.getLimit());
+            body.put("tokensResetAt", tokens.getResetAtEpochSeconds());
+        }
+
         return ResponseEntity.ok()
                 .headers(h -> addRateLimitHeaders(h, info))
-                .body(Map.of(
-                        "remaining", info.getRemaining(),
-                        "limit", info.getLimit(),
-                        "resetAt", info.getResetAtEpochSeconds()
-                ));
+                .body(body);
     }
 
     @GetMapping("/health")
@@ -72,11 +294,62 @@ public class CommitController {
         ));
     }
 
+    private ErrorResponse rateLimitExceeded(RateLimitInfo info) {
+        RateLimitInfo tokens = info.getTokens();
+        if (tokens != null) {
+            return ErrorResponse.of(
+                    429,
+                    "Rate limit excedido. Esta requisição custa " + info.getCost() + " unidades e ~"
+                            + tokens.getCost() + " tokens; o limite é " + info.getLimit() + " unidades e "
+                            + tokens.getLimit() + " tokens por hora. Tente novamente mais tarde."
+            );
+        }
+        return ErrorResponse.of(
+                429,
+                "Rate limit excedido. Você pode fazer "
+                        + info.getLimit()
+                        + " requisições por hora. Tente novamente mais tarde."
+        );
+    }
+
+    private Function<CommitRequest, Charge> chargePerItem(String ip, AtomicReference<RateLimitInfo> lastInfo) {
+        return item -> {
+            RateLimitInfo info = rateLimitService.consume(ip, item);
+            lastInfo.set(info);
+            if (!info.isAllowed()) {
+                return Charge.rejected(rateLimitExceeded(info));
+            }
+            return new Charge(null, () -> lastInfo.set(rateLimitService.refund(ip, info)));
+        };
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private void addRateLimitHeaders(org.springframework.http.HttpHeaders headers,
                                      RateLimitInfo info) {
         headers.set("X-RateLimit-Limit", String.valueOf(info.getLimit()));
         headers.set("X-RateLimit-Remaining", String.valueOf(info.getRemaining()));
         headers.set("X-RateLimit-Reset", String.valueOf(info.getResetAtEpochSeconds()));
+        headers.set("X-RateLimit-Unit", info.getUnit());
+        if (info.getCost() > 0) {
+            headers.set("X-RateLimit-Cost", String.valueOf(info.getCost()));
+        }
+        // modo weighted: orçamento de tokens do upstream, nos moldes dos headers x-ratelimit-*-tokens da GroqCloud
+        RateLimitInfo tokens = info.getTokens();
+        if (tokens != null) {
+            headers.set("X-RateLimit-Limit-Tokens", String.valueOf(tokens.getLimit()));
+            headers.set("X-RateLimit-Remaining-Tokens", String.valueOf(tokens.getRemaining()));
+            headers.set("X-RateLimit-Reset-Tokens", String.valueOf(tokens.getResetAtEpochSeconds()));
+            if (tokens.getCost() > 0) {
+                headers.set("X-RateLimit-Cost-Tokens", String.valueOf(tokens.getCost()));
+            }
+        }
     }
 
     private String getClientIp(HttpServletRequest request) {
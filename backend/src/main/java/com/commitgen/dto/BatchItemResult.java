@@ -0,0 +1,21 @@
+package com.commitgen.dto;
+
+import com.commitgen.exception.ErrorResponse;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Resultado de um item do lote: {@code response} ou {@code error}, nunca os dois.
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+
+    private int index;
+    private CommitResponse response;
+    private ErrorResponse error;
+    // Índice do primeiro item com o mesmo diff; o resultado é compartilhado, sem nova chamada
+    private Integer duplicateOf;
+}
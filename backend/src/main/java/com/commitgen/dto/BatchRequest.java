@@ -0,0 +1,18 @@
+package com.commitgen.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchRequest {
+
+    public static final int MAX_ITEMS = 50;
+
+    @NotEmpty(message = "items is required")
+    @Size(max = MAX_ITEMS, message = "max " + MAX_ITEMS + " items per batch")
+    private List<@Valid CommitRequest> items;
+}
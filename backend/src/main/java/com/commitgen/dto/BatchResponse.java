@@ -0,0 +1,17 @@
+package com.commitgen.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class BatchResponse {
+
+    // Na mesma ordem dos itens enviados
+    private List<BatchItemResult> results;
+    private int succeeded;
+    private int failed;
+    private Long processingTimeMs;
+}
@@ -10,7 +10,8 @@ import lombok.Data;
 public class CommitRequest {
 
     @NotBlank(message = "diff is required")
-    @Size(max = 10000, message = "diff must be under 10000 characters")
+    // Diffs grandes são compactados antes do prompt (ver DiffCompactor)
+    @Size(max = 100000, message = "diff must be under 100000 characters")
     private String diff;
 
     private String language = "en";
@@ -11,6 +11,7 @@ public class CommitResponse {
     private List<Suggestion> suggestions;
     private String model;
     private Long processingTimeMs;
+    private boolean cached;
 
     @Data
     @Builder
@@ -1,5 +1,6 @@
 package com.commitgen.exception;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,12 +15,20 @@ import java.time.LocalDateTime;
 public class ErrorResponse {
     private int status;
     private String message;
+    // Motivo legível por máquina dos 503 (ex.: circuit_open); omitido nos demais erros
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String reason;
     private LocalDateTime timestamp;
 
     public static ErrorResponse of(int status, String message) {
+        return of(status, message, null);
+    }
+
+    public static ErrorResponse of(int status, String message, String reason) {
         return ErrorResponse.builder()
                 .status(status)
                 .message(message)
+                .reason(reason)
                 .timestamp(LocalDateTime.now())
                 .build();
     }
@@ -29,12 +29,51 @@ public class GlobalExceptionHandler {
                 .build());
     }
 
+    public static final String UPSTREAM_ERROR = "upstream_error";
+    public static final String OVERLOADED = "overloaded";
+
     @ExceptionHandler(GroqApiException.class)
     public ResponseEntity<ErrorResponse> handleGroqApiException(GroqApiException ex) {
         log.error("GroqCloud API error: {}", ex.getMessage());
         return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ErrorResponse.builder()
                 .status(503)
                 .message("AI service temporarily unavailable: " + ex.getMessage())
+                .reason(UPSTREAM_ERROR)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleUpstreamUnavailableException(UpstreamUnavailableException ex) {
+        log.warn("Upstream call rejected ({}): {}", ex.getReason().code(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ErrorResponse.builder()
+                        .status(503)
+                        .message("AI service temporarily unavailable: " + ex.getMessage())
+                        .reason(ex.getReason().code())
+                        .timestamp(LocalDateTime.now())
+                        .build());
+    }
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleServiceOverloadedException(ServiceOverloadedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ErrorResponse.builder()
+                        .status(503)
+                        .message(ex.getMessage())
+                        .reason(OVERLOADED)
+                        .timestamp(LocalDateTime.now())
+                        .build());
+    }
+
+    @ExceptionHandler(PromptTooLargeException.class)
+    public ResponseEntity<ErrorResponse> handlePromptTooLargeException(PromptTooLargeException ex) {
+        log.warn("Prompt rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(ErrorResponse.builder()
+                .status(413)
+                .message(ex.getMessage())
                 .timestamp(LocalDateTime.now())
                 .build());
     }
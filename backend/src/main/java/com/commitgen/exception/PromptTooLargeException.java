@@ -0,0 +1,8 @@
+package com.commitgen.exception;
+
+public class PromptTooLargeException extends RuntimeException {
+
+    public PromptTooLargeException(String message) {
+        super(message);
+    }
+}
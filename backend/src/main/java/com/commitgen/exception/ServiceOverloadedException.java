@@ -0,0 +1,18 @@
+package com.commitgen.exception;
+
+import lombok.Getter;
+
+/**
+ * Requisição descartada pelo controle de admissão: a espera prevista na fila
+ * passaria do SLO da classe de prioridade, ou a fila está cheia.
+ */
+@Getter
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,18 @@
+package com.commitgen.exception;
+
+import lombok.Getter;
+
+/**
+ * O upstream recusou o pedido com um 4xx que não é 429 (400, 401, 403...): o problema está
+ * no pedido ou na credencial, não na saúde do endpoint. Não abre o circuito nem faz failover.
+ */
+@Getter
+public class UpstreamRejectedException extends GroqApiException {
+
+    private final int status;
+
+    public UpstreamRejectedException(int status, String message, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+}
@@ -0,0 +1,44 @@
+package com.commitgen.exception;
+
+import lombok.Getter;
+
+/**
+ * Chamada recusada localmente, sem tocar no upstream: circuit breaker aberto,
+ * limite de concorrência atingido ou cota do upstream esgotada. Um 429 que esgota os
+ * retries também vira cota esgotada, para o cliente receber Retry-After; como esse veio
+ * do upstream (a causa é a resposta HTTP), o roteador o conta como falha do endpoint.
+ */
+@Getter
+public class UpstreamUnavailableException extends GroqApiException {
+
+    public enum Reason {
+        CIRCUIT_OPEN("circuit_open"),
+        CONCURRENCY_LIMITED("concurrency_limited"),
+        QUOTA_EXHAUSTED("quota_exhausted");
+
+        private final String code;
+
+        Reason(String code) {
+            this.code = code;
+        }
+
+        public String code() {
+            return code;
+        }
+    }
+
+    private final Reason reason;
+    private final long retryAfterSeconds;
+
+    public UpstreamUnavailableException(Reason reason, String message, long retryAfterSeconds) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public UpstreamUnavailableException(Reason reason, String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,141 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.UpstreamUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.function.Supplier;
+
+/**
+ * Limite adaptativo de chamadas simultâneas ao upstream (AIMD com gradiente de latência,
+ * no estilo Gradient2). Compara a latência média das últimas ~10 tentativas com a de
+ * ~600: enquanto a curta fica perto da longa, o limite sobe +1 a cada "limite" sucessos;
+ * quando passa de {@code tolerance} vezes a longa, ou a tentativa falha, o limite cai por
+ * {@code backoff}. Acima do limite a tentativa é recusada na hora em vez de enfileirar
+ * threads esperando um upstream degradado. Cada tentativa HTTP ocupa uma vaga só enquanto
+ * está no upstream: espera por cota e backoff de retry ficam fora da vaga e da amostra.
+ */
+@Slf4j
+@Service
+public class AdaptiveConcurrencyLimiter {
+
+    // médias móveis exponenciais com janelas de ~N amostras (alfa = 2 / (N + 1))
+    private static final double SHORT_ALPHA = 2.0 / (10 + 1);
+    private static final double LONG_ALPHA = 2.0 / (600 + 1);
+    // sem uma janela curta cheia não há média confiável para reduzir o limite
+    private static final int WARMUP_SAMPLES = 10;
+    // a base longa acompanha um upstream que ficou mais rápido bem antes das 600 amostras
+    private static final double BASELINE_DECAY = 0.95;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoff;
+
+    private double limit;
+    private int inFlight;
+    private double shortRttNanos;
+    private double longRttNanos;
+    private long samples;
+
+    public AdaptiveConcurrencyLimiter(@Value("${llm.concurrency.enabled:false}") boolean enabled,
+                                      @Value("${llm.concurrency.initial-limit:20}") int initialLimit,
+                                      @Value("${llm.concurrency.min-limit:2}") int minLimit,
+                                      @Value("${llm.concurrency.max-limit:200}") int maxLimit,
+                                      @Value("${llm.concurrency.tolerance:2.0}") double tolerance,
+                                      @Value("${llm.concurrency.backoff:0.9}") double backoff) {
+        this.enabled = enabled;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+    }
+
+    public static AdaptiveConcurrencyLimiter unlimited() {
+        return new AdaptiveConcurrencyLimiter(false, Integer.MAX_VALUE, 1, Integer.MAX_VALUE, 2.0, 0.9);
+    }
+
+    /**
+     * Executa {@code call} ocupando uma vaga. Com {@code sampleLatency} falso (streaming, cuja
+     * duração depende do tamanho da resposta) a vaga é contada mas a latência não ajusta o limite.
+     */
+    public <T> T execute(Supplier<T> call, boolean sampleLatency) {
+        if (!enabled) {
+            return call.get();
+        }
+        acquire();
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            release(System.nanoTime() - start, true, sampleLatency && !Thread.currentThread().isInterrupted());
+            return result;
+        } catch (UpstreamUnavailableException e) {
+            // recusada localmente (circuito aberto): não diz nada sobre a capacidade do upstream
+            release(0, false, false);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            release(System.nanoTime() - start, false, !Thread.currentThread().isInterrupted());
+            throw e;
+        }
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        return execute(call, true);
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized void acquire() {
+        if (inFlight >= (int) limit) {
+            throw new UpstreamUnavailableException(UpstreamUnavailableException.Reason.CONCURRENCY_LIMITED,
+                    "Too many concurrent upstream calls (limit " + (int) limit + ")", 1);
+        }
+        inFlight++;
+    }
+
+    synchronized void release(long latencyNanos, boolean success, boolean sample) {
+        inFlight--;
+        if (!sample) {
+            return;
+        }
+        if (!success) {
+            decrease();
+            return;
+        }
+
+        if (samples++ == 0) {
+            shortRttNanos = latencyNanos;
+            longRttNanos = latencyNanos;
+        } else {
+            shortRttNanos += (latencyNanos - shortRttNanos) * SHORT_ALPHA;
+            longRttNanos += (latencyNanos - longRttNanos) * LONG_ALPHA;
+        }
+        if (longRttNanos > shortRttNanos * 2) {
+            longRttNanos *= BASELINE_DECAY;
+        }
+
+        if (samples >= WARMUP_SAMPLES && shortRttNanos > longRttNanos * tolerance) {
+            decrease();
+        } else if (inFlight + 1 >= (int) limit / 2) {
+            // só cresce quando o limite está de fato sendo usado
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private void decrease() {
+        double previous = limit;
+        limit = Math.max(minLimit, limit * backoff);
+        if ((int) previous != (int) limit) {
+            log.debug("Upstream concurrency limit decreased {} -> {}", (int) previous, (int) limit);
+        }
+    }
+}
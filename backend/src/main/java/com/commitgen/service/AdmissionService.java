@@ -0,0 +1,243 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Controle de admissão na frente do {@link CommitService}: no máximo {@code max-concurrent}
+ * gerações em andamento; as demais esperam numa fila limitada, com as interativas (uma
+ * requisição com alguém esperando) sempre na frente das bulk (lotes). Se a espera prevista
+ * — posição na fila vezes o tempo médio de serviço — passa do SLO da classe, a requisição é
+ * descartada na hora com 503 + Retry-After, em vez de deixar todo mundo lento junto.
+ */
+@Slf4j
+@Service
+public class AdmissionService {
+
+    public enum Priority {
+        INTERACTIVE, BULK;
+
+        /**
+         * Classe de uma requisição simples: interactive, a menos que o header {@code X-Request-Priority}
+         * peça {@code bulk}. O header vem do cliente, então só rebaixa: pedir interactive não fura a
+         * fila de ninguém. Lotes são sempre {@link #BULK}.
+         */
+        public static Priority ofRequest(String header) {
+            return header != null && "bulk".equals(header.trim().toLowerCase(Locale.ROOT)) ? BULK : INTERACTIVE;
+        }
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final double SERVICE_TIME_EWMA_ALPHA = 0.2;
+
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final Map<Priority, Long> sloNanos = new EnumMap<>(Priority.class);
+
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private final Map<Priority, Integer> queued = new EnumMap<>(Priority.class);
+    private int inFlight;
+    private long sequence;
+    private double serviceTimeNanos;
+
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> shedCounters = new EnumMap<>(Priority.class);
+
+    public AdmissionService(@Value("${admission.max-concurrent:16}") int maxConcurrent,
+                            @Value("${admission.queue-capacity:64}") int queueCapacity,
+                            @Value("${admission.slo.interactive:8s}") Duration interactiveSlo,
+                            @Value("${admission.slo.bulk:20s}") Duration bulkSlo,
+                            @Value("${admission.initial-service-time:2s}") Duration initialServiceTime,
+                            MeterRegistry registry) {
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.serviceTimeNanos = initialServiceTime.toNanos();
+        sloNanos.put(Priority.INTERACTIVE, interactiveSlo.toNanos());
+        sloNanos.put(Priority.BULK, bulkSlo.toNanos());
+
+        Gauge.builder("commitgen.admission.in.flight", this, AdmissionService::getInFlight)
+                .description("Gerações em andamento")
+                .register(registry);
+        Gauge.builder("commitgen.admission.service.time", this, service -> service.getServiceTimeMillis() / 1000.0)
+                .description("Tempo médio (EWMA) de uma geração")
+                .baseUnit("seconds")
+                .register(registry);
+        for (Priority priority : Priority.values()) {
+            queued.put(priority, 0);
+            Gauge.builder("commitgen.admission.queue.depth", this, service -> service.getQueueDepth(priority))
+                    .description("Requisições esperando admissão")
+                    .tag("priority", priority.tag())
+                    .register(registry);
+            waitTimers.put(priority, Timer.builder("commitgen.admission.wait")
+                    .description("Tempo de espera na fila de admissão")
+                    .tag("priority", priority.tag())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry));
+            shedCounters.put(priority, Counter.builder("commitgen.admission.shed")
+                    .description("Requisições descartadas pelo controle de admissão")
+                    .tag("priority", priority.tag())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Espera uma vaga; lança {@link ServiceOverloadedException} se a espera prevista
+     * (ou a real) passar do SLO da classe. A vaga deve ser liberada com {@link Permit#close()}.
+     */
+    public Permit acquire(Priority priority) {
+        long start = System.nanoTime();
+        Waiter waiter;
+        synchronized (this) {
+            if (inFlight < maxConcurrent && queue.isEmpty()) {
+                inFlight++;
+                waitTimers.get(priority).record(0, TimeUnit.NANOSECONDS);
+                return new Permit(start, start + sloNanos.get(priority));
+            }
+            long predicted = predictedWaitNanos(priority);
+            if (queue.size() >= queueCapacity || predicted > sloNanos.get(priority)) {
+                throw shed(priority, predicted);
+            }
+            waiter = new Waiter(priority, sequence++);
+            queue.add(waiter);
+            queued.merge(priority, 1, Integer::sum);
+        }
+
+        long remaining = sloNanos.get(priority) - (System.nanoTime() - start);
+        try {
+            waiter.granted.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | InterruptedException | ExecutionException e) {
+            synchronized (this) {
+                if (queue.remove(waiter)) {
+                    queued.merge(priority, -1, Integer::sum);
+                    if (e instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw shed(priority, predictedWaitNanos(priority));
+                }
+            }
+            // a vaga foi concedida junto com o timeout: segue normalmente
+        }
+        long waited = System.nanoTime() - start;
+        waitTimers.get(priority).record(waited, TimeUnit.NANOSECONDS);
+        return new Permit(System.nanoTime(), start + sloNanos.get(priority));
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth(Priority priority) {
+        return queued.get(priority);
+    }
+
+    public synchronized long getServiceTimeMillis() {
+        return (long) (serviceTimeNanos / 1_000_000);
+    }
+
+    // quem está à frente (mesma classe ou mais prioritária) + esta, divididos pelas vagas
+    private long predictedWaitNanos(Priority priority) {
+        int ahead = 0;
+        for (Priority other : Priority.values()) {
+            if (other.ordinal() <= priority.ordinal()) {
+                ahead += queued.get(other);
+            }
+        }
+        return (long) ((ahead + 1) * serviceTimeNanos / maxConcurrent);
+    }
+
+    private ServiceOverloadedException shed(Priority priority, long predictedWaitNanos) {
+        shedCounters.get(priority).increment();
+        long retryAfterSeconds = Math.max(1, (predictedWaitNanos + 999_999_999) / 1_000_000_000);
+        log.warn("Shedding {} request: predicted wait {}ms, {} queued, {} in flight",
+                priority.tag(), predictedWaitNanos / 1_000_000, queue.size(), inFlight);
+        return new ServiceOverloadedException(
+                "Server is overloaded; retry in " + retryAfterSeconds + "s", retryAfterSeconds);
+    }
+
+    private synchronized void release(long serviceNanos, boolean sample) {
+        if (sample) {
+            serviceTimeNanos = SERVICE_TIME_EWMA_ALPHA * serviceNanos + (1 - SERVICE_TIME_EWMA_ALPHA) * serviceTimeNanos;
+        }
+        Waiter next = queue.poll();
+        if (next == null) {
+            inFlight--;
+            return;
+        }
+        // a vaga passa direto para o próximo da fila
+        queued.merge(next.priority, -1, Integer::sum);
+        next.granted.complete(null);
+    }
+
+    /**
+     * Vaga ocupada; liberar uma única vez, de preferência com try-with-resources.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final long startNanos;
+        private final long deadlineNanos;
+        private boolean released;
+        private boolean sample = true;
+
+        private Permit(long startNanos, long deadlineNanos) {
+            this.startNanos = startNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /** Prazo da requisição (nanoTime): chegada na fila mais o SLO da classe. */
+        public long deadlineNanos() {
+            return deadlineNanos;
+        }
+
+        /**
+         * Não conta esta geração no tempo médio de serviço: respostas do cache não vão ao upstream
+         * e puxariam para baixo a espera prevista das que vão.
+         */
+        public synchronized void skipServiceTime() {
+            sample = false;
+        }
+
+        @Override
+        public void close() {
+            boolean sampled;
+            synchronized (this) {
+                if (released) return;
+                released = true;
+                sampled = sample;
+            }
+            release(System.nanoTime() - startNanos, sampled);
+        }
+    }
+
+    private record Waiter(Priority priority, long sequence, CompletableFuture<Void> granted)
+            implements Comparable<Waiter> {
+
+        Waiter(Priority priority, long sequence) {
+            this(priority, sequence, new CompletableFuture<>());
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
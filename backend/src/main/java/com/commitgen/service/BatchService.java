@@ -0,0 +1,164 @@
+package com.commitgen.service;
+
+import com.commitgen.dto.BatchItemResult;
+import com.commitgen.dto.BatchResponse;
+import com.commitgen.dto.CommitRequest;
+import com.commitgen.dto.CommitResponse;
+import com.commitgen.exception.ErrorResponse;
+import com.commitgen.exception.GlobalExceptionHandler;
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.PromptTooLargeException;
+import com.commitgen.exception.ServiceOverloadedException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import com.commitgen.service.AdmissionService.Permit;
+import com.commitgen.service.AdmissionService.Priority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Geração em lote: itens com o mesmo diff (mesma chave de cache) viram uma única geração,
+ * e os distintos rodam em paralelo com no máximo {@code generation.batch.concurrency}
+ * gerações simultâneas. Cada item passa pelo controle de admissão como uma requisição comum.
+ */
+@Slf4j
+@Service
+public class BatchService {
+
+    private final CommitService commitService;
+    private final AdmissionService admissionService;
+    private final int concurrency;
+
+    public BatchService(CommitService commitService, AdmissionService admissionService,
+                        @Value("${generation.batch.concurrency:4}") int concurrency) {
+        this.commitService = commitService;
+        this.admissionService = admissionService;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Cobrança de um item distinto: {@code rejected} não nulo recusa o item (e suas duplicatas);
+     * {@code refund} devolve a cobrança se a admissão descartar o item depois.
+     */
+    public record Charge(ErrorResponse rejected, Runnable refund) {
+
+        /** Item sem cobrança. */
+        public static final Charge FREE = new Charge(null, () -> { });
+
+        public static Charge rejected(ErrorResponse error) {
+            return new Charge(error, () -> { });
+        }
+    }
+
+    /**
+     * Gera todos os itens e devolve os resultados na ordem de {@code items}. Se a thread for
+     * interrompida (cliente do stream desconectou), para de cobrar e enviar itens, interrompe os
+     * em andamento e lança {@link CancellationException}.
+     *
+     * @param charge   chamado uma vez por item distinto, na ordem, antes de gerá-lo
+     * @param onResult recebe cada resultado assim que fica pronto, fora de ordem
+     */
+    public BatchResponse generate(List<CommitRequest> items, Priority priority,
+                                  Function<CommitRequest, Charge> charge,
+                                  Consumer<BatchItemResult> onResult) {
+        long startTime = System.currentTimeMillis();
+
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            groups.computeIfAbsent(commitService.cacheKey(items.get(i)), key -> new ArrayList<>()).add(i);
+        }
+        log.info("Generating batch: {} items, {} distinct", items.size(), groups.size());
+
+        BatchItemResult[] results = new BatchItemResult[items.size()];
+        Consumer<BatchItemResult> collect = result -> {
+            synchronized (results) {
+                results[result.getIndex()] = result;
+                onResult.accept(result);
+            }
+        };
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(
+                concurrency, Thread.ofVirtual().name("batch-item-", 0).factory())) {
+            for (List<Integer> indices : groups.values()) {
+                if (Thread.currentThread().isInterrupted()) break;
+                CommitRequest request = items.get(indices.getFirst());
+                Charge charged = charge.apply(request);
+                if (charged.rejected() != null) {
+                    complete(indices, null, charged.rejected(), collect);
+                    continue;
+                }
+                executor.execute(() -> generateOne(request, priority, charged, indices, collect));
+            }
+        }
+        // close() interrompido já cancelou os itens em andamento (shutdownNow) e esperou por eles
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Batch cancelled before all " + items.size() + " items finished");
+        }
+
+        int failed = (int) Arrays.stream(results).filter(result -> result.getError() != null).count();
+        return BatchResponse.builder()
+                .results(List.of(results))
+                .succeeded(results.length - failed)
+                .failed(failed)
+                .processingTimeMs(System.currentTimeMillis() - startTime)
+                .build();
+    }
+
+    private void generateOne(CommitRequest request, Priority priority, Charge charged, List<Integer> indices,
+                             Consumer<BatchItemResult> collect) {
+        try (Permit permit = admissionService.acquire(priority)) {
+            CommitResponse response = commitService.generateCommitMessages(request, permit.deadlineNanos());
+            if (response.isCached()) {
+                permit.skipServiceTime();
+            }
+            complete(indices, response, null, collect);
+        } catch (RuntimeException e) {
+            if (e instanceof ServiceOverloadedException) {
+                // descartado sem gerar nada: como em /generate, não gasta o rate limit do cliente
+                charged.refund().run();
+            }
+            complete(indices, null, errorFor(e), collect);
+        }
+    }
+
+    private static void complete(List<Integer> indices, CommitResponse response, ErrorResponse error,
+                                 Consumer<BatchItemResult> collect) {
+        int first = indices.getFirst();
+        for (int index : indices) {
+            collect.accept(BatchItemResult.builder()
+                    .index(index)
+                    .response(response)
+                    .error(error)
+                    .duplicateOf(index == first ? null : first)
+                    .build());
+        }
+    }
+
+    // Mesmos status e motivos das respostas de /generate
+    private static ErrorResponse errorFor(RuntimeException e) {
+        return switch (e) {
+            case ServiceOverloadedException overloaded ->
+                    ErrorResponse.of(503, overloaded.getMessage(), GlobalExceptionHandler.OVERLOADED);
+            case UpstreamUnavailableException unavailable -> ErrorResponse.of(503,
+                    "AI service temporarily unavailable: " + unavailable.getMessage(), unavailable.getReason().code());
+            case GroqApiException groq -> ErrorResponse.of(503,
+                    "AI service temporarily unavailable: " + groq.getMessage(), GlobalExceptionHandler.UPSTREAM_ERROR);
+            case PromptTooLargeException tooLarge -> ErrorResponse.of(413, tooLarge.getMessage());
+            default -> {
+                log.error("Unexpected error in batch item: {}", e.getMessage(), e);
+                yield ErrorResponse.of(500, "Internal server error");
+            }
+        };
+    }
+}
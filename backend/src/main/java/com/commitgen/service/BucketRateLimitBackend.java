@@ -0,0 +1,185 @@
+package com.commitgen.service;
+
+import com.commitgen.service.RateLimitService.RateLimitInfo;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static com.commitgen.service.RateLimitService.MAX_REQUESTS_PER_HOUR;
+import static com.commitgen.service.RateLimitService.REFILL_PERIOD;
+
+/**
+ * Backend padrão: um {@link Bucket} do Bucket4j por IP num cache Caffeine.
+ * Subclasses podem trocar o bucket local por um proxy de estado remoto.
+ */
+public class BucketRateLimitBackend implements RateLimitBackend {
+
+    static final int SNAPSHOT_FORMAT = 1;
+    private static final int MAX_BUCKETS = 10_000;
+    // Chaves maiores (X-Forwarded-For inválido, por exemplo) ficam fora do snapshot
+    private static final int MAX_SNAPSHOT_KEY_BYTES = 255;
+
+    protected final long capacity;
+    protected final Duration period;
+
+    // Buckets por IP com TTL de 2 períodos — entradas expiram automaticamente, sem memory leak
+    private final Cache<String, Bucket> buckets;
+
+    public BucketRateLimitBackend() {
+        this(MAX_REQUESTS_PER_HOUR, REFILL_PERIOD);
+    }
+
+    public BucketRateLimitBackend(long capacity, Duration period) {
+        this.capacity = capacity;
+        this.period = period;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(period.multipliedBy(2))
+                .maximumSize(MAX_BUCKETS)
+                .build();
+    }
+
+    protected Bandwidth limit() {
+        return Bandwidth.builder()
+                .capacity(capacity)
+                .refillGreedy(capacity, period)
+                .build();
+    }
+
+    protected Bucket createBucket(String ip) {
+        return Bucket.builder().addLimit(limit()).build();
+    }
+
+    /**
+     * Bucket já conhecido do IP, ou null; não deve criar um.
+     */
+    protected Bucket existingBucket(String ip) {
+        return buckets.getIfPresent(ip);
+    }
+
+    protected final void remember(String ip, Bucket bucket) {
+        buckets.put(ip, bucket);
+    }
+
+    @Override
+    public RateLimitInfo consume(String ip, long cost) {
+        Bucket bucket = buckets.get(ip, this::createBucket);
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(cost);
+
+        long remaining = probe.getRemainingTokens();
+        long nanosToRefill = probe.getNanosToWaitForRefill();
+
+        long resetEpochSeconds;
+        if (remaining >= capacity - 1) {
+            // bucket cheio (ou quase) — reset daqui a um período
+            resetEpochSeconds = Instant.now().plus(period).getEpochSecond();
+        } else {
+            resetEpochSeconds = resetEpochSeconds(remaining);
+        }
+
+        return new RateLimitInfo(
+                probe.isConsumed(),
+                remaining,
+                capacity,
+                resetEpochSeconds,
+                nanosToRefill > 0 ? (long) Math.ceil(nanosToRefill / 1_000_000_000.0) : 0
+        );
+    }
+
+    @Override
+    public void refund(String ip, long cost) {
+        Bucket bucket = existingBucket(ip);
+        if (bucket != null) {
+            bucket.addTokens(cost);
+        }
+    }
+
+    @Override
+    public RateLimitInfo peek(String ip) {
+        // consulta não cria bucket: IP desconhecido = bucket cheio
+        Bucket bucket = existingBucket(ip);
+        long available = bucket != null ? bucket.getAvailableTokens() : capacity;
+
+        long resetEpochSeconds;
+        if (available >= capacity) {
+            resetEpochSeconds = Instant.now().plus(period).getEpochSecond();
+        } else {
+            resetEpochSeconds = resetEpochSeconds(available);
+        }
+
+        return new RateLimitInfo(
+                available > 0,
+                available,
+                capacity,
+                resetEpochSeconds,
+                available > 0 ? 0 : period.toSeconds() / capacity
+        );
+    }
+
+    @Override
+    public RateLimitBackend newLimit(String name, long capacity, Duration period) {
+        return new BucketRateLimitBackend(capacity, period);
+    }
+
+    /**
+     * Registros: tamanho da chave (1 byte), chave em UTF-8 e o instante (epoch ms) em que o bucket
+     * volta a ficar cheio. Buckets cheios não são gravados.
+     */
+    @Override
+    public SnapshotLayout snapshotLayout() {
+        return new SnapshotLayout(SNAPSHOT_FORMAT, capacity, period,
+                (long) MAX_BUCKETS * (1 + MAX_SNAPSHOT_KEY_BYTES + Long.BYTES));
+    }
+
+    @Override
+    public int writeSnapshot(ByteBuffer out, long nowMillis) {
+        long periodMillis = period.toMillis();
+        int count = 0;
+        for (Map.Entry<String, Bucket> entry : buckets.asMap().entrySet()) {
+            long used = capacity - entry.getValue().getAvailableTokens();
+            if (used <= 0) continue;
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (key.length > MAX_SNAPSHOT_KEY_BYTES) continue;
+            if (out.remaining() < 1 + key.length + Long.BYTES) break;
+            out.put((byte) key.length).put(key).putLong(nowMillis + used * periodMillis / capacity);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int restoreSnapshot(ByteBuffer in, int count, long nowMillis) {
+        long periodMillis = period.toMillis();
+        int restored = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[in.get() & 0xff];
+            in.get(key);
+            long fullAt = in.getLong();
+            // reposição desde o snapshot já descontada; fração de token arredondada contra o cliente
+            long used = Math.min(capacity, ((fullAt - nowMillis) * capacity + periodMillis - 1) / periodMillis);
+            if (used <= 0) continue;
+            Bandwidth restoredLimit = Bandwidth.builder()
+                    .capacity(capacity)
+                    .refillGreedy(capacity, period)
+                    .initialTokens(capacity - used)
+                    .build();
+            buckets.put(new String(key, StandardCharsets.UTF_8), Bucket.builder().addLimit(restoredLimit).build());
+            restored++;
+        }
+        return restored;
+    }
+
+    // estima quando TODOS os tokens estarão de volta
+    private long resetEpochSeconds(long remaining) {
+        long tokensUsed = capacity - remaining;
+        long nanosPerToken = period.toNanos() / capacity;
+        return Instant.now().plusNanos(tokensUsed * nanosPerToken).getEpochSecond();
+    }
+}
@@ -0,0 +1,111 @@
+package com.commitgen.service;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker por endpoint. Abre quando a taxa de falha nas últimas
+ * {@code windowSize} chamadas passa do limite; aberto, recusa na hora até
+ * {@code openDuration}; depois deixa passar uma única chamada de teste (half-open)
+ * que fecha ou reabre o circuito. Não é thread-safe: o chamador sincroniza.
+ */
+public final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public record Settings(double failureRateThreshold, int windowSize, int minCalls, Duration openDuration) {
+
+        public static final Settings DEFAULTS = new Settings(0.5, 20, 10, Duration.ofSeconds(30));
+    }
+
+    private final Settings settings;
+    // resultados recentes em janela circular: true = falha
+    private final boolean[] outcomes;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    CircuitBreaker(Settings settings) {
+        this.settings = settings;
+        this.outcomes = new boolean[settings.windowSize()];
+    }
+
+    /**
+     * Permite a chamada? Em half-open, só a primeira recebe a permissão de teste.
+     */
+    boolean tryAcquire(long now) {
+        if (state == State.OPEN && now - openedAtNanos >= settings.openDuration().toNanos()) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (trialInFlight) yield false;
+                trialInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            return;
+        }
+        record(false);
+    }
+
+    void onFailure(long now) {
+        if (state == State.HALF_OPEN) {
+            open(now);
+            return;
+        }
+        record(true);
+        int calls = Math.min(recorded, outcomes.length);
+        if (calls >= settings.minCalls() && (double) failures / calls >= settings.failureRateThreshold()) {
+            open(now);
+        }
+    }
+
+    /** Chamada cancelada: devolve a permissão de teste sem contar resultado. */
+    void onCancel() {
+        trialInFlight = false;
+    }
+
+    State state() {
+        return state;
+    }
+
+    long retryAfterNanos(long now) {
+        return state == State.OPEN ? Math.max(0, openedAtNanos + settings.openDuration().toNanos() - now) : 0;
+    }
+
+    private void record(boolean failure) {
+        int slot = recorded % outcomes.length;
+        if (recorded >= outcomes.length && outcomes[slot]) {
+            failures--;
+        }
+        outcomes[slot] = failure;
+        if (failure) {
+            failures++;
+        }
+        recorded++;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAtNanos = now;
+        trialInFlight = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        recorded = 0;
+        failures = 0;
+        trialInFlight = false;
+    }
+}
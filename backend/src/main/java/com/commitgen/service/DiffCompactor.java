@@ -0,0 +1,433 @@
+package com.commitgen.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reduz o diff antes de ir para o prompt: remove o que não ajuda o modelo a inferir
+ * a intenção da mudança (linhas {@code index}, contexto distante, hunks só de whitespace,
+ * binários) e troca arquivos gerados ou enormes por um resumo de uma linha.
+ */
+@Slf4j
+@Service
+public class DiffCompactor {
+
+    static final String DEFAULT_GENERATED_PATTERNS = "**/package-lock.json,**/yarn.lock,**/pnpm-lock.yaml,"
+            + "**/Cargo.lock,**/go.sum,**/poetry.lock,**/composer.lock,**/Gemfile.lock,"
+            + "**/*.min.js,**/*.min.css,**/*.map,**/*.snap,**/dist/**,**/node_modules/**";
+
+    private static final String GIT_HEADER_PREFIX = "diff --git ";
+    private static final Pattern HUNK_HEADER_PATTERN =
+            Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+\\d+(?:,\\d+)? @@ ?(.*)$");
+    private static final List<String> KEPT_META_PREFIXES = List.of(
+            "new file mode", "deleted file mode", "rename from", "rename to", "old mode", "new mode");
+
+    // linguagens em que a indentação delimita blocos: reindentar não é "só whitespace"
+    private static final Pattern INDENTATION_SENSITIVE_PATH = Pattern.compile(
+            "(?i).*(\\.(py|pyi|pyw|ya?ml|coffee|pug|jade|haml|slim|sass|styl|nim|mk)|(^|/)(GNUmakefile|[Mm]akefile))$");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final int contextLines;
+    private final int maxFileLines;
+    private final int maxChars;
+    private final String[] generatedPatterns;
+
+    public DiffCompactor(
+            @Value("${diff.compaction.context-lines:1}") int contextLines,
+            @Value("${diff.compaction.max-file-lines:150}") int maxFileLines,
+            @Value("${diff.compaction.max-chars:12000}") int maxChars,
+            @Value("${diff.compaction.generated-patterns:" + DEFAULT_GENERATED_PATTERNS + "}")
+            String[] generatedPatterns) {
+        this.contextLines = contextLines;
+        this.maxFileLines = maxFileLines;
+        this.maxChars = maxChars;
+        this.generatedPatterns = generatedPatterns;
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    public String compact(String diff) {
+        return compact(diff, maxChars);
+    }
+
+    /**
+     * Compacta o diff para caber em {@code budgetChars}. Texto que não é diff unificado
+     * (descrição livre) passa intacto, apenas truncado ao orçamento.
+     */
+    public String compact(String diff, int budgetChars) {
+        if (diff == null || diff.isEmpty()) return "";
+
+        ParsedDiff parsed = parse(diff);
+        if (parsed.files().isEmpty()) {
+            return truncate(diff, budgetChars);
+        }
+
+        List<String> sections = new ArrayList<>(parsed.files().size() + 1);
+        if (!parsed.preamble().isEmpty()) {
+            sections.add(String.join("\n", parsed.preamble()));
+        }
+        int firstFile = sections.size();
+        for (FileDiff file : parsed.files()) {
+            sections.add(render(file));
+        }
+
+        fitToBudget(sections, parsed.files(), firstFile, budgetChars);
+        String compacted = truncate(String.join("\n", sections), budgetChars);
+        log.debug("Compacted diff from {} to {} chars ({} files)",
+                diff.length(), compacted.length(), parsed.files().size());
+        return compacted;
+    }
+
+    /**
+     * Divide o diff em pedaços de até {@code chunkChars}, agrupando arquivos vizinhos
+     * (o git ordena por caminho, então arquivos do mesmo diretório tendem a ficar juntos).
+     * Cada arquivo é compactado como em {@link #compact(String)}; se o total não couber
+     * em {@code maxChunks}, os maiores arquivos viram resumo. Diffs com menos de dois
+     * arquivos retornam um único pedaço.
+     */
+    public List<String> split(String diff, int chunkChars, int maxChunks) {
+        if (diff == null || diff.isEmpty()) return List.of("");
+
+        ParsedDiff parsed = parse(diff);
+        if (parsed.files().size() < 2) {
+            return List.of(compact(diff, chunkChars));
+        }
+
+        List<String> sections = new ArrayList<>(parsed.files().size());
+        for (FileDiff file : parsed.files()) {
+            sections.add(truncate(render(file), chunkChars));
+        }
+        // empacotamento sequencial usa no máximo 2x o espaço útil — metade do total garante maxChunks
+        fitToBudget(sections, parsed.files(), 0, Math.max(chunkChars, (maxChunks - 1) * chunkChars / 2));
+
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder(String.join("\n", parsed.preamble()));
+        for (String section : sections) {
+            if (!current.isEmpty() && current.length() + section.length() + 1 > chunkChars) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+            if (!current.isEmpty()) {
+                current.append('\n');
+            }
+            current.append(section);
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    // ===== Parsing =====
+
+    ParsedDiff parse(String diff) {
+        List<String> preamble = new ArrayList<>();
+        List<FileDiff> files = new ArrayList<>();
+        FileDiff current = null;
+        Hunk hunk = null;
+
+        String[] lines = diff.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.startsWith(GIT_HEADER_PREFIX)) {
+                current = new FileDiff(line);
+                files.add(current);
+                hunk = null;
+                continue;
+            }
+            // diff unificado sem header do git ("diff -u"): cada par ---/+++ abre um arquivo
+            boolean plainFileHeader = line.startsWith("--- ") && i + 1 < lines.length
+                    && lines[i + 1].startsWith("+++ ")
+                    && (current == null || (current.gitHeader == null && hunk != null));
+            if (plainFileHeader) {
+                current = new FileDiff(null);
+                files.add(current);
+                hunk = null;
+            }
+
+            if (current == null) {
+                preamble.add(line);
+                continue;
+            }
+
+            Matcher hunkHeader = HUNK_HEADER_PATTERN.matcher(line);
+            if (hunkHeader.matches()) {
+                hunk = new Hunk(hunkHeader.group(1).trim());
+                current.hunks.add(hunk);
+            } else if (hunk != null) {
+                if (line.startsWith("+")) {
+                    current.added++;
+                    hunk.added++;
+                } else if (line.startsWith("-")) {
+                    current.removed++;
+                    hunk.removed++;
+                } else if (line.startsWith("\\")) {
+                    continue; // "\ No newline at end of file"
+                }
+                hunk.lines.add(line);
+            } else {
+                current.readMeta(line);
+            }
+        }
+        return new ParsedDiff(preamble, files);
+    }
+
+    // ===== Rendering =====
+
+    private String render(FileDiff file) {
+        StringBuilder out = new StringBuilder();
+        appendTitle(out, file);
+
+        if (file.binary) {
+            return out.append("\n[binary file changed]").toString();
+        }
+        if (isGenerated(file.path())) {
+            return out.append("\n[generated file omitted: +").append(file.added)
+                    .append(" -").append(file.removed).append(" lines]").toString();
+        }
+
+        boolean indentationSensitive = isIndentationSensitive(file.path());
+        int changedBudget = maxFileLines;
+        int keptAdded = 0;
+        int keptRemoved = 0;
+        int whitespaceHunks = 0;
+        int whitespaceAdded = 0;
+        int whitespaceRemoved = 0;
+        for (Hunk hunk : file.hunks) {
+            if (changedBudget <= 0) {
+                break;
+            }
+            if (hunk.isWhitespaceOnly(indentationSensitive)) {
+                whitespaceHunks++;
+                whitespaceAdded += hunk.added;
+                whitespaceRemoved += hunk.removed;
+                continue;
+            }
+            out.append("\n@@");
+            if (!hunk.section.isEmpty()) {
+                out.append(' ').append(hunk.section);
+            }
+            List<String> lines = hunk.lines;
+            boolean[] keep = contextWindow(lines);
+            for (int i = 0; i < lines.size() && changedBudget > 0; i++) {
+                if (!keep[i]) continue;
+                String line = lines.get(i);
+                out.append('\n').append(line);
+                if (line.startsWith("+")) {
+                    keptAdded++;
+                    changedBudget--;
+                } else if (line.startsWith("-")) {
+                    keptRemoved++;
+                    changedBudget--;
+                }
+            }
+        }
+
+        if (whitespaceHunks > 0) {
+            out.append("\n[").append(whitespaceHunks).append(" whitespace-only hunk(s) omitted]");
+        }
+        int moreAdded = file.added - keptAdded - whitespaceAdded;
+        int moreRemoved = file.removed - keptRemoved - whitespaceRemoved;
+        if (moreAdded > 0 || moreRemoved > 0) {
+            out.append("\n[... +").append(moreAdded)
+                    .append(" -").append(moreRemoved).append(" more lines in this file]");
+        }
+        return out.toString();
+    }
+
+    private String summarize(FileDiff file) {
+        StringBuilder out = new StringBuilder();
+        appendTitle(out, file);
+        return out.append("\n[").append(file.added + file.removed).append(" changed lines omitted: +")
+                .append(file.added).append(" -").append(file.removed).append("]").toString();
+    }
+
+    private void appendTitle(StringBuilder out, FileDiff file) {
+        if (file.gitHeader != null) {
+            out.append(file.gitHeader);
+        } else {
+            out.append("--- ").append(file.oldPath).append("\n+++ ").append(file.newPath);
+        }
+        for (String meta : file.meta) {
+            out.append('\n').append(meta);
+        }
+    }
+
+    /**
+     * Mantém apenas {@code contextLines} linhas de contexto ao redor de cada linha alterada.
+     */
+    private boolean[] contextWindow(List<String> lines) {
+        int size = lines.size();
+        boolean[] keep = new boolean[size];
+        int lastChange = Integer.MIN_VALUE / 2;
+        for (int i = 0; i < size; i++) {
+            if (isChange(lines.get(i))) {
+                lastChange = i;
+                keep[i] = true;
+            } else if (i - lastChange <= contextLines) {
+                keep[i] = true;
+            }
+        }
+        int nextChange = Integer.MAX_VALUE / 2;
+        for (int i = size - 1; i >= 0; i--) {
+            if (isChange(lines.get(i))) {
+                nextChange = i;
+            } else if (nextChange - i <= contextLines) {
+                keep[i] = true;
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Enquanto o diff não couber no orçamento, troca o maior arquivo por um resumo.
+     */
+    private void fitToBudget(List<String> sections, List<FileDiff> files, int firstFile, int budgetChars) {
+        int total = sections.stream().mapToInt(s -> s.length() + 1).sum();
+        boolean[] summarized = new boolean[files.size()];
+        while (total > budgetChars) {
+            int largest = -1;
+            for (int i = 0; i < files.size(); i++) {
+                if (!summarized[i] && (largest < 0
+                        || sections.get(firstFile + i).length() > sections.get(firstFile + largest).length())) {
+                    largest = i;
+                }
+            }
+            if (largest < 0) {
+                return;
+            }
+            String summary = summarize(files.get(largest));
+            total += summary.length() - sections.get(firstFile + largest).length();
+            sections.set(firstFile + largest, summary);
+            summarized[largest] = true;
+        }
+    }
+
+    private boolean isGenerated(String path) {
+        if (path == null) return false;
+        for (String pattern : generatedPatterns) {
+            if (pathMatcher.match(pattern.trim(), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIndentationSensitive(String path) {
+        return path != null && INDENTATION_SENSITIVE_PATH.matcher(path).matches();
+    }
+
+    private static boolean isChange(String line) {
+        return line.startsWith("+") || line.startsWith("-");
+    }
+
+    private static String truncate(String text, int budgetChars) {
+        if (text.length() <= budgetChars) return text;
+        String marker = "\n[... diff truncated]";
+        return text.substring(0, Math.max(0, budgetChars - marker.length())) + marker;
+    }
+
+    // ===== Modelo =====
+
+    record ParsedDiff(List<String> preamble, List<FileDiff> files) {
+    }
+
+    static final class FileDiff {
+        private final String gitHeader;
+        private final List<String> meta = new ArrayList<>();
+        private final List<Hunk> hunks = new ArrayList<>();
+        private String oldPath;
+        private String newPath;
+        private boolean binary;
+        private int added;
+        private int removed;
+
+        private FileDiff(String gitHeader) {
+            this.gitHeader = gitHeader;
+            if (gitHeader != null) {
+                // "diff --git a/x b/y" — o caminho de destino vem depois do último " b/"
+                int target = gitHeader.lastIndexOf(" b/");
+                this.newPath = target >= 0 ? gitHeader.substring(target + 1) : null;
+            }
+        }
+
+        private void readMeta(String line) {
+            if (line.startsWith("--- ")) {
+                oldPath = line.substring(4).trim();
+            } else if (line.startsWith("+++ ")) {
+                newPath = line.substring(4).trim();
+            } else if (line.startsWith("Binary files ") || line.startsWith("GIT binary patch")) {
+                binary = true;
+            } else if (KEPT_META_PREFIXES.stream().anyMatch(line::startsWith)) {
+                meta.add(line);
+            }
+        }
+
+        String path() {
+            String path = newPath == null || newPath.equals("/dev/null") ? oldPath : newPath;
+            if (path != null && (path.startsWith("a/") || path.startsWith("b/"))) {
+                return path.substring(2);
+            }
+            return path;
+        }
+    }
+
+    static final class Hunk {
+        private final String section;
+        private final List<String> lines = new ArrayList<>();
+        private int added;
+        private int removed;
+
+        private Hunk(String section) {
+            this.section = section;
+        }
+
+        /**
+         * Hunk cujo lado antigo e lado novo só diferem em espaços entre tokens
+         * (reflow, reindentação, CRLF). Os lados são comparados em ordem, com as linhas de
+         * contexto no lugar, então mover uma linha para o outro lado do contexto (imports
+         * reordenados, por exemplo) não conta, nem juntar ou separar tokens
+         * ({@code int x} → {@code intx}). Em arquivos sensíveis à indentação só espaços no fim
+         * da linha são ignorados, já que mudar a indentação muda o bloco.
+         */
+        boolean isWhitespaceOnly(boolean indentationSensitive) {
+            List<String> before = new ArrayList<>();
+            List<String> after = new ArrayList<>();
+            for (String line : lines) {
+                if (line.startsWith("-")) {
+                    appendSignificant(before, line, indentationSensitive);
+                } else if (line.startsWith("+")) {
+                    appendSignificant(after, line, indentationSensitive);
+                } else {
+                    appendSignificant(before, line, indentationSensitive);
+                    appendSignificant(after, line, indentationSensitive);
+                }
+            }
+            return before.equals(after);
+        }
+
+        private static void appendSignificant(List<String> target, String line, boolean indentationSensitive) {
+            String content = line.isEmpty() ? line : line.substring(1);
+            if (indentationSensitive) {
+                target.add(content.stripTrailing());
+                return;
+            }
+            for (String token : WHITESPACE.split(content.strip())) {
+                if (!token.isEmpty()) {
+                    target.add(token);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.commitgen.service;
+
+import com.commitgen.service.RateLimitService.RateLimitInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limit GCRA (Generic Cell Rate Algorithm) numa tabela de hash aberta de longs:
+ * por cliente só a chave e o TAT ("theoretical arrival time", em epoch millis), 16 bytes
+ * por posição. Com a capacidade padrão (2M posições) ocupa 32 MB e comporta ~1,5M clientes.
+ *
+ * <p>Equivale a um token bucket com {@code limit} tokens e reposição contínua em {@code period}:
+ * cada requisição de custo c empurra o TAT {@code c·period/limit} para frente e é recusada se o TAT passaria
+ * de {@code agora + period}. TAT no passado = bucket cheio, então a posição pode ser reaproveitada
+ * por outro cliente sem perder estado de ninguém — ao contrário do LRU do Caffeine, rodar IPs
+ * não reseta os limites dos outros clientes.
+ *
+ * <p>Chaves: IPv4 vira o próprio int, IPv6 o prefixo /64 (um bloco por cliente, como os
+ * provedores alocam), qualquer outra string um hash. Atualizações são CAS sem lock, e cada
+ * chave ocupa no máximo uma posição mesmo com inserções concorrentes (ver {@link #findOrInsert});
+ * {@link #peek} e {@link #available} não inserem nem alocam estado.
+ */
+@Slf4j
+public class GcraRateLimitBackend implements RateLimitBackend {
+
+    public static final int DEFAULT_CAPACITY = 1 << 21;
+
+    private static final long EMPTY = 0L;
+    // TAT de posição sendo ocupada (vazia ou reaproveitada); quem a encontra espera a troca de dono terminar
+    private static final long CLAIMING = Long.MIN_VALUE;
+    private static final int MAX_PROBES = 32;
+
+    static final int SNAPSHOT_FORMAT = 2;
+
+    private static final long IPV4_TAG = 1L << 32;
+    private static final long IPV6_TAG = 1L << 63;
+    private static final long HASH_TAG = 1L << 62;
+
+    private final int limit;
+    private final long periodMillis;
+    private final long emissionMillis;
+    private final LongSupplier clock;
+
+    // [chave, TAT] intercalados: a leitura do TAT cai na mesma linha de cache da chave
+    private final AtomicLongArray table;
+    private final int mask;
+    private final LongAdder untracked = new LongAdder();
+
+    public GcraRateLimitBackend(int capacity) {
+        this(capacity, RateLimitService.MAX_REQUESTS_PER_HOUR, RateLimitService.REFILL_PERIOD,
+                System::currentTimeMillis);
+    }
+
+    GcraRateLimitBackend(int capacity, int limit, Duration period, LongSupplier clock) {
+        int slots = Integer.highestOneBit((Math.max(MAX_PROBES, capacity) - 1) << 1);
+        this.table = new AtomicLongArray(slots * 2);
+        this.mask = slots - 1;
+        this.limit = limit;
+        this.periodMillis = period.toMillis();
+        this.emissionMillis = periodMillis / limit;
+        if (emissionMillis == 0) {
+            throw new IllegalArgumentException("GCRA limit above 1 per millisecond: " + limit + " per " + period);
+        }
+        this.clock = clock;
+    }
+
+    @Override
+    public RateLimitInfo consume(String client, long cost) {
+        long key = keyOf(client);
+        long now = clock.getAsLong();
+        int slot = findOrInsert(key, now);
+        if (slot < 0) {
+            // tabela cheia de clientes ativos: não derruba quem já está sendo limitado
+            return untracked(now, cost);
+        }
+
+        while (true) {
+            long tat = table.get(slot * 2 + 1);
+            if (tat == CLAIMING || table.get(slot * 2) != key) {
+                // a posição mudou de dono entre a busca e o CAS
+                Thread.onSpinWait();
+                slot = findOrInsert(key, now);
+                if (slot < 0) return untracked(now, cost);
+                continue;
+            }
+            long base = Math.max(tat, now);
+            long newTat = base + cost * emissionMillis;
+            if (newTat - now > periodMillis) {
+                long retryAfterMillis = newTat - now - periodMillis;
+                return info(false, 0, now, base, (retryAfterMillis + 999) / 1000);
+            }
+            if (table.compareAndSet(slot * 2 + 1, tat, newTat)) {
+                return info(true, remaining(newTat, now), now, newTat, 0);
+            }
+        }
+    }
+
+    @Override
+    public void refund(String client, long cost) {
+        long key = keyOf(client);
+        int slot = slotOf(key);
+        if (slot < 0) return;
+        while (true) {
+            long now = clock.getAsLong();
+            long tat = table.get(slot * 2 + 1);
+            // TAT no passado já é bucket cheio; 0 e CLAIMING não têm o que devolver
+            if (tat == CLAIMING || tat <= now || table.get(slot * 2) != key) return;
+            if (table.compareAndSet(slot * 2 + 1, tat, Math.max(now, tat - cost * emissionMillis))) return;
+        }
+    }
+
+    @Override
+    public RateLimitInfo peek(String client) {
+        long now = clock.getAsLong();
+        long tat = Math.max(tatOf(keyOf(client)), now);
+        long remaining = remaining(tat, now);
+        long retryAfterSeconds = remaining > 0 ? 0 : (tat + emissionMillis - now - periodMillis + 999) / 1000;
+        return info(remaining > 0, remaining, now, tat, retryAfterSeconds);
+    }
+
+    @Override
+    public long available(String client) {
+        long now = clock.getAsLong();
+        return remaining(Math.max(tatOf(keyOf(client)), now), now);
+    }
+
+    /**
+     * Outra tabela com a mesma capacidade, mesmo relógio e o limite pedido.
+     */
+    @Override
+    public RateLimitBackend newLimit(String name, long capacity, Duration period) {
+        return new GcraRateLimitBackend(capacity(), Math.toIntExact(capacity), period, clock);
+    }
+
+    /**
+     * Registros: chave e TAT (epoch ms), 16 bytes cada; só clientes com TAT no futuro.
+     */
+    @Override
+    public SnapshotLayout snapshotLayout() {
+        return new SnapshotLayout(SNAPSHOT_FORMAT, limit, Duration.ofMillis(periodMillis), memoryBytes());
+    }
+
+    @Override
+    public int writeSnapshot(ByteBuffer out, long nowMillis) {
+        int count = 0;
+        for (int slot = 0; slot <= mask && out.remaining() >= 2 * Long.BYTES; slot++) {
+            long tat = table.get(slot * 2 + 1);
+            if (tat == CLAIMING || tat <= nowMillis) continue;
+            long key = table.get(slot * 2);
+            // TAT relido: se mudou, a posição pode ter trocado de dono entre as leituras
+            if (key == EMPTY || table.get(slot * 2 + 1) != tat) continue;
+            out.putLong(key).putLong(tat);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int restoreSnapshot(ByteBuffer in, int count, long nowMillis) {
+        int restored = 0;
+        for (int i = 0; i < count; i++) {
+            long key = in.getLong();
+            long tat = in.getLong();
+            if (tat <= nowMillis) continue;
+            int slot = findOrInsert(key, nowMillis);
+            if (slot < 0) continue;
+            while (true) {
+                long current = table.get(slot * 2 + 1);
+                if (current == CLAIMING || current >= tat || table.get(slot * 2) != key) break;
+                if (table.compareAndSet(slot * 2 + 1, current, tat)) {
+                    restored++;
+                    break;
+                }
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Memória ocupada pela tabela, fixa desde a criação.
+     */
+    public long memoryBytes() {
+        return (long) table.length() * Long.BYTES;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Requisições liberadas sem controle porque a tabela estava cheia de clientes ativos.
+     */
+    public long untrackedRequests() {
+        return untracked.sum();
+    }
+
+    private RateLimitInfo untracked(long now, long cost) {
+        untracked.increment();
+        long total = untracked.sum();
+        if (Long.bitCount(total) == 1) {
+            log.warn("Rate limit table full: {} requests from untracked clients allowed so far", total);
+        }
+        return info(true, limit - cost, now, now + cost * emissionMillis, 0);
+    }
+
+    private long remaining(long tat, long now) {
+        return Math.max(0, (periodMillis - (tat - now)) / emissionMillis);
+    }
+
+    private RateLimitInfo info(boolean allowed, long remaining, long now, long tat, long retryAfterSeconds) {
+        return new RateLimitInfo(allowed, remaining, limit, Math.max(tat, now) / 1000, retryAfterSeconds);
+    }
+
+    // TAT do cliente, ou 0 (bucket cheio) se não estiver na tabela
+    private long tatOf(long key) {
+        int slot = slotOf(key);
+        if (slot < 0) return 0;
+        long tat = table.get(slot * 2 + 1);
+        return tat == CLAIMING ? 0 : tat;
+    }
+
+    // Posição da chave, ou -1 se não estiver na tabela; não insere
+    private int slotOf(long key) {
+        int slot = (int) mix(key) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long current = table.get(slot * 2);
+            if (current == EMPTY) return -1;
+            if (current == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /*
+     * Procura a chave na janela de sondagem; se não estiver, ocupa a primeira posição vazia ou,
+     * antes dela, a primeira cujo TAT já passou (bucket cheio: nada a perder). Ocupar é um CAS
+     * no TAT (vazia: 0, reaproveitada: TAT vencido) para CLAIMING, que dá a posição a uma só
+     * thread; só depois de confirmar que a chave não entrou em outra posição da janela é que a
+     * chave é escrita e o TAT volta a 0. Quem sonda e encontra CLAIMING espera: a posição pode
+     * estar virando a chave procurada. Como o TAT seguinte do novo dono é sempre maior que o
+     * antigo, um CAS atrasado do dono anterior nunca acerta o valor (sem ABA).
+     * TAT 0 com chave (posição recém-ocupada, ainda sem consumo) não é reaproveitado.
+     * Retorna -1 se a janela inteira estiver ocupada por clientes ativos.
+     */
+    private int findOrInsert(long key, long now) {
+        while (true) {
+            int slot = (int) mix(key) & mask;
+            int candidate = -1;
+            boolean busy = false;
+            for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+                long current = table.get(slot * 2);
+                if (current == key) return slot;
+                long tat = table.get(slot * 2 + 1);
+                if (tat == CLAIMING) {
+                    busy = true;
+                    break;
+                }
+                if (current == EMPTY) {
+                    if (candidate < 0) candidate = slot;
+                    break;
+                }
+                if (candidate < 0 && tat != 0 && tat <= now) candidate = slot;
+            }
+            if (busy) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (candidate < 0) return -1;
+
+            long tat = table.get(candidate * 2 + 1);
+            boolean claimable = tat == 0 ? table.get(candidate * 2) == EMPTY : tat != CLAIMING && tat <= now;
+            if (!claimable || !table.compareAndSet(candidate * 2 + 1, tat, CLAIMING)) continue;
+            // vazia ocupada por outra chave entre a leitura e o CAS (ela publica a chave antes do TAT 0)
+            if (tat == 0 && table.get(candidate * 2) != EMPTY) {
+                table.set(candidate * 2 + 1, 0);
+                continue;
+            }
+
+            int existing = confirmClaim(key, candidate);
+            if (existing == candidate) {
+                table.set(candidate * 2, key);
+                table.set(candidate * 2 + 1, 0);
+                return candidate;
+            }
+            // devolve a posição como estava: a chave já existe ou outra ocupação tem precedência
+            table.set(candidate * 2 + 1, tat);
+            if (existing >= 0) return existing;
+            Thread.onSpinWait();
+        }
+    }
+
+    /*
+     * Com a posição {@code claimed} em CLAIMING, varre a janela da chave de novo. Retorna outra
+     * posição se a chave já estiver nela, {@code claimed} se puder ser escrita ali, ou -1 se
+     * houver outra ocupação em curso numa posição de índice menor: ela tem precedência e esta
+     * desiste. Ocupações de índice maior são esperadas; como a ordem é a mesma para todas as
+     * threads, ninguém espera em ciclo. Entre duas ocupações da mesma chave, pelo menos uma vê
+     * a outra (cada uma marca a posição antes de varrer), então no máximo uma escreve a chave.
+     */
+    private int confirmClaim(long key, int claimed) {
+        while (true) {
+            int slot = (int) mix(key) & mask;
+            boolean busy = false;
+            for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+                if (slot == claimed) continue;
+                long current = table.get(slot * 2);
+                if (current == key) return slot;
+                long tat = table.get(slot * 2 + 1);
+                if (tat == CLAIMING) {
+                    if (slot < claimed) return -1;
+                    busy = true;
+                    break;
+                }
+                if (current == EMPTY) break;
+            }
+            if (!busy) return claimed;
+            Thread.onSpinWait();
+        }
+    }
+
+    static long keyOf(String client) {
+        long ipv4 = parseIpv4(client, 0, client.length());
+        if (ipv4 >= 0) return IPV4_TAG | ipv4;
+        if (client.indexOf(':') >= 0) {
+            long ipv6 = ipv6Key(client);
+            if (ipv6 != 0) return ipv6;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < client.length(); i++) {
+            hash = (hash ^ client.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash | HASH_TAG) & ~IPV6_TAG;
+    }
+
+    // IPv4 em [from, to) como int sem sinal, ou -1
+    private static long parseIpv4(String s, int from, int to) {
+        long address = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? s.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) return -1;
+            } else if (c == '.' && value >= 0 && octets < 4) {
+                address = (address << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    /*
+     * Prefixo /64 do IPv6 (primeiros 4 grupos), já com a tag; 0 se não for IPv6 válido.
+     * Trata "::" e IPv4 mapeado (::ffff:a.b.c.d vira a chave do IPv4); ignora a zona (%eth0).
+     */
+    private static long ipv6Key(String s) {
+        int end = s.indexOf('%');
+        if (end < 0) end = s.length();
+        int compression = s.indexOf("::");
+        if (compression >= 0 && s.indexOf("::", compression + 1) >= 0) return 0;
+
+        int lastColon = s.lastIndexOf(':', end - 1);
+        if (s.indexOf('.', lastColon) >= 0) {
+            // só ::ffff:a.b.c.d é tratado como o IPv4 correspondente
+            long ipv4 = parseIpv4(s, lastColon + 1, end);
+            if (ipv4 < 0 || !s.regionMatches(true, 0, "::ffff:", 0, lastColon + 1)) return 0;
+            return IPV4_TAG | ipv4;
+        }
+
+        // grupos antes do "::" ocupam o início; os depois, o fim dos 8 grupos
+        int headEnd = compression >= 0 ? compression : end;
+        int headGroups = compression == 0 ? 0 : countGroups(s, 0, headEnd);
+        int tailGroups = compression >= 0 && compression + 2 < end ? countGroups(s, compression + 2, end) : 0;
+        if (headGroups < 0 || tailGroups < 0) return 0;
+        if (compression < 0 ? headGroups != 8 : headGroups + tailGroups > 7) return 0;
+
+        long prefix = 0;
+        int group = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= headEnd && group < 4; i++) {
+            char c = i < headEnd ? s.charAt(i) : ':';
+            if (c == ':') {
+                if (digits == 0) break;
+                prefix = (prefix << 16) | value;
+                group++;
+                value = 0;
+                digits = 0;
+            } else {
+                value = (value << 4) | Character.digit(c, 16);
+                digits++;
+            }
+        }
+        // grupos comprimidos e do fim que caem nos 4 primeiros
+        int firstTail = 8 - tailGroups;
+        for (; group < 4; group++) {
+            int tailIndex = group - firstTail;
+            prefix = (prefix << 16) | (tailIndex >= 0 ? tailGroup(s, compression + 2, end, tailIndex) : 0);
+        }
+        return mix(prefix) | IPV6_TAG;
+    }
+
+    // Número de grupos hex de 1-4 dígitos separados por ':' em [from, to), ou -1
+    private static int countGroups(String s, int from, int to) {
+        int groups = 0;
+        int digits = 0;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? s.charAt(i) : ':';
+            if (c == ':') {
+                if (digits == 0) return -1;
+                groups++;
+                digits = 0;
+            } else if (Character.digit(c, 16) >= 0 && digits < 4) {
+                digits++;
+            } else {
+                return -1;
+            }
+        }
+        return groups;
+    }
+
+    private static int tailGroup(String s, int from, int to, int index) {
+        int group = 0;
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == ':') {
+                if (group == index) return value;
+                group++;
+                value = 0;
+            } else {
+                value = (value << 4) | Character.digit(c, 16);
+            }
+        }
+        return value;
+    }
+
+    // Finalizador do MurmurHash3
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
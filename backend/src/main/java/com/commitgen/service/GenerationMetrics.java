@@ -0,0 +1,150 @@
+package com.commitgen.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas do pipeline de geração, expostas em {@code /actuator/prometheus}:
+ * <ul>
+ *   <li>{@code commitgen.generation} — geração inteira, por modo (sync/stream), cache e resultado</li>
+ *   <li>{@code commitgen.generation.stage} — cada etapa: rate limit, prompt (inclui a etapa map do
+ *       map-reduce, que também tem timer próprio), upstream e parse</li>
+ *   <li>{@code commitgen.upstream.errors} — erros do upstream por tipo, inclusive tentativas repetidas</li>
+ *   <li>{@code commitgen.parse.fallback} — respostas sem lista numerada</li>
+ *   <li>{@code commitgen.parse} — parse de cada resposta, por formato pedido (text/json) e resultado:
+ *       {@code ok}, {@code fallback} (fora do formato, parseada linha a linha) ou {@code empty}</li>
+ *   <li>{@code commitgen.rate_limit.rejected} — requisições recusadas, por limite (requests/tokens)</li>
+ *   <li>{@code commitgen.prompt.tokens} / {@code commitgen.completion.tokens} — tamanhos estimados,
+ *       por estilo e idioma</li>
+ * </ul>
+ * Timers publicam p50/p95/p99 e o histograma (agregável entre réplicas com {@code histogram_quantile}).
+ */
+@Component
+public class GenerationMetrics {
+
+    public static final String STAGE_RATE_LIMIT = "rate_limit";
+    public static final String STAGE_PROMPT = "prompt";
+    public static final String STAGE_MAP = "map";
+    public static final String STAGE_UPSTREAM = "upstream";
+    public static final String STAGE_PARSE = "parse";
+
+    public static final String MODE_SYNC = "sync";
+    public static final String MODE_STREAM = "stream";
+    // etapas comuns a sync, stream e batch (o rate limit é cobrado antes de saber o caminho)
+    public static final String MODE_ALL = "all";
+
+    public static final String FORMAT_TEXT = "text";
+    public static final String FORMAT_JSON = "json";
+
+    public static final String PARSE_OK = "ok";
+    public static final String PARSE_FALLBACK = "fallback";
+    public static final String PARSE_EMPTY = "empty";
+
+    private final MeterRegistry registry;
+    // registrar a cada chamada custa uma busca no registry (e disputa entre threads): cada meter é criado uma vez
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> generationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public GenerationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Sem registry: as métricas são descartadas (testes e construtores sem Spring).
+     */
+    public static GenerationMetrics noop() {
+        return new GenerationMetrics(new CompositeMeterRegistry());
+    }
+
+    /**
+     * Registra a etapa iniciada em {@code startNanos} e retorna o instante atual,
+     * que serve de início para a próxima.
+     */
+    public long stage(String stage, String mode, long startNanos) {
+        long now = System.nanoTime();
+        stageTimers.computeIfAbsent(stage + '|' + mode, key -> Timer.builder("commitgen.generation.stage")
+                        .description("Duração de cada etapa da geração")
+                        .tag("stage", stage)
+                        .tag("mode", mode)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void generation(String mode, boolean cached, boolean success, long startNanos) {
+        String outcome = success ? "success" : "error";
+        String key = mode + '|' + cached + '|' + outcome;
+        generationTimers.computeIfAbsent(key, k -> Timer.builder("commitgen.generation")
+                        .description("Duração da geração inteira")
+                        .tag("mode", mode)
+                        .tag("cached", String.valueOf(cached))
+                        .tag("outcome", outcome)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param type ex.: {@code http_429}, {@code http_5xx}, {@code io}, {@code circuit_open}
+     */
+    public void upstreamError(String type) {
+        counter("commitgen.upstream.errors", "Erros do upstream por tipo", "type", type).increment();
+    }
+
+    // style e language já resolvidos pelo PromptTemplateRegistry: as tags ficam limitadas aos templates carregados
+    public void parseFallback(String style) {
+        counter("commitgen.parse.fallback", "Respostas sem lista numerada, parseadas linha a linha",
+                "style", style).increment();
+    }
+
+    public void parse(String format, String outcome) {
+        counters.computeIfAbsent("commitgen.parse|" + format + '|' + outcome, key -> Counter.builder("commitgen.parse")
+                        .description("Respostas parseadas, por formato pedido e resultado")
+                        .tag("format", format)
+                        .tag("outcome", outcome)
+                        .register(registry))
+                .increment();
+    }
+
+    public void rateLimitRejected(String limit) {
+        counter("commitgen.rate_limit.rejected", "Requisições recusadas pelo rate limit", "limit", limit).increment();
+    }
+
+    private Counter counter(String name, String description, String tag, String value) {
+        return counters.computeIfAbsent(name + '|' + value, key -> Counter.builder(name)
+                .description(description)
+                .tag(tag, value)
+                .register(registry));
+    }
+
+    public void sizes(String style, String language, int promptTokens, int completionTokens) {
+        summary("commitgen.prompt.tokens", "Tokens estimados do prompt (sistema + usuário)", style, language)
+                .record(promptTokens);
+        summary("commitgen.completion.tokens", "Tokens estimados da resposta", style, language)
+                .record(completionTokens);
+    }
+
+    private DistributionSummary summary(String name, String description, String style, String language) {
+        return summaries.computeIfAbsent(name + '|' + style + '|' + language,
+                key -> DistributionSummary.builder(name)
+                        .description(description)
+                        .baseUnit("tokens")
+                        .tag("style", style)
+                        .tag("language", language)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(registry));
+    }
+}
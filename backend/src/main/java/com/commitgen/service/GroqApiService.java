@@ -1,71 +1,288 @@
 package com.commitgen.service;
 
 import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
-import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class GroqApiService {
 
     private static final String CONTENT_KEY = "content";
+    private static final String SSE_DATA_PREFIX = "data:";
+    private static final String SSE_DONE = "[DONE]";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
-    private final RestClient restClient;
+    public static final int DEFAULT_MAX_TOKENS = 500;
+
+    // JSON mode da API: o modelo só pode devolver um objeto JSON válido
+    private static final Map<String, String> JSON_OBJECT_FORMAT = Map.of("type", "json_object");
+
+    private final LlmRouter router;
+    private final TokenEstimator tokenEstimator;
+    private final RequestHedger hedger;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final UpstreamRetry retry;
+    private final GenerationMetrics metrics;
+
+    // Prompts idênticos em andamento compartilham uma única chamada à API
+    private final SingleFlight<PromptKey, Completion> inFlightCalls = new SingleFlight<>();
 
     @Value("${groq.model:llama-3.3-70b-versatile}")
     private String model;
 
+    @Autowired
+    public GroqApiService(LlmRouter router, TokenEstimator tokenEstimator, RequestHedger hedger,
+                          AdaptiveConcurrencyLimiter limiter, UpstreamRetry retry, GenerationMetrics metrics) {
+        this.router = router;
+        this.tokenEstimator = tokenEstimator;
+        this.hedger = hedger;
+        this.limiter = limiter;
+        this.retry = retry;
+        this.metrics = metrics;
+    }
+
+    public GroqApiService(LlmRouter router, TokenEstimator tokenEstimator, RequestHedger hedger,
+                          AdaptiveConcurrencyLimiter limiter, UpstreamRetry retry) {
+        this(router, tokenEstimator, hedger, limiter, retry, GenerationMetrics.noop());
+    }
+
+    public GroqApiService(LlmRouter router, TokenEstimator tokenEstimator) {
+        this(router, tokenEstimator, RequestHedger.disabled(), AdaptiveConcurrencyLimiter.unlimited(),
+                UpstreamRetry.none());
+    }
+
+    public GroqApiService(RestClient restClient, TokenEstimator tokenEstimator) {
+        this(LlmRouter.single(new LlmEndpoint("groq", null, restClient)), tokenEstimator);
+    }
+
     public GroqApiService(RestClient restClient) {
-        this.restClient = restClient;
+        this(restClient, new TokenEstimator());
     }
 
-    public String getModel() {
-        return model;
+    /**
+     * Conteúdo gerado e o modelo do endpoint que de fato respondeu (com roteamento, failover
+     * ou hedge, não é necessariamente o primário).
+     */
+    public record Completion(String content, String model) {
     }
 
-    @SuppressWarnings("unchecked")
-    public String chat(String systemPrompt, String userPrompt) {
-        Map<String, Object> requestBody = Map.of(
-                "model", model,
-                "messages", List.of(
-                        Map.of("role", "system", CONTENT_KEY, systemPrompt),
-                        Map.of("role", "user", CONTENT_KEY, userPrompt)
-                ),
-                "temperature", 0.7,
-                "max_tokens", 500
-        );
+    public Completion chat(String systemPrompt, String userPrompt) {
+        return chat(systemPrompt, userPrompt, DEFAULT_MAX_TOKENS);
+    }
+
+    public Completion chat(String systemPrompt, String userPrompt, int maxTokens) {
+        return chat(systemPrompt, userPrompt, maxTokens, false);
+    }
+
+    /**
+     * Com {@code jsonObject}, pede {@code response_format: json_object}; o prompt precisa
+     * mencionar JSON e descrever o formato esperado.
+     */
+    public Completion chat(String systemPrompt, String userPrompt, int maxTokens, boolean jsonObject) {
+        return chat(systemPrompt, userPrompt, maxTokens, jsonObject, UpstreamRetry.NO_DEADLINE);
+    }
+
+    /**
+     * {@code requestDeadline} (nanoTime) é o prazo da requisição, normalmente o SLO da admissão:
+     * esperas por cota e retries não passam dele. Chamadas idênticas coalescidas seguem o prazo da
+     * primeira, mas cada uma desiste de esperar quando o próprio prazo acaba.
+     */
+    public Completion chat(String systemPrompt, String userPrompt, int maxTokens, boolean jsonObject,
+                           long requestDeadline) {
+        long deadline = retry.deadlineFromNow(requestDeadline);
+        PromptKey key = new PromptKey(systemPrompt, userPrompt, maxTokens, jsonObject);
+        return inFlightCalls.execute(key, deadline, () -> {
+            try {
+                return hedger.execute(() -> router.execute(endpoint -> callChatCompletions(
+                        endpoint, systemPrompt, userPrompt, maxTokens, jsonObject, deadline)));
+            } catch (UpstreamUnavailableException e) {
+                metrics.upstreamError(e.getReason().code());
+                throw e;
+            }
+        });
+    }
+
+    public Completion chatStream(String systemPrompt, String userPrompt, Consumer<String> onDelta) {
+        return chatStream(systemPrompt, userPrompt, DEFAULT_MAX_TOKENS, onDelta);
+    }
+
+    /**
+     * Chama a API com {@code stream=true}, repassando cada fragmento de texto
+     * para {@code onDelta} assim que chega. Retorna o conteúdo completo ao final.
+     */
+    public Completion chatStream(String systemPrompt, String userPrompt, int maxTokens, Consumer<String> onDelta) {
+        return chatStream(systemPrompt, userPrompt, maxTokens, UpstreamRetry.NO_DEADLINE, onDelta);
+    }
 
+    public Completion chatStream(String systemPrompt, String userPrompt, int maxTokens, long requestDeadline,
+                                 Consumer<String> onDelta) {
+        // failover só enquanto nada foi repassado ao cliente
+        AtomicBoolean emitted = new AtomicBoolean();
+        Consumer<String> tracking = delta -> {
+            emitted.set(true);
+            onDelta.accept(delta);
+        };
+        long deadline = retry.deadlineFromNow(requestDeadline);
         try {
-            log.debug("Calling GroqCloud API with model={}", model);
-            Map<?, ?> response = restClient.post()
+            return router.execute(
+                    endpoint -> callChatStream(endpoint, systemPrompt, userPrompt, maxTokens, tracking, deadline),
+                    () -> !emitted.get());
+        } catch (UpstreamUnavailableException e) {
+            // recusas locais (circuito aberto, concorrência, cota); erros HTTP contam em UpstreamRetry
+            metrics.upstreamError(e.getReason().code());
+            throw e;
+        }
+    }
+
+    private Completion callChatStream(LlmEndpoint endpoint, String systemPrompt, String userPrompt,
+                                  int maxTokens, Consumer<String> onDelta, long deadline) {
+        Map<String, Object> requestBody = requestBody(endpoint, systemPrompt, userPrompt, maxTokens, true, false);
+        int estimatedPrompt = estimatePrompt(systemPrompt, userPrompt);
+
+        // erros de status chegam antes do corpo, então repetir não duplica fragmentos já enviados
+        return retry.execute(endpoint.quota(), estimatedPrompt + maxTokens, deadline, () -> limiter.execute(() -> {
+            log.debug("Calling LLM endpoint '{}' (stream) with model={}", endpoint.name(), modelFor(endpoint));
+            return endpoint.restClient().post()
                     .uri("/chat/completions")
                     .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.TEXT_EVENT_STREAM)
                     .body(requestBody)
-                    .retrieve()
-                    .body(Map.class);
+                    .exchange((request, response) -> {
+                        if (response.getStatusCode().isError()) {
+                            throw new RestClientResponseException("GroqCloud API returned " + response.getStatusCode(),
+                                    response.getStatusCode(), response.getStatusText(), response.getHeaders(),
+                                    null, null);
+                        }
+                        endpoint.quota().update(response.getHeaders(), System.nanoTime());
+                        return new Completion(readStream(response.getBody(), onDelta, estimatedPrompt, maxTokens),
+                                modelFor(endpoint));
+                    });
+        }, false));
+    }
 
-            if (response == null) {
-                throw new GroqApiException("Empty response from GroqCloud API");
+    private String readStream(InputStream body, Consumer<String> onDelta,
+                              int estimatedPrompt, int maxTokens) throws IOException {
+        StringBuilder content = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith(SSE_DATA_PREFIX)) {
+                continue; // linhas em branco, comentários e outros campos do SSE
             }
-
-            List<Map<?, ?>> choices = (List<Map<?, ?>>) response.get("choices");
-            if (choices == null || choices.isEmpty()) {
-                throw new GroqApiException("No choices in GroqCloud response");
+            String data = line.substring(SSE_DATA_PREFIX.length()).trim();
+            if (SSE_DONE.equals(data)) {
+                break;
+            }
+            JsonNode chunk = MAPPER.readTree(data);
+            JsonNode delta = chunk.path("choices").path(0).path("delta").path(CONTENT_KEY);
+            if (delta.isTextual() && !delta.asText().isEmpty()) {
+                content.append(delta.asText());
+                onDelta.accept(delta.asText());
             }
+            // a GroqCloud envia o usage no último chunk, em "x_groq"
+            JsonNode usage = chunk.has("usage") ? chunk.path("usage") : chunk.path("x_groq").path("usage");
+            if (usage.isObject()) {
+                tokenEstimator.recordUsage(estimatedPrompt, usage.path("prompt_tokens").asInt(),
+                        maxTokens, usage.path("completion_tokens").asInt());
+            }
+        }
+        return content.toString();
+    }
+
+    private int estimatePrompt(String systemPrompt, String userPrompt) {
+        return tokenEstimator.estimate(systemPrompt) + tokenEstimator.estimate(userPrompt);
+    }
+
+    private String modelFor(LlmEndpoint endpoint) {
+        return endpoint.model() != null ? endpoint.model() : model;
+    }
+
+    private Map<String, Object> requestBody(LlmEndpoint endpoint, String systemPrompt, String userPrompt,
+                                            int maxTokens, boolean stream, boolean jsonObject) {
+        Map<String, Object> body = new HashMap<>(Map.of(
+                "model", modelFor(endpoint),
+                "messages", List.of(
+                        Map.of("role", "system", CONTENT_KEY, systemPrompt),
+                        Map.of("role", "user", CONTENT_KEY, userPrompt)
+                ),
+                "temperature", 0.7,
+                "max_tokens", maxTokens,
+                "stream", stream
+        ));
+        if (jsonObject) {
+            body.put("response_format", JSON_OBJECT_FORMAT);
+        }
+        return body;
+    }
+
+    private Completion callChatCompletions(LlmEndpoint endpoint, String systemPrompt, String userPrompt,
+                                       int maxTokens, boolean jsonObject, long deadline) {
+        int estimatedPrompt = estimatePrompt(systemPrompt, userPrompt);
+        // a vaga do limite é por tentativa: espera por cota e backoff não a ocupam nem entram na amostra
+        return retry.execute(endpoint.quota(), estimatedPrompt + maxTokens, deadline, () -> limiter.execute(() ->
+                doCallChatCompletions(endpoint, systemPrompt, userPrompt, maxTokens, jsonObject, estimatedPrompt)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Completion doCallChatCompletions(LlmEndpoint endpoint, String systemPrompt, String userPrompt,
+                                         int maxTokens, boolean jsonObject, int estimatedPrompt) {
+        Map<String, Object> requestBody = requestBody(endpoint, systemPrompt, userPrompt, maxTokens, false, jsonObject);
+
+        log.debug("Calling LLM endpoint '{}' with model={}", endpoint.name(), modelFor(endpoint));
+        ResponseEntity<Map> entity = endpoint.restClient().post()
+                .uri("/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(requestBody)
+                .retrieve()
+                .toEntity(Map.class);
+        endpoint.quota().update(entity.getHeaders(), System.nanoTime());
 
-            Map<?, ?> message = (Map<?, ?>) choices.get(0).get("message");
-            return (String) message.get(CONTENT_KEY);
+        Map<?, ?> response = entity.getBody();
+        if (response == null) {
+            metrics.upstreamError("invalid_response");
+            throw new GroqApiException("Empty response from GroqCloud API");
+        }
+
+        List<Map<?, ?>> choices = (List<Map<?, ?>>) response.get("choices");
+        if (choices == null || choices.isEmpty()) {
+            metrics.upstreamError("invalid_response");
+            throw new GroqApiException("No choices in GroqCloud response");
+        }
 
-        } catch (RestClientException e) {
-            log.error("Error calling GroqCloud API: {}", e.getMessage());
-            throw new GroqApiException("Failed to call GroqCloud API: " + e.getMessage(), e);
+        if (response.get("usage") instanceof Map<?, ?> usage) {
+            tokenEstimator.recordUsage(estimatedPrompt,
+                    asInt(usage.get("prompt_tokens")), maxTokens, asInt(usage.get("completion_tokens")));
         }
+
+        Map<?, ?> message = (Map<?, ?>) choices.get(0).get("message");
+        return new Completion((String) message.get(CONTENT_KEY), modelFor(endpoint));
+    }
+
+    private static int asInt(Object value) {
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
+    private record PromptKey(String systemPrompt, String userPrompt, int maxTokens, boolean jsonObject) {
     }
 }
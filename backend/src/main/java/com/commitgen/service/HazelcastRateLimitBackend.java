@@ -0,0 +1,164 @@
+package com.commitgen.service;
+
+import com.commitgen.service.RateLimitService.RateLimitInfo;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.ExpirationAfterWriteStrategy;
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.RemoteBucketBuilder;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.github.bucket4j.grid.hazelcast.HazelcastProxyManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static com.commitgen.service.RateLimitService.MAX_REQUESTS_PER_HOUR;
+import static com.commitgen.service.RateLimitService.REFILL_PERIOD;
+
+/**
+ * Rate limit compartilhado entre réplicas: o estado dos buckets fica num {@code IMap} de um
+ * cluster Hazelcast embarcado (um membro por réplica) e é alterado por entry processors do Bucket4j.
+ * <p>
+ * Com {@code maxUnsynchronizedTokens > 0}, cada réplica libera até esse número de requisições
+ * por IP a partir do último estado conhecido antes de sincronizar com o cluster. Isso evita
+ * uma ida ao cluster por requisição, ao custo de até {@code réplicas × maxUnsynchronizedTokens}
+ * requisições além do limite.
+ */
+@Slf4j
+public class HazelcastRateLimitBackend extends BucketRateLimitBackend implements AutoCloseable {
+
+    static final String MAP_NAME = "commitgen-rate-limit";
+    // Base dos type ids dos serializers do Bucket4j; precisa ser igual em todos os membros
+    private static final int SERIALIZER_TYPE_ID_BASE = 1000;
+
+    private final HazelcastInstance hazelcast;
+    private final ProxyManager<String> proxyManager;
+    private final BucketConfiguration configuration;
+    private final DelayParameters delay;
+
+    /**
+     * @param hazelcast membro já iniciado; é encerrado em {@link #close()}
+     * @param delay     sincronização em lote, ou null para ir ao cluster em toda requisição
+     */
+    public HazelcastRateLimitBackend(HazelcastInstance hazelcast, DelayParameters delay) {
+        this(hazelcast, delay, MAP_NAME, MAX_REQUESTS_PER_HOUR, REFILL_PERIOD);
+    }
+
+    private HazelcastRateLimitBackend(HazelcastInstance hazelcast, DelayParameters delay, String mapName,
+                                      long capacity, Duration period) {
+        super(capacity, period);
+        this.hazelcast = hazelcast;
+        this.delay = delay;
+        this.configuration = BucketConfiguration.builder().addLimit(limit()).build();
+        // Entrada some do mapa quando o bucket volta a ficar cheio: memória proporcional aos IPs ativos
+        this.proxyManager = new HazelcastProxyManager<>(hazelcast.getMap(mapName),
+                ClientSideConfig.getDefault().withExpirationAfterWriteStrategy(
+                        ExpirationAfterWriteStrategy.basedOnTimeForRefillingBucketUpToMax(Duration.ofMinutes(1))));
+    }
+
+    /**
+     * Configuração do membro embarcado.
+     *
+     * @param members endereços dos outros membros (TCP/IP); vazio = descoberta por multicast
+     */
+    public static Config config(String clusterName, int port, List<String> members) {
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        // O Spring encerra o membro no shutdown do contexto
+        config.setProperty("hazelcast.shutdownhook.enabled", "false");
+        config.getNetworkConfig().setPort(port).setPortAutoIncrement(true);
+
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getAutoDetectionConfig().setEnabled(false);
+        if (members.isEmpty()) {
+            join.getMulticastConfig().setEnabled(true);
+        } else {
+            join.getMulticastConfig().setEnabled(false);
+            join.getTcpIpConfig().setEnabled(true).setMembers(members);
+        }
+        HazelcastProxyManager.addCustomSerializers(config.getSerializationConfig(), SERIALIZER_TYPE_ID_BASE);
+        return config;
+    }
+
+    public static HazelcastRateLimitBackend start(Config config, DelayParameters delay) {
+        HazelcastInstance hazelcast = Hazelcast.newHazelcastInstance(config);
+        log.info("Hazelcast rate limiter joined cluster '{}' with {} member(s)",
+                config.getClusterName(), hazelcast.getCluster().getMembers().size());
+        return new HazelcastRateLimitBackend(hazelcast, delay);
+    }
+
+    @Override
+    protected Bucket createBucket(String ip) {
+        RemoteBucketBuilder<String> builder = proxyManager.builder();
+        if (delay != null) {
+            builder = builder.withOptimization(Optimizations.delaying(delay));
+        }
+        return builder.build(ip, () -> configuration);
+    }
+
+    @Override
+    public RateLimitInfo consume(String ip, long cost) {
+        try {
+            return super.consume(ip, cost);
+        } catch (RuntimeException e) {
+            // Cluster indisponível não derruba a geração: libera sem contar (fail-open)
+            log.warn("Distributed rate limit unavailable, allowing request: {}", e.getMessage());
+            return new RateLimitInfo(true, capacity, capacity, Instant.now().plus(period).getEpochSecond(), 0);
+        }
+    }
+
+    @Override
+    public void refund(String ip, long cost) {
+        try {
+            super.refund(ip, cost);
+        } catch (RuntimeException e) {
+            log.warn("Distributed rate limit unavailable, refund of {} lost: {}", cost, e.getMessage());
+        }
+    }
+
+    /**
+     * Limite em outro mapa do mesmo membro; o membro continua sendo encerrado só por este backend.
+     */
+    @Override
+    public RateLimitBackend newLimit(String name, long capacity, Duration period) {
+        return new HazelcastRateLimitBackend(hazelcast, delay, MAP_NAME + "-" + name, capacity, period);
+    }
+
+    @Override
+    protected Bucket existingBucket(String ip) {
+        Bucket bucket = super.existingBucket(ip);
+        if (bucket == null && proxyManager.getProxyConfiguration(ip).isPresent()) {
+            // IP já visto por outra réplica
+            bucket = createBucket(ip);
+            remember(ip, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * O estado fica no cluster, que sobrevive ao restart de uma réplica: nada a gravar.
+     */
+    @Override
+    public SnapshotLayout snapshotLayout() {
+        return null;
+    }
+
+    public HazelcastInstance hazelcast() {
+        return hazelcast;
+    }
+
+    @Override
+    public void close() {
+        hazelcast.shutdown();
+    }
+}
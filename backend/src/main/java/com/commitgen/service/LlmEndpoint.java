@@ -0,0 +1,14 @@
+package com.commitgen.service;
+
+import org.springframework.web.client.RestClient;
+
+/**
+ * Um backend OpenAI-compatível ({@code /chat/completions}): GroqCloud, outro modelo da Groq
+ * ou um servidor próprio. {@code model} nulo usa o {@code groq.model} padrão.
+ */
+public record LlmEndpoint(String name, String model, RestClient restClient, UpstreamQuota quota) {
+
+    public LlmEndpoint(String name, String model, RestClient restClient) {
+        this(name, model, restClient, new UpstreamQuota());
+    }
+}
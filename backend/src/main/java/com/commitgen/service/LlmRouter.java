@@ -0,0 +1,235 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.UpstreamRejectedException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Escolhe o endpoint com a melhor latência recente (EWMA), penalizada pela taxa de erro,
+ * e faz failover para os próximos quando a chamada falha.
+ * Endpoints sem amostra recente recebem uma requisição de sondagem por vez, para que
+ * um upstream que se recuperou volte a receber tráfego. Cada endpoint tem seu
+ * {@link CircuitBreaker}: com o circuito aberto ele é pulado sem esperar timeout.
+ * Só contam como falha do endpoint 5xx, 429, timeouts e erros de conexão; outros 4xx
+ * ({@link UpstreamRejectedException}) são erro do pedido e voltam direto, sem failover.
+ */
+@Slf4j
+public class LlmRouter {
+
+    private static final double EWMA_ALPHA = 0.3;
+    // 100% de erro recente multiplica a latência efetiva por 11
+    private static final double ERROR_PENALTY = 10.0;
+    private static final double UNKNOWN_LATENCY_MS = 1000.0;
+    // falha rápida (401, 500 imediato) não pode parecer um endpoint rápido
+    private static final double FAILURE_LATENCY_FLOOR_MS = 1000.0;
+
+    private final List<Stats> endpoints;
+    private final long probeIntervalNanos;
+    private final long errorDecayNanos;
+    private final CircuitBreaker.Settings breakerSettings;
+    private final LongSupplier clock;
+
+    public LlmRouter(List<LlmEndpoint> endpoints, Duration probeInterval, Duration errorDecay) {
+        this(endpoints, probeInterval, errorDecay, CircuitBreaker.Settings.DEFAULTS);
+    }
+
+    public LlmRouter(List<LlmEndpoint> endpoints, Duration probeInterval, Duration errorDecay,
+                     CircuitBreaker.Settings breakerSettings) {
+        this(endpoints, probeInterval, errorDecay, breakerSettings, System::nanoTime);
+    }
+
+    LlmRouter(List<LlmEndpoint> endpoints, Duration probeInterval, Duration errorDecay,
+              CircuitBreaker.Settings breakerSettings, LongSupplier clock) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one LLM endpoint is required");
+        }
+        this.breakerSettings = breakerSettings;
+        this.endpoints = endpoints.stream().map(Stats::new).toList();
+        this.probeIntervalNanos = probeInterval.toNanos();
+        this.errorDecayNanos = Math.max(1, errorDecay.toNanos());
+        this.clock = clock;
+    }
+
+    public static LlmRouter single(LlmEndpoint endpoint) {
+        return new LlmRouter(List.of(endpoint), Duration.ofSeconds(10), Duration.ofSeconds(30));
+    }
+
+    public LlmEndpoint primary() {
+        return endpoints.get(0).endpoint;
+    }
+
+    public <T> T execute(Function<LlmEndpoint, T> call) {
+        return execute(call, () -> true);
+    }
+
+    /**
+     * Executa {@code call} no melhor endpoint; em {@link GroqApiException} tenta o próximo
+     * enquanto {@code canFailover} permitir (ex.: streaming que ainda não emitiu nada).
+     * {@link UpstreamRejectedException} e exceções que não são do upstream não trocam de endpoint.
+     */
+    public <T> T execute(Function<LlmEndpoint, T> call, BooleanSupplier canFailover) {
+        GroqApiException lastFailure = null;
+        for (Stats stats : ranked()) {
+            long start = clock.getAsLong();
+            if (!stats.tryAcquire(start)) {
+                continue; // circuito aberto
+            }
+            try {
+                T result = call.apply(stats.endpoint);
+                long end = clock.getAsLong();
+                stats.recordSuccess(end - start, end);
+                return result;
+            } catch (UpstreamRejectedException e) {
+                // o endpoint respondeu; o pedido é que não serve em nenhum
+                stats.cancel();
+                throw e;
+            } catch (UpstreamUnavailableException e) {
+                if (e.getCause() instanceof RestClientResponseException) {
+                    // 429 do provedor que esgotou os retries: throttling conta para o circuit breaker
+                    long end = clock.getAsLong();
+                    stats.recordFailure(end - start, end);
+                } else {
+                    // recusada antes de chamar (ex.: cota esgotada): tenta o próximo sem penalizar o endpoint
+                    stats.cancel();
+                }
+                lastFailure = e;
+                if (!canFailover.getAsBoolean()) {
+                    throw e;
+                }
+            } catch (GroqApiException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // chamada cancelada (ex.: perdeu o hedge) — não é falha do endpoint
+                    stats.cancel();
+                    throw e;
+                }
+                long end = clock.getAsLong();
+                stats.recordFailure(end - start, end);
+                lastFailure = e;
+                if (!canFailover.getAsBoolean()) {
+                    throw e;
+                }
+                log.warn("LLM endpoint '{}' failed: {}", stats.endpoint.name(), e.getMessage());
+            } catch (RuntimeException e) {
+                // não veio do upstream (ex.: cliente do stream desconectou): não é falha do endpoint
+                stats.cancel();
+                throw e;
+            }
+        }
+        if (lastFailure == null) {
+            throw circuitOpen();
+        }
+        throw lastFailure;
+    }
+
+    private UpstreamUnavailableException circuitOpen() {
+        long now = clock.getAsLong();
+        long retryAfterNanos = endpoints.stream().mapToLong(stats -> stats.retryAfterNanos(now)).min().orElse(0);
+        return new UpstreamUnavailableException(UpstreamUnavailableException.Reason.CIRCUIT_OPEN,
+                "Circuit open for all LLM endpoints", Math.max(1, (retryAfterNanos + 999_999_999) / 1_000_000_000));
+    }
+
+    CircuitBreaker.State circuitState(LlmEndpoint endpoint) {
+        return endpoints.stream().filter(stats -> stats.endpoint == endpoint).findFirst().orElseThrow().circuitState();
+    }
+
+    /**
+     * Endpoints do melhor para o pior score; empates mantêm a ordem da configuração.
+     */
+    List<LlmEndpoint> rankedEndpoints() {
+        return ranked().stream().map(stats -> stats.endpoint).toList();
+    }
+
+    private List<Stats> ranked() {
+        if (endpoints.size() == 1) {
+            return endpoints;
+        }
+        long now = clock.getAsLong();
+        List<Stats> ranked = new ArrayList<>(endpoints);
+        ranked.sort(Comparator.comparingDouble(stats -> stats.score(now)));
+        return ranked;
+    }
+
+    private final class Stats {
+
+        private final LlmEndpoint endpoint;
+        private final CircuitBreaker breaker = new CircuitBreaker(breakerSettings);
+        private int inFlight;
+        private double latencyMs = -1;
+        private double errorRate;
+        private long errorRateAtNanos;
+        private long lastSampleNanos;
+
+        private Stats(LlmEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if (!breaker.tryAcquire(now)) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+
+        synchronized void cancel() {
+            inFlight--;
+            breaker.onCancel();
+        }
+
+        synchronized void recordSuccess(long latencyNanos, long now) {
+            breaker.onSuccess();
+            record(latencyNanos / 1_000_000.0, 0, now);
+        }
+
+        // falhas também contam latência: um upstream que estoura timeout fica caro
+        synchronized void recordFailure(long latencyNanos, long now) {
+            CircuitBreaker.State before = breaker.state();
+            breaker.onFailure(now);
+            if (before != CircuitBreaker.State.OPEN && breaker.state() == CircuitBreaker.State.OPEN) {
+                log.warn("Circuit opened for LLM endpoint '{}'", endpoint.name());
+            }
+            record(Math.max(latencyNanos / 1_000_000.0, FAILURE_LATENCY_FLOOR_MS), 1, now);
+        }
+
+        synchronized long retryAfterNanos(long now) {
+            return breaker.retryAfterNanos(now);
+        }
+
+        synchronized CircuitBreaker.State circuitState() {
+            return breaker.state();
+        }
+
+        private void record(double sampleMs, double error, long now) {
+            inFlight--;
+            latencyMs = latencyMs < 0 ? sampleMs : EWMA_ALPHA * sampleMs + (1 - EWMA_ALPHA) * latencyMs;
+            errorRate = EWMA_ALPHA * error + (1 - EWMA_ALPHA) * decayedErrorRate(now);
+            errorRateAtNanos = now;
+            lastSampleNanos = now;
+        }
+
+        synchronized double score(long now) {
+            boolean stale = latencyMs < 0 || now - lastSampleNanos > probeIntervalNanos;
+            if (stale && inFlight == 0) {
+                return 0; // sonda
+            }
+            double latency = latencyMs < 0 ? UNKNOWN_LATENCY_MS : latencyMs;
+            return latency * (1 + ERROR_PENALTY * decayedErrorRate(now)) * (1 + inFlight * 0.1);
+        }
+
+        // sem amostras novas, a taxa de erro cai pela metade a cada errorDecay
+        private double decayedErrorRate(long now) {
+            if (errorRate == 0) return 0;
+            return errorRate * Math.pow(0.5, (double) (now - errorRateAtNanos) / errorDecayNanos);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.commitgen.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Templates do prompt de sistema, lidos de {@code classpath:prompts/} e, se configurado, de
+ * {@code prompts.dir} (mesma estrutura; arquivos de lá substituem ou acrescentam aos do classpath):
+ * <ul>
+ *   <li>{@code system.txt} — instruções comuns a todos os estilos</li>
+ *   <li>{@code styles/<estilo>.txt} — instruções do estilo, com metadados antes de uma linha {@code ---}:
+ *       {@code max-chars} (limite por mensagem, também usado no {@code max_tokens} e disponível no texto
+ *       como {@code {max-chars}}) e {@code parse} ({@code conventional} extrai type/scope; padrão {@code plain})</li>
+ *   <li>{@code languages/<idioma>.txt} — idioma das mensagens</li>
+ * </ul>
+ * O prompt completo de cada par (estilo, idioma) é montado e estimado em tokens uma vez por carga;
+ * estilo ou idioma desconhecido cai em {@value #DEFAULT_STYLE} / {@value #DEFAULT_LANGUAGE}.
+ * Com {@code prompts.dir}, o diretório é verificado a cada {@code prompts.reload-interval} e
+ * recarregado quando muda; uma carga inválida é registrada e mantém os templates anteriores.
+ */
+@Slf4j
+@Component
+public class PromptTemplateRegistry {
+
+    public static final String DEFAULT_STYLE = "conventional";
+    public static final String DEFAULT_LANGUAGE = "en";
+
+    static final String CLASSPATH_ROOT = "prompts/";
+    static final String SYSTEM_FILE = "system.txt";
+    static final String STYLES_DIR = "styles";
+    static final String LANGUAGES_DIR = "languages";
+    static final String TEMPLATE_SUFFIX = ".txt";
+
+    private static final String METADATA_END = "---";
+    private static final String MAX_CHARS_PLACEHOLDER = "{max-chars}";
+    private static final int DEFAULT_MAX_CHARS = 72;
+
+    /**
+     * Estilo já resolvido. {@code conventional} indica que as sugestões seguem
+     * {@code <type>(<scope>): <description>} e podem ser decompostas no parse.
+     */
+    public record StyleTemplate(String name, int maxMessageChars, boolean conventional, String instruction) {
+    }
+
+    /**
+     * Prompt de sistema montado para um par (estilo, idioma), com o tamanho estimado em tokens.
+     */
+    public record SystemPrompt(StyleTemplate style, String language, String text, int tokens) {
+    }
+
+    // uma carga inteira, trocada de uma vez no reload
+    private record Templates(Map<String, StyleTemplate> styles, Map<String, Map<String, SystemPrompt>> prompts,
+                             String fingerprint) {
+    }
+
+    private final TokenEstimator tokenEstimator;
+    private final MeterRegistry registry;
+    private final Path directory;
+    private final Duration reloadInterval;
+
+    private final Set<String> gauges = ConcurrentHashMap.newKeySet();
+    private volatile Templates templates;
+    private String rejectedFingerprint;
+    private ScheduledExecutorService scheduler;
+
+    public PromptTemplateRegistry(TokenEstimator tokenEstimator, MeterRegistry registry,
+                                  @Value("${prompts.dir:}") String directory,
+                                  @Value("${prompts.reload-interval:5s}") Duration reloadInterval) {
+        this.tokenEstimator = tokenEstimator;
+        this.registry = registry;
+        this.directory = directory == null || directory.isBlank() ? null : Path.of(directory);
+        this.reloadInterval = reloadInterval;
+        this.templates = load();
+    }
+
+    /**
+     * Só os templates do classpath, sem métricas (testes e construtores sem Spring).
+     */
+    public static PromptTemplateRegistry classpath() {
+        return new PromptTemplateRegistry(new TokenEstimator(), new CompositeMeterRegistry(), "", Duration.ZERO);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (directory == null || reloadInterval.isZero() || reloadInterval.isNegative()) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("prompt-templates-reload").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::reloadIfChanged,
+                reloadInterval.toMillis(), reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public SystemPrompt systemPrompt(String style, String language) {
+        Templates current = templates;
+        Map<String, SystemPrompt> byLanguage = current.prompts().get(key(style));
+        if (byLanguage == null) {
+            byLanguage = current.prompts().get(DEFAULT_STYLE);
+        }
+        SystemPrompt prompt = byLanguage.get(key(language));
+        return prompt != null ? prompt : byLanguage.get(DEFAULT_LANGUAGE);
+    }
+
+    public StyleTemplate style(String style) {
+        Map<String, StyleTemplate> styles = templates.styles();
+        StyleTemplate template = styles.get(key(style));
+        return template != null ? template : styles.get(DEFAULT_STYLE);
+    }
+
+    /**
+     * Todos os prompts montados na carga atual, por estilo e idioma.
+     */
+    public List<SystemPrompt> systemPrompts() {
+        return templates.prompts().values().stream()
+                .flatMap(byLanguage -> byLanguage.values().stream())
+                .toList();
+    }
+
+    /**
+     * Relê os templates agora. Se a carga falhar, a anterior continua valendo e a exceção sobe.
+     */
+    public synchronized void reload() {
+        templates = load();
+    }
+
+    private synchronized void reloadIfChanged() {
+        try {
+            String fingerprint = fingerprint();
+            // uma versão inválida é reportada uma vez, não a cada verificação
+            if (fingerprint.equals(templates.fingerprint()) || fingerprint.equals(rejectedFingerprint)) return;
+            rejectedFingerprint = fingerprint;
+            templates = load();
+            rejectedFingerprint = null;
+        } catch (RuntimeException e) {
+            log.warn("Prompt template reload failed, keeping the previous templates: {}", e.getMessage());
+        }
+    }
+
+    private Templates load() {
+        String fingerprint = fingerprint();
+        String system = null;
+        Map<String, String> styleFiles = new TreeMap<>();
+        Map<String, String> languageFiles = new TreeMap<>();
+        try {
+            system = readClasspath(CLASSPATH_ROOT + SYSTEM_FILE);
+            readClasspath(STYLES_DIR, styleFiles);
+            readClasspath(LANGUAGES_DIR, languageFiles);
+            if (directory != null) {
+                Path systemFile = directory.resolve(SYSTEM_FILE);
+                if (Files.isRegularFile(systemFile)) {
+                    system = Files.readString(systemFile);
+                }
+                readDirectory(directory.resolve(STYLES_DIR), styleFiles);
+                readDirectory(directory.resolve(LANGUAGES_DIR), languageFiles);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read prompt templates", e);
+        }
+        if (system == null) {
+            throw new IllegalStateException("Missing prompt template " + SYSTEM_FILE);
+        }
+
+        Map<String, StyleTemplate> styles = new LinkedHashMap<>();
+        styleFiles.forEach((name, content) -> styles.put(name, parseStyle(name, content)));
+        requirePresent(styles, DEFAULT_STYLE, STYLES_DIR);
+        requirePresent(languageFiles, DEFAULT_LANGUAGE, LANGUAGES_DIR);
+
+        String base = system.strip();
+        Map<String, Map<String, SystemPrompt>> prompts = new LinkedHashMap<>();
+        for (StyleTemplate style : styles.values()) {
+            Map<String, SystemPrompt> byLanguage = new LinkedHashMap<>();
+            languageFiles.forEach((language, instruction) -> {
+                String text = base + "\n\n\n" + style.instruction() + "\n" + instruction.strip();
+                byLanguage.put(language, new SystemPrompt(style, language, text, tokenEstimator.estimate(text)));
+            });
+            prompts.put(style.name(), Collections.unmodifiableMap(byLanguage));
+        }
+        Templates loaded = new Templates(Collections.unmodifiableMap(styles),
+                Collections.unmodifiableMap(prompts), fingerprint);
+
+        for (Map<String, SystemPrompt> byLanguage : prompts.values()) {
+            for (SystemPrompt prompt : byLanguage.values()) {
+                registerGauge(prompt.style().name(), prompt.language());
+            }
+        }
+        log.info("Loaded prompt templates: styles={}, languages={}", styles.keySet(), languageFiles.keySet());
+        return loaded;
+    }
+
+    private static StyleTemplate parseStyle(String name, String content) {
+        int maxChars = DEFAULT_MAX_CHARS;
+        boolean conventional = false;
+        String body = content;
+
+        List<String> lines = content.lines().toList();
+        int end = lines.indexOf(METADATA_END);
+        if (end >= 0) {
+            for (String line : lines.subList(0, end)) {
+                if (line.isBlank()) continue;
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Style '" + name + "': expected 'key: value', got '" + line + "'");
+                }
+                String key = line.substring(0, colon).strip();
+                String value = line.substring(colon + 1).strip();
+                switch (key) {
+                    case "max-chars" -> maxChars = Integer.parseInt(value);
+                    case "parse" -> conventional = switch (value) {
+                        case "conventional" -> true;
+                        case "plain" -> false;
+                        default -> throw new IllegalArgumentException(
+                                "Style '" + name + "': unknown parse mode '" + value + "' (expected conventional or plain)");
+                    };
+                    default -> throw new IllegalArgumentException("Style '" + name + "': unknown metadata '" + key + "'");
+                }
+            }
+            body = String.join("\n", lines.subList(end + 1, lines.size()));
+        }
+        if (maxChars <= 0) {
+            throw new IllegalArgumentException("Style '" + name + "': max-chars must be positive");
+        }
+        String instruction = body.strip().replace(MAX_CHARS_PLACEHOLDER, String.valueOf(maxChars));
+        return new StyleTemplate(name, maxChars, conventional, instruction);
+    }
+
+    // tamanho de cada prompt em /actuator/prometheus; estilos removidos no reload passam a NaN
+    private void registerGauge(String style, String language) {
+        if (!gauges.add(style + '|' + language)) return;
+        Gauge.builder("commitgen.prompt.template.tokens", this, prompts -> prompts.tokensOf(style, language))
+                .description("Tamanho estimado do prompt de sistema montado")
+                .baseUnit("tokens")
+                .tag("style", style)
+                .tag("language", language)
+                .register(registry);
+    }
+
+    private double tokensOf(String style, String language) {
+        Map<String, SystemPrompt> byLanguage = templates.prompts().get(style);
+        SystemPrompt prompt = byLanguage != null ? byLanguage.get(language) : null;
+        return prompt != null ? prompt.tokens() : Double.NaN;
+    }
+
+    // mtime e tamanho de cada arquivo do diretório externo: barato o bastante para checar a cada poucos segundos
+    private String fingerprint() {
+        if (directory == null) return "";
+        StringBuilder fingerprint = new StringBuilder();
+        for (Path path : List.of(directory.resolve(SYSTEM_FILE), directory.resolve(STYLES_DIR),
+                directory.resolve(LANGUAGES_DIR))) {
+            if (!Files.exists(path)) continue;
+            try (Stream<Path> files = Files.isDirectory(path) ? Files.list(path) : Stream.of(path)) {
+                for (Path file : files.sorted().toList()) {
+                    fingerprint.append(file).append(':').append(Files.getLastModifiedTime(file).toMillis())
+                            .append(':').append(Files.size(file)).append(';');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not list prompt templates in " + path, e);
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    private static String readClasspath(String location) throws IOException {
+        Resource resource = new PathMatchingResourcePatternResolver().getResource("classpath:" + location);
+        return resource.exists() ? resource.getContentAsString(StandardCharsets.UTF_8) : null;
+    }
+
+    private static void readClasspath(String subdirectory, Map<String, String> into) throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver()
+                .getResources("classpath*:" + CLASSPATH_ROOT + subdirectory + "/*" + TEMPLATE_SUFFIX);
+        for (Resource resource : resources) {
+            into.put(templateName(resource.getFilename()), resource.getContentAsString(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void readDirectory(Path subdirectory, Map<String, String> into) throws IOException {
+        if (!Files.isDirectory(subdirectory)) return;
+        try (Stream<Path> files = Files.list(subdirectory)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(TEMPLATE_SUFFIX)).toList()) {
+                into.put(templateName(file.getFileName().toString()), Files.readString(file));
+            }
+        }
+    }
+
+    private static String templateName(String fileName) {
+        return key(fileName.substring(0, fileName.length() - TEMPLATE_SUFFIX.length()));
+    }
+
+    private static void requirePresent(Map<String, ?> templates, String name, String subdirectory) {
+        if (!templates.containsKey(name)) {
+            throw new IllegalStateException(
+                    "Missing prompt template " + subdirectory + "/" + name + TEMPLATE_SUFFIX);
+        }
+    }
+
+    private static String key(String name) {
+        return name == null ? "" : name.strip().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,78 @@
+package com.commitgen.service;
+
+import com.commitgen.service.RateLimitService.RateLimitInfo;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+/**
+ * Armazenamento e algoritmo do rate limit por cliente (IP).
+ * Selecionado por {@code rate-limit.backend} em {@code RateLimitConfig}.
+ */
+public interface RateLimitBackend {
+
+    /**
+     * Tenta consumir 1 requisição do cliente.
+     */
+    default RateLimitInfo consume(String client) {
+        return consume(client, 1);
+    }
+
+    /**
+     * Tenta consumir {@code cost} unidades de uma vez; recusa sem consumir nada se não houver todas.
+     * O custo deve caber na capacidade do limite.
+     */
+    RateLimitInfo consume(String client, long cost);
+
+    /**
+     * Devolve unidades consumidas (ex.: quando outro limite recusou a mesma requisição).
+     */
+    void refund(String client, long cost);
+
+    /**
+     * Estado atual sem consumir nada; cliente desconhecido = limite cheio.
+     */
+    RateLimitInfo peek(String client);
+
+    /**
+     * Requisições ainda disponíveis, sem consumir.
+     */
+    default long available(String client) {
+        return peek(client).getRemaining();
+    }
+
+    /**
+     * Outro limite, independente deste, no mesmo tipo de armazenamento (mesmo cluster, no caso
+     * distribuído), com {@code capacity} unidades repostas continuamente em {@code period}.
+     */
+    RateLimitBackend newLimit(String name, long capacity, Duration period);
+
+    /**
+     * Layout do snapshot do estado, ou null se o estado não fica neste processo.
+     */
+    default SnapshotLayout snapshotLayout() {
+        return null;
+    }
+
+    /**
+     * Grava em {@code out} os clientes com limite em uso, até o espaço acabar; retorna quantos.
+     */
+    default int writeSnapshot(ByteBuffer out, long nowMillis) {
+        return 0;
+    }
+
+    /**
+     * Recarrega {@code count} registros gravados por {@link #writeSnapshot}, já descontando a
+     * reposição desde então; retorna quantos ainda tinham limite em uso.
+     */
+    default int restoreSnapshot(ByteBuffer in, int count, long nowMillis) {
+        return 0;
+    }
+
+    /**
+     * @param format   layout dos registros; snapshots de outro formato ou limite são descartados
+     * @param maxBytes espaço máximo que {@link #writeSnapshot} pode usar
+     */
+    record SnapshotLayout(int format, long limit, Duration period, long maxBytes) {
+    }
+}
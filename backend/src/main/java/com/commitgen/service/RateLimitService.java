@@ -1,92 +1,164 @@
 package com.commitgen.service;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.ConsumptionProbe;
+import com.commitgen.dto.CommitRequest;
 import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.time.Instant;
-
+import java.util.Map;
+
+/**
+ * Rate limit por IP. No modo {@code requests} (padrão) cada requisição custa 1 das 10 por hora.
+ * No modo {@code weighted} o custo vem dos tokens estimados no upstream (diff, quantity e estilo):
+ * 1 unidade a cada {@code unit-tokens}, mínimo 1; e um segundo limite, em tokens por hora,
+ * cobra o orçamento do upstream. A requisição só passa se couber nos dois.
+ */
 @Service
 public class RateLimitService {
 
-    // Buckets por IP com TTL de 2h — entradas expiram automaticamente, sem memory leak
-    private final Cache<String, Bucket> buckets = Caffeine.newBuilder()
-            .expireAfterAccess(Duration.ofHours(2))
-            .maximumSize(10_000)
-            .build();
-
     public static final int MAX_REQUESTS_PER_HOUR = 10;
     public static final Duration REFILL_PERIOD = Duration.ofHours(1);
 
-    private Bucket createBucket() {
-        return Bucket.builder()
-                .addLimit(Bandwidth.builder()
-                        .capacity(MAX_REQUESTS_PER_HOUR)
-                        .refillGreedy(MAX_REQUESTS_PER_HOUR, REFILL_PERIOD)
-                        .build())
-                .build();
+    public static final String UNIT_REQUEST = "request";
+    public static final String UNIT_COST = "cost";
+    public static final String UNIT_TOKEN = "token";
+
+    private final RateLimitBackend backend;
+    // Só no modo weighted
+    private final CommitService commitService;
+    private final RateLimitBackend tokenBackend;
+    private final long unitTokens;
+    private final long tokensPerHour;
+    private final GenerationMetrics metrics;
+
+    public RateLimitService() {
+        this(new BucketRateLimitBackend());
+    }
+
+    public RateLimitService(RateLimitBackend backend) {
+        this(backend, null, "requests", 0, 0);
+    }
+
+    /**
+     * Modo weighted.
+     */
+    public RateLimitService(RateLimitBackend backend, CommitService commitService,
+                            long unitTokens, long tokensPerHour) {
+        this(backend, commitService, "weighted", unitTokens, tokensPerHour);
+    }
+
+    public RateLimitService(RateLimitBackend backend, CommitService commitService,
+                            String mode, long unitTokens, long tokensPerHour) {
+        this(backend, commitService, mode, unitTokens, tokensPerHour, GenerationMetrics.noop());
+    }
+
+    @Autowired
+    public RateLimitService(RateLimitBackend backend, CommitService commitService,
+                            @Value("${rate-limit.mode:requests}") String mode,
+                            @Value("${rate-limit.weighted.unit-tokens:1000}") long unitTokens,
+                            @Value("${rate-limit.weighted.tokens-per-hour:40000}") long tokensPerHour,
+                            GenerationMetrics metrics) {
+        this.backend = backend;
+        this.unitTokens = unitTokens;
+        this.tokensPerHour = tokensPerHour;
+        this.metrics = metrics;
+        switch (mode) {
+            case "requests" -> {
+                this.commitService = null;
+                this.tokenBackend = null;
+            }
+            case "weighted" -> {
+                this.commitService = commitService;
+                this.tokenBackend = backend.newLimit("tokens", tokensPerHour, REFILL_PERIOD);
+            }
+            default -> throw new IllegalStateException("Unknown rate-limit.mode: " + mode
+                    + " (expected requests or weighted)");
+        }
+    }
+
+    public boolean isWeighted() {
+        return tokenBackend != null;
+    }
+
+    /**
+     * Limites em uso, por nome: {@code requests} e, no modo weighted, {@code tokens}.
+     */
+    Map<String, RateLimitBackend> limits() {
+        return tokenBackend == null
+                ? Map.of("requests", backend)
+                : Map.of("requests", backend, "tokens", tokenBackend);
     }
 
     /**
      * Tenta consumir 1 token e retorna informações detalhadas sobre o rate limit.
      */
     public RateLimitInfo consume(String ip) {
-        Bucket bucket = buckets.get(ip, k -> createBucket());
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-
-        long remaining = probe.getRemainingTokens();
-        long nanosToRefill = probe.getNanosToWaitForRefill();
-
-        long resetEpochSeconds;
-        if (remaining >= MAX_REQUESTS_PER_HOUR - 1) {
-            // bucket cheio (ou quase) — reset daqui a 1h
-            resetEpochSeconds = Instant.now().plus(REFILL_PERIOD).getEpochSecond();
-        } else {
-            // estima quando TODOS os tokens estarão de volta
-            long tokensUsed = MAX_REQUESTS_PER_HOUR - remaining;
-            long nanosPerToken = REFILL_PERIOD.toNanos() / MAX_REQUESTS_PER_HOUR;
-            long nanosToFull = tokensUsed * nanosPerToken;
-            resetEpochSeconds = Instant.now().plusNanos(nanosToFull).getEpochSecond();
+        RateLimitInfo info = backend.consume(ip).charged(UNIT_REQUEST, 1, null);
+        if (!info.isAllowed()) {
+            metrics.rateLimitRejected("requests");
+        }
+        return info;
+    }
+
+    /**
+     * Cobra a geração de {@code request}: 1 requisição, ou o custo ponderado no modo weighted.
+     * Se o orçamento de tokens recusar, as unidades já cobradas são devolvidas.
+     */
+    public RateLimitInfo consume(String ip, CommitRequest request) {
+        long start = System.nanoTime();
+        RateLimitInfo info = isWeighted() ? consumeWeighted(ip, request) : consume(ip);
+        metrics.stage(GenerationMetrics.STAGE_RATE_LIMIT, GenerationMetrics.MODE_ALL, start);
+        return info;
+    }
+
+    private RateLimitInfo consumeWeighted(String ip, CommitRequest request) {
+
+        int tokens = commitService.estimateUpstreamTokens(request);
+        // custo acima da capacidade nunca passaria: a requisição mais pesada esvazia o bucket
+        long units = Math.clamp((tokens + unitTokens - 1) / unitTokens, 1, MAX_REQUESTS_PER_HOUR);
+        long tokenCost = Math.clamp(tokens, 1, tokensPerHour);
+
+        RateLimitInfo info = backend.consume(ip, units);
+        if (!info.isAllowed()) {
+            metrics.rateLimitRejected("requests");
+            return info.charged(UNIT_COST, units, tokenBackend.peek(ip).charged(UNIT_TOKEN, tokenCost, null));
         }
+        RateLimitInfo tokenInfo = tokenBackend.consume(ip, tokenCost).charged(UNIT_TOKEN, tokenCost, null);
+        if (!tokenInfo.isAllowed()) {
+            metrics.rateLimitRejected("tokens");
+            backend.refund(ip, units);
+            RateLimitInfo refunded = backend.peek(ip);
+            return new RateLimitInfo(false, refunded.getRemaining(), refunded.getLimit(),
+                    refunded.getResetAtEpochSeconds(), tokenInfo.getRetryAfterSeconds())
+                    .charged(UNIT_COST, units, tokenInfo);
+        }
+        return info.charged(UNIT_COST, units, tokenInfo);
+    }
 
-        return new RateLimitInfo(
-                probe.isConsumed(),
-                remaining,
-                MAX_REQUESTS_PER_HOUR,
-                resetEpochSeconds,
-                nanosToRefill > 0 ? (long) Math.ceil(nanosToRefill / 1_000_000_000.0) : 0
-        );
+    /**
+     * Devolve o que {@code charged} cobrou, ex.: requisição descartada pela admissão depois
+     * de passar pelo rate limit. Retorna o estado já com a devolução.
+     */
+    public RateLimitInfo refund(String ip, RateLimitInfo charged) {
+        if (charged.isAllowed()) {
+            backend.refund(ip, charged.getCost());
+            if (charged.getTokens() != null) {
+                tokenBackend.refund(ip, charged.getTokens().getCost());
+            }
+        }
+        return getInfo(ip);
     }
 
     /**
      * Retorna informações de rate limit SEM consumir tokens (para consulta).
      */
     public RateLimitInfo getInfo(String ip) {
-        Bucket bucket = buckets.get(ip, k -> createBucket());
-        long available = bucket.getAvailableTokens();
-
-        long resetEpochSeconds;
-        if (available >= MAX_REQUESTS_PER_HOUR) {
-            resetEpochSeconds = Instant.now().plus(REFILL_PERIOD).getEpochSecond();
-        } else {
-            long tokensUsed = MAX_REQUESTS_PER_HOUR - available;
-            long nanosPerToken = REFILL_PERIOD.toNanos() / MAX_REQUESTS_PER_HOUR;
-            long nanosToFull = tokensUsed * nanosPerToken;
-            resetEpochSeconds = Instant.now().plusNanos(nanosToFull).getEpochSecond();
+        if (!isWeighted()) {
+            return backend.peek(ip).charged(UNIT_REQUEST, 0, null);
         }
-
-        return new RateLimitInfo(
-                available > 0,
-                available,
-                MAX_REQUESTS_PER_HOUR,
-                resetEpochSeconds,
-                available > 0 ? 0 : REFILL_PERIOD.toSeconds() / MAX_REQUESTS_PER_HOUR
-        );
+        return backend.peek(ip).charged(UNIT_COST, 0, tokenBackend.peek(ip).charged(UNIT_TOKEN, 0, null));
     }
 
     /**
@@ -94,14 +166,14 @@ public class RateLimitService {
      * @return true se ainda há tokens disponíveis (requisição permitida)
      */
     public boolean tryConsume(String ip) {
-        return buckets.get(ip, k -> createBucket()).tryConsume(1);
+        return backend.consume(ip).isAllowed();
     }
 
     /**
      * Retorna quantos tokens ainda restam para o IP.
      */
     public long getAvailableTokens(String ip) {
-        return buckets.get(ip, k -> createBucket()).getAvailableTokens();
+        return backend.available(ip);
     }
 
     /**
@@ -114,14 +186,33 @@ public class RateLimitService {
         private final long limit;
         private final long resetAtEpochSeconds;
         private final long retryAfterSeconds;
+        // unidade de limit/remaining/cost: request, cost ou token
+        private final String unit;
+        // custo desta requisição nessa unidade (0 em consultas)
+        private final long cost;
+        // orçamento de tokens do upstream, só no modo weighted
+        private final RateLimitInfo tokens;
 
         public RateLimitInfo(boolean allowed, long remaining, long limit,
                              long resetAtEpochSeconds, long retryAfterSeconds) {
+            this(allowed, remaining, limit, resetAtEpochSeconds, retryAfterSeconds, UNIT_REQUEST, 0, null);
+        }
+
+        private RateLimitInfo(boolean allowed, long remaining, long limit, long resetAtEpochSeconds,
+                              long retryAfterSeconds, String unit, long cost, RateLimitInfo tokens) {
             this.allowed = allowed;
             this.remaining = remaining;
             this.limit = limit;
             this.resetAtEpochSeconds = resetAtEpochSeconds;
             this.retryAfterSeconds = retryAfterSeconds;
+            this.unit = unit;
+            this.cost = cost;
+            this.tokens = tokens;
+        }
+
+        public RateLimitInfo charged(String unit, long cost, RateLimitInfo tokens) {
+            return new RateLimitInfo(allowed, remaining, limit, resetAtEpochSeconds, retryAfterSeconds,
+                    unit, cost, tokens);
         }
     }
 }
@@ -0,0 +1,189 @@
+package com.commitgen.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Arquivo mapeado em memória com dois slots para snapshots do rate limit.
+ * <p>
+ * Cada snapshot vai para o slot mais antigo, com número de sequência e CRC32C; o restore lê o
+ * slot válido mais novo. Um crash no meio da escrita deixa o snapshot anterior intacto. O arquivo
+ * fica mapeado enquanto o processo roda: gravar é copiar para o page cache, sem criar arquivos
+ * nem mapeamentos novos a cada snapshot.
+ *
+ * <pre>
+ * header (64 bytes): magic, versão, formato, limite, período (ms), tamanho do slot
+ * slot (32 bytes + dados): sequência, gravado em (epoch ms), registros, bytes, crc
+ * </pre>
+ */
+@Slf4j
+final class RateLimitSnapshotFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x43475231; // "CGR1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_HEADER_BYTES = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long slotBytes;
+    private long sequence;
+
+    /**
+     * Snapshot lido do arquivo; {@code data} vai de 0 ao fim dos registros.
+     */
+    record Snapshot(ByteBuffer data, int count, long writtenAtEpochMillis) {
+    }
+
+    private RateLimitSnapshotFile(FileChannel channel, MappedByteBuffer buffer, long slotBytes) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotBytes = slotBytes;
+    }
+
+    /**
+     * Abre (ou cria) o arquivo. Se o formato, o limite ou o tamanho do slot não baterem com os
+     * atuais, o conteúdo antigo é descartado: restaurar estado de outra configuração seria errado.
+     *
+     * @param format identifica o backend e o layout dos registros
+     */
+    static RateLimitSnapshotFile open(Path path, int format, long limit, long periodMillis, long slotBytes)
+            throws IOException {
+        if (slotBytes > (Integer.MAX_VALUE - HEADER_BYTES) / 2 - SLOT_HEADER_BYTES) {
+            throw new IllegalArgumentException("Snapshot slot too large: " + slotBytes + " bytes");
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        long size = HEADER_BYTES + 2 * (SLOT_HEADER_BYTES + slotBytes);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean compatible = channel.size() == size && headerMatches(channel, format, limit, periodMillis, slotBytes);
+            if (!compatible) {
+                if (channel.size() > 0) {
+                    log.info("Discarding rate-limit snapshot {}: written with another configuration", path);
+                }
+                channel.truncate(0);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!compatible) {
+                buffer.putInt(0, MAGIC)
+                        .putInt(4, VERSION)
+                        .putInt(8, format)
+                        .putLong(16, limit)
+                        .putLong(24, periodMillis)
+                        .putLong(32, slotBytes);
+            }
+            RateLimitSnapshotFile file = new RateLimitSnapshotFile(channel, buffer, slotBytes);
+            file.sequence = Math.max(file.sequence(0), file.sequence(1));
+            return file;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean headerMatches(FileChannel channel, int format, long limit, long periodMillis,
+                                         long slotBytes) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getInt(8) == format
+                && header.getLong(16) == limit && header.getLong(24) == periodMillis
+                && header.getLong(32) == slotBytes;
+    }
+
+    /**
+     * Área de dados do próximo slot a gravar, com posição 0 e limite no tamanho do slot.
+     * Só uma escrita por vez: o chamador preenche e chama {@link #commit}.
+     */
+    ByteBuffer beginWrite() {
+        return data(nextSlot(), (int) slotBytes);
+    }
+
+    /**
+     * Publica o que foi escrito em {@code data} (de 0 até a posição atual).
+     */
+    void commit(ByteBuffer data, int count, long writtenAtEpochMillis) {
+        int slot = nextSlot();
+        int offset = slotOffset(slot);
+        int bytes = data.position();
+        long next = sequence + 1;
+        // sequência 0 invalida o slot enquanto o cabeçalho é reescrito
+        buffer.putLong(offset, 0)
+                .putLong(offset + 8, writtenAtEpochMillis)
+                .putInt(offset + 16, count)
+                .putInt(offset + 20, bytes)
+                .putInt(offset + 24, crc(slot, bytes, count, writtenAtEpochMillis, next));
+        buffer.putLong(offset, next);
+        sequence = next;
+    }
+
+    /**
+     * Slot válido mais novo, ou null se não houver.
+     */
+    Snapshot latest() {
+        int best = -1;
+        for (int slot = 0; slot < 2; slot++) {
+            if (valid(slot) && (best < 0 || sequence(slot) > sequence(best))) {
+                best = slot;
+            }
+        }
+        if (best < 0) return null;
+        int offset = slotOffset(best);
+        return new Snapshot(data(best, buffer.getInt(offset + 20)), buffer.getInt(offset + 16),
+                buffer.getLong(offset + 8));
+    }
+
+    /**
+     * Grava as páginas alteradas no disco (o page cache já sobrevive a um crash do processo).
+     */
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean valid(int slot) {
+        int offset = slotOffset(slot);
+        long seq = buffer.getLong(offset);
+        int bytes = buffer.getInt(offset + 20);
+        if (seq <= 0 || bytes < 0 || bytes > slotBytes) return false;
+        return buffer.getInt(offset + 24)
+                == crc(slot, bytes, buffer.getInt(offset + 16), buffer.getLong(offset + 8), seq);
+    }
+
+    private int crc(int slot, int bytes, int count, long writtenAt, long seq) {
+        CRC32C crc = new CRC32C();
+        crc.update(data(slot, bytes));
+        crc.update(ByteBuffer.allocate(20).putLong(seq).putLong(writtenAt).putInt(count).flip());
+        return (int) crc.getValue();
+    }
+
+    private long sequence(int slot) {
+        return buffer.getLong(slotOffset(slot));
+    }
+
+    private int nextSlot() {
+        return sequence(0) <= sequence(1) ? 0 : 1;
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_BYTES + slot * (SLOT_HEADER_BYTES + (int) slotBytes);
+    }
+
+    private ByteBuffer data(int slot, int length) {
+        return buffer.slice(slotOffset(slot) + SLOT_HEADER_BYTES, length);
+    }
+}
@@ -0,0 +1,114 @@
+package com.commitgen.service;
+
+import com.commitgen.service.RateLimitBackend.SnapshotLayout;
+import com.commitgen.service.RateLimitSnapshotFile.Snapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grava o estado do rate limit em arquivos mapeados em memória a cada
+ * {@code rate-limit.snapshot.interval} e no shutdown, e o restaura no startup, antes de o
+ * servidor aceitar requisições. Sem isso, cada deploy ou crash devolvia 10 requisições a todos
+ * os clientes de uma vez. Um arquivo por limite ({@code requests.snapshot}, {@code tokens.snapshot})
+ * em {@code rate-limit.snapshot.dir}; vazio desativa.
+ */
+@Slf4j
+@Service
+public class RateLimitSnapshotService {
+
+    private final RateLimitService rateLimitService;
+    private final String directory;
+    private final Duration interval;
+
+    private final Map<RateLimitBackend, RateLimitSnapshotFile> files = new LinkedHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public RateLimitSnapshotService(RateLimitService rateLimitService,
+                                    @Value("${rate-limit.snapshot.dir:}") String directory,
+                                    @Value("${rate-limit.snapshot.interval:30s}") Duration interval) {
+        this.rateLimitService = rateLimitService;
+        this.directory = directory;
+        this.interval = interval;
+    }
+
+    @PostConstruct
+    public void restore() throws IOException {
+        if (directory.isBlank()) return;
+
+        for (Map.Entry<String, RateLimitBackend> limit : rateLimitService.limits().entrySet()) {
+            RateLimitBackend backend = limit.getValue();
+            SnapshotLayout layout = backend.snapshotLayout();
+            if (layout == null) continue;
+
+            Path path = Path.of(directory, limit.getKey() + ".snapshot");
+            RateLimitSnapshotFile file = RateLimitSnapshotFile.open(path, layout.format(), layout.limit(),
+                    layout.period().toMillis(), layout.maxBytes());
+            files.put(backend, file);
+
+            long start = System.nanoTime();
+            Snapshot snapshot = file.latest();
+            if (snapshot != null) {
+                int restored = backend.restoreSnapshot(snapshot.data(), snapshot.count(), System.currentTimeMillis());
+                log.info("Restored {} of {} rate-limit entries from {} in {}ms (written {}s ago)",
+                        restored, snapshot.count(), path, (System.nanoTime() - start) / 1_000_000,
+                        (System.currentTimeMillis() - snapshot.writtenAtEpochMillis()) / 1000);
+            }
+        }
+        if (files.isEmpty()) return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("rate-limit-snapshot").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly,
+                interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Grava um snapshot de cada limite agora.
+     */
+    public synchronized void snapshot() {
+        for (Map.Entry<RateLimitBackend, RateLimitSnapshotFile> entry : files.entrySet()) {
+            long now = System.currentTimeMillis();
+            RateLimitSnapshotFile file = entry.getValue();
+            ByteBuffer data = file.beginWrite();
+            int count = entry.getKey().writeSnapshot(data, now);
+            file.commit(data, count, now);
+            file.force();
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            long start = System.nanoTime();
+            snapshot();
+            log.debug("Rate-limit snapshot written in {}µs", (System.nanoTime() - start) / 1000);
+        } catch (RuntimeException e) {
+            // o próximo ciclo tenta de novo; o slot anterior continua válido
+            log.warn("Rate-limit snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        snapshotQuietly();
+        for (RateLimitSnapshotFile file : files.values()) {
+            file.close();
+        }
+        files.clear();
+        scheduler = null;
+    }
+}
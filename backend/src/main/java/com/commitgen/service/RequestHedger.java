@@ -0,0 +1,183 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedging de chamadas ao upstream: se a primeira chamada não responde dentro do
+ * atraso configurado (ou do percentil aprendido das latências recentes), dispara
+ * uma segunda idêntica, usa a que terminar primeiro e cancela a outra.
+ * Hedges gastam créditos de um orçamento que cresce {@code budget} por chamada,
+ * então no longo prazo nunca passam dessa fração das chamadas.
+ */
+@Slf4j
+@Service
+public class RequestHedger {
+
+    private static final int WINDOW_SIZE = 256;
+    private static final int RECOMPUTE_EVERY = 16;
+    // créditos em milionésimos de hedge, para não acumular erro de ponto flutuante
+    private static final long CREDIT_UNIT = 1_000_000;
+    private static final long MAX_CREDITS = 10 * CREDIT_UNIT;
+
+    private final boolean enabled;
+    private final long fixedDelayNanos;
+    private final double percentile;
+    private final long creditPerCall;
+    private final int minSamples;
+
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hedge-", 0).factory());
+
+    // janela circular das latências recentes, para o percentil aprendido
+    private final long[] window = new long[WINDOW_SIZE];
+    private int samples;
+    private volatile long learnedDelayNanos = -1;
+    private long credits;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    public RequestHedger(@Value("${groq.hedge.enabled:false}") boolean enabled,
+                         @Value("${groq.hedge.delay:0ms}") Duration delay,
+                         @Value("${groq.hedge.percentile:0.95}") double percentile,
+                         @Value("${groq.hedge.budget:0.05}") double budget,
+                         @Value("${groq.hedge.min-samples:20}") int minSamples) {
+        this.enabled = enabled;
+        this.fixedDelayNanos = delay.toNanos();
+        this.percentile = percentile;
+        this.creditPerCall = Math.round(budget * CREDIT_UNIT);
+        this.minSamples = minSamples;
+    }
+
+    public static RequestHedger disabled() {
+        return new RequestHedger(false, Duration.ZERO, 0.95, 0, 0);
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        calls.increment();
+        earnCredit();
+
+        long delay = hedgeDelayNanos();
+        if (delay < 0) {
+            // ainda aprendendo a distribuição de latência
+            long start = System.nanoTime();
+            T result = call.get();
+            recordLatency(System.nanoTime() - start);
+            return result;
+        }
+
+        // a latência amostrada é sempre a da requisição, contada do início da primária: medir o hedge
+        // do próprio início (ou só o vencedor) puxaria o percentil para baixo e anteciparia os hedges
+        long start = System.nanoTime();
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Future<T> primary = completion.submit(call::get);
+        Future<T> hedge = null;
+        try {
+            Future<T> first = completion.poll(delay, TimeUnit.NANOSECONDS);
+            if (first == null && tryConsumeCredit()) {
+                hedges.increment();
+                log.debug("Hedging upstream call after {}ms", delay / 1_000_000);
+                hedge = completion.submit(call::get);
+            }
+            if (first == null) {
+                first = completion.take();
+            }
+
+            Future<T> other = first == primary ? hedge : primary;
+            try {
+                T result = first.get();
+                recordLatency(System.nanoTime() - start);
+                if (other != null) {
+                    other.cancel(true);
+                }
+                if (first == hedge) {
+                    hedgeWins.increment();
+                }
+                return result;
+            } catch (ExecutionException e) {
+                if (other == null) {
+                    throw unwrap(e);
+                }
+                // a primeira a terminar falhou: fica com a outra
+                T result = completion.take().get();
+                recordLatency(System.nanoTime() - start);
+                return result;
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new GroqApiException("Interrupted while waiting for GroqCloud API", e);
+        }
+    }
+
+    /**
+     * Atraso antes do hedge: o fixo, se configurado, ou o percentil das latências recentes.
+     * Negativo enquanto não há amostras suficientes.
+     */
+    long hedgeDelayNanos() {
+        return fixedDelayNanos > 0 ? fixedDelayNanos : learnedDelayNanos;
+    }
+
+    public HedgeStats getStats() {
+        return new HedgeStats(calls.sum(), hedges.sum(), hedgeWins.sum(), hedgeDelayNanos() / 1_000_000);
+    }
+
+    private synchronized void earnCredit() {
+        credits = Math.min(MAX_CREDITS, credits + creditPerCall);
+    }
+
+    private synchronized boolean tryConsumeCredit() {
+        if (credits < CREDIT_UNIT) {
+            return false;
+        }
+        credits -= CREDIT_UNIT;
+        return true;
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        window[samples % WINDOW_SIZE] = nanos;
+        samples++;
+        if (samples >= minSamples && (samples % RECOMPUTE_EVERY == 0 || learnedDelayNanos < 0)) {
+            long[] sorted = Arrays.copyOf(window, Math.min(samples, WINDOW_SIZE));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            learnedDelayNanos = sorted[Math.clamp(index, 0, sorted.length - 1)];
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        return new GroqApiException("Failed to call GroqCloud API: " + e.getCause().getMessage(), e.getCause());
+    }
+
+    /**
+     * Chamadas, hedges disparados, hedges que venceram e o atraso atual (ms, -1 = aprendendo).
+     */
+    public record HedgeStats(long calls, long hedges, long hedgeWins, long delayMs) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesce chamadas concorrentes com a mesma chave: a primeira executa,
+ * as demais aguardam o mesmo resultado (ou a mesma exceção) até o próprio prazo.
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    V execute(K key, Supplier<V> call) {
+        return execute(key, UpstreamRetry.NO_DEADLINE, call);
+    }
+
+    /**
+     * {@code deadlineNanos} (nanoTime) limita só a espera de quem chega com a chave já em
+     * andamento; quem executa {@code call} respeita o prazo que a própria chamada impõe.
+     */
+    V execute(K key, long deadlineNanos, Supplier<V> call) {
+        CompletableFuture<V> leader = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            return await(existing, deadlineNanos);
+        }
+
+        V result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, leader);
+            leader.completeExceptionally(e);
+            throw e;
+        }
+        // remove antes de completar: quem chega depois faz a própria chamada em vez de
+        // receber um resultado já entregue, então resultados não ficam "cacheados" aqui
+        inFlight.remove(key, leader);
+        leader.complete(result);
+        return result;
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future, long deadlineNanos) {
+        try {
+            if (deadlineNanos == UpstreamRetry.NO_DEADLINE) {
+                return future.get();
+            }
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new GroqApiException("Coalesced call failed: " + cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new GroqApiException("Coalesced call did not finish before the request deadline", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GroqApiException("Interrupted while waiting for a coalesced call", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.commitgen.service;
+
+import com.commitgen.dto.CommitResponse.Suggestion;
+import com.commitgen.service.PromptTemplateRegistry.StyleTemplate;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decodifica a resposta do JSON mode direto em {@link Suggestion}, token a token com o
+ * {@link JsonParser} do Jackson (sem montar árvore nem mapear para classes intermediárias):
+ * <pre>{"suggestions": [{"type": "feat", "scope": "auth", "description": "allow login with one-time codes"}]}</pre>
+ * Em estilos {@code parse: conventional}, {@code type} é obrigatório e a mensagem é montada como
+ * {@code type(scope): description}; nos demais, {@code description} já é a mensagem inteira e
+ * type/scope são ignorados. Qualquer desvio do formato lança {@link SchemaException}.
+ */
+final class SuggestionJsonDecoder {
+
+    static final String SUGGESTIONS_FIELD = "suggestions";
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final Pattern TYPE_PATTERN = Pattern.compile("\\w+");
+    private static final Pattern SCOPE_PATTERN = Pattern.compile("[^()\\r\\n]+");
+
+    /**
+     * Resposta que não segue o formato pedido.
+     */
+    static final class SchemaException extends RuntimeException {
+        SchemaException(String message) {
+            super(message);
+        }
+    }
+
+    private SuggestionJsonDecoder() {
+    }
+
+    static List<Suggestion> decode(String content, StyleTemplate style) {
+        try (JsonParser parser = FACTORY.createParser(content)) {
+            expect(parser.nextToken() == JsonToken.START_OBJECT, "expected a JSON object");
+            List<Suggestion> suggestions = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (SUGGESTIONS_FIELD.equals(field)) {
+                    suggestions = readSuggestions(parser, style);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            expect(parser.nextToken() == null, "unexpected content after the JSON object");
+            expect(suggestions != null, "missing \"" + SUGGESTIONS_FIELD + "\" array");
+            expect(!suggestions.isEmpty(), "\"" + SUGGESTIONS_FIELD + "\" is empty");
+            return suggestions;
+        } catch (JsonProcessingException e) {
+            throw new SchemaException("invalid JSON: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            // lendo de uma String, só erros de parse são esperados
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Suggestion> readSuggestions(JsonParser parser, StyleTemplate style) throws IOException {
+        expect(parser.currentToken() == JsonToken.START_ARRAY, "\"" + SUGGESTIONS_FIELD + "\" must be an array");
+        List<Suggestion> suggestions = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            expect(parser.currentToken() == JsonToken.START_OBJECT, "each suggestion must be an object");
+            String type = null;
+            String scope = null;
+            String description = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type" -> type = text(parser, field);
+                    case "scope" -> scope = text(parser, field);
+                    case "description" -> description = text(parser, field);
+                    default -> parser.skipChildren();
+                }
+            }
+            suggestions.add(suggestion(type, scope, description, style));
+        }
+        return suggestions;
+    }
+
+    private static Suggestion suggestion(String type, String scope, String description, StyleTemplate style) {
+        expect(description != null, "missing description");
+        expect(description.indexOf('\n') < 0, "description spans several lines");
+        if (!style.conventional()) {
+            return Suggestion.builder()
+                    .message(description)
+                    .description(description)
+                    .build();
+        }
+        expect(type != null && TYPE_PATTERN.matcher(type).matches(), "invalid type: " + type);
+        expect(scope == null || SCOPE_PATTERN.matcher(scope).matches(), "invalid scope: " + scope);
+        String message = scope != null
+                ? type + '(' + scope + "): " + description
+                : type + ": " + description;
+        return Suggestion.builder()
+                .message(message)
+                .type(type)
+                .scope(scope)
+                .description(description)
+                .build();
+    }
+
+    // string não vazia, ou null para null/""
+    private static String text(JsonParser parser, String field) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(token == JsonToken.VALUE_STRING, "\"" + field + "\" must be a string");
+        String value = parser.getText().strip();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition) {
+            throw new SchemaException(message);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.commitgen.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimativa local de tokens, sem carregar o tokenizer do modelo.
+ * Aproxima um BPE estilo Llama 3: palavras curtas viram 1 token, identificadores longos
+ * são quebrados a cada ~5 chars, pontuação conta por símbolo e não-ASCII (acentos, emoji)
+ * custa mais. Erra para cima de propósito — usado para dimensionar limites, não para cobrança.
+ */
+@Slf4j
+@Service
+public class TokenEstimator {
+
+    private static final int CHARS_PER_WORD_TOKEN = 5;
+    private static final int SPACES_PER_TOKEN = 8;
+
+    // tokens da numeração "1. " + quebra de linha em cada sugestão
+    private static final int LIST_OVERHEAD_PER_LINE = 4;
+    // {"type": "...", "scope": "...", "description": "..."} em volta de cada mensagem
+    private static final int JSON_OVERHEAD_PER_SUGGESTION = 24;
+    private static final int COMPLETION_BASE_TOKENS = 16;
+    private static final double COMPLETION_SAFETY_FACTOR = 1.3;
+
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder estimatedPromptTotal = new LongAdder();
+    private final LongAdder actualPromptTotal = new LongAdder();
+    private final LongAdder maxTokensTotal = new LongAdder();
+    private final LongAdder actualCompletionTotal = new LongAdder();
+
+    public int estimate(String text) {
+        if (text == null || text.isEmpty()) return 0;
+
+        int tokens = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            int start = i;
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                while (i < length && text.charAt(i) < 128 && Character.isLetterOrDigit(text.charAt(i))) i++;
+                tokens += (i - start + CHARS_PER_WORD_TOKEN - 1) / CHARS_PER_WORD_TOKEN;
+            } else if (c == ' ' || c == '\t') {
+                while (i < length && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) i++;
+                // um espaço simples é absorvido pela palavra seguinte
+                int run = i - start;
+                tokens += run == 1 ? 0 : (run + SPACES_PER_TOKEN - 1) / SPACES_PER_TOKEN;
+            } else if (c == '\n' || c == '\r') {
+                i++;
+                tokens++;
+            } else if (c < 128) {
+                i++;
+                tokens++;
+            } else if (Character.isHighSurrogate(c)) {
+                // emoji e afins: normalmente 2-3 tokens
+                i += 2;
+                tokens += 3;
+            } else {
+                // acentos e outros caracteres não-ASCII
+                i++;
+                tokens += Character.isLetter(c) ? 1 : 2;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Limite de tokens de saída para {@code quantity} mensagens de até {@code maxCharsPerMessage} chars.
+     * Commit messages têm ~3 chars por token (pontuação, escopo, emoji).
+     */
+    public int maxCompletionTokens(int quantity, int maxCharsPerMessage) {
+        int perLine = (maxCharsPerMessage + 2) / 3 + LIST_OVERHEAD_PER_LINE;
+        return COMPLETION_BASE_TOKENS + (int) Math.ceil(quantity * perLine * COMPLETION_SAFETY_FACTOR);
+    }
+
+    /**
+     * Como {@link #maxCompletionTokens}, para a resposta em JSON mode: chaves, aspas e campos
+     * separados custam mais que a numeração da lista.
+     */
+    public int maxJsonCompletionTokens(int quantity, int maxCharsPerMessage) {
+        int perSuggestion = (maxCharsPerMessage + 2) / 3 + JSON_OVERHEAD_PER_SUGGESTION;
+        return COMPLETION_BASE_TOKENS + (int) Math.ceil(quantity * perSuggestion * COMPLETION_SAFETY_FACTOR);
+    }
+
+    /**
+     * Registra a estimativa contra o {@code usage} real devolvido pela API.
+     */
+    public void recordUsage(int estimatedPromptTokens, int actualPromptTokens,
+                            int maxTokens, int actualCompletionTokens) {
+        samples.increment();
+        estimatedPromptTotal.add(estimatedPromptTokens);
+        actualPromptTotal.add(actualPromptTokens);
+        maxTokensTotal.add(maxTokens);
+        actualCompletionTotal.add(actualCompletionTokens);
+        log.debug("Token usage: prompt estimated={} actual={}, completion max={} actual={}",
+                estimatedPromptTokens, actualPromptTokens, maxTokens, actualCompletionTokens);
+    }
+
+    public UsageStats getStats() {
+        return new UsageStats(samples.sum(), estimatedPromptTotal.sum(), actualPromptTotal.sum(),
+                maxTokensTotal.sum(), actualCompletionTotal.sum());
+    }
+
+    /**
+     * Totais acumulados de estimado vs. real desde o startup.
+     */
+    public record UsageStats(long samples, long estimatedPromptTokens, long actualPromptTokens,
+                             long maxTokens, long actualCompletionTokens) {
+
+        /** Real / estimado para o prompt: abaixo de 1 significa que a estimativa está folgada. */
+        public double promptRatio() {
+            return estimatedPromptTokens == 0 ? 0 : (double) actualPromptTokens / estimatedPromptTokens;
+        }
+
+        /** Fração do max_tokens efetivamente usada pelas respostas. */
+        public double completionUtilization() {
+            return maxTokens == 0 ? 0 : (double) actualCompletionTokens / maxTokens;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.commitgen.service;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cota de um endpoint conforme os headers {@code x-ratelimit-*} e {@code retry-after}
+ * da última resposta. Entre respostas, cada chamada desconta localmente uma requisição
+ * e os tokens estimados, para que chamadas concorrentes não estourem a cota juntas.
+ */
+public final class UpstreamQuota {
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final long UNKNOWN = -1;
+
+    private long remainingRequests = UNKNOWN;
+    private long resetRequestsAtNanos;
+    private long remainingTokens = UNKNOWN;
+    private long resetTokensAtNanos;
+    private long blockedUntilNanos;
+
+    /**
+     * Quanto esperar até haver cota para {@code tokens}; 0 = pode chamar agora.
+     */
+    synchronized long waitNanos(int tokens, long now) {
+        if (remainingRequests != UNKNOWN && now >= resetRequestsAtNanos) {
+            remainingRequests = UNKNOWN;
+        }
+        if (remainingTokens != UNKNOWN && now >= resetTokensAtNanos) {
+            remainingTokens = UNKNOWN;
+        }
+        long wait = Math.max(0, blockedUntilNanos - now);
+        if (remainingRequests != UNKNOWN && remainingRequests <= 0) {
+            wait = Math.max(wait, resetRequestsAtNanos - now);
+        }
+        if (remainingTokens != UNKNOWN && remainingTokens < tokens) {
+            wait = Math.max(wait, resetTokensAtNanos - now);
+        }
+        return wait;
+    }
+
+    /**
+     * Reserva cota para uma chamada se houver; senão retorna quanto esperar sem reservar nada.
+     */
+    synchronized long tryReserve(int tokens, long now) {
+        long wait = waitNanos(tokens, now);
+        if (wait == 0) {
+            reserve(tokens);
+        }
+        return wait;
+    }
+
+    private void reserve(int tokens) {
+        if (remainingRequests != UNKNOWN) {
+            remainingRequests--;
+        }
+        if (remainingTokens != UNKNOWN) {
+            remainingTokens -= tokens;
+        }
+    }
+
+    synchronized void update(HttpHeaders headers, long now) {
+        if (headers == null) return;
+        Long requests = parseLong(headers.getFirst("x-ratelimit-remaining-requests"));
+        Long requestsReset = parseDurationNanos(headers.getFirst("x-ratelimit-reset-requests"));
+        if (requests != null && requestsReset != null) {
+            remainingRequests = requests;
+            resetRequestsAtNanos = now + requestsReset;
+        }
+        Long tokens = parseLong(headers.getFirst("x-ratelimit-remaining-tokens"));
+        Long tokensReset = parseDurationNanos(headers.getFirst("x-ratelimit-reset-tokens"));
+        if (tokens != null && tokensReset != null) {
+            remainingTokens = tokens;
+            resetTokensAtNanos = now + tokensReset;
+        }
+        Long retryAfter = parseRetryAfterNanos(headers.getFirst(HttpHeaders.RETRY_AFTER));
+        if (retryAfter != null) {
+            blockedUntilNanos = Math.max(blockedUntilNanos, now + retryAfter);
+        }
+    }
+
+    /** {@code retry-after} em segundos (a GroqCloud não usa o formato de data HTTP). */
+    static Long parseRetryAfterNanos(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return (long) (Double.parseDouble(value.trim()) * 1_000_000_000L);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Durações no formato da GroqCloud: {@code 2m59.56s}, {@code 7.66s}, {@code 120ms}. */
+    static Long parseDurationNanos(String value) {
+        if (value == null || value.isBlank()) return null;
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double nanos = 0;
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            nanos += switch (matcher.group(2)) {
+                case "h" -> amount * 3600e9;
+                case "m" -> amount * 60e9;
+                case "s" -> amount * 1e9;
+                default -> amount * 1e6;
+            };
+        }
+        return found ? (long) nanos : null;
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.UpstreamRejectedException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Chamada a um endpoint respeitando a cota informada pelo upstream: espera um pouco
+ * quando a cota acabou (em vez de tomar 429) e repete 429/5xx com backoff exponencial
+ * com jitter, sempre dentro do prazo da chamada. Um 429 que esgota as tentativas vira
+ * {@code QUOTA_EXHAUSTED}, como a cota esgotada antes da chamada.
+ */
+@Slf4j
+@Service
+public class UpstreamRetry {
+
+    /** Sem prazo da requisição (ex.: geração em lote sem admissão): vale só {@code groq.retry.deadline}. */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final long deadlineNanos;
+    private final long maxQueueWaitNanos;
+    private final GenerationMetrics metrics;
+
+    public UpstreamRetry(int maxAttempts, Duration baseDelay, Duration maxDelay, Duration deadline,
+                         Duration maxQueueWait) {
+        this(maxAttempts, baseDelay, maxDelay, deadline, maxQueueWait, GenerationMetrics.noop());
+    }
+
+    @Autowired
+    public UpstreamRetry(@Value("${groq.retry.max-attempts:3}") int maxAttempts,
+                         @Value("${groq.retry.base-delay:250ms}") Duration baseDelay,
+                         @Value("${groq.retry.max-delay:4s}") Duration maxDelay,
+                         @Value("${groq.retry.deadline:20s}") Duration deadline,
+                         @Value("${groq.quota.max-wait:5s}") Duration maxQueueWait,
+                         GenerationMetrics metrics) {
+        this.metrics = metrics;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.deadlineNanos = deadline.toNanos();
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+    }
+
+    /** Uma tentativa só e sem espera por cota. */
+    public static UpstreamRetry none() {
+        return new UpstreamRetry(1, Duration.ZERO, Duration.ZERO, Duration.ofMinutes(5), Duration.ZERO);
+    }
+
+    /** Prazo absoluto (nanoTime) para uma chamada que começa agora. */
+    public long deadlineFromNow() {
+        return System.nanoTime() + deadlineNanos;
+    }
+
+    /**
+     * O mais curto entre o prazo da requisição ({@code requestDeadline}, em nanoTime) e
+     * {@code groq.retry.deadline} a partir de agora.
+     */
+    public long deadlineFromNow(long requestDeadline) {
+        return Math.min(requestDeadline, deadlineFromNow());
+    }
+
+    /**
+     * Executa {@code call} no endpoint dono de {@code quota}. {@code call} deve lançar
+     * {@link RestClientResponseException} em respostas de erro e atualizar a cota nas de sucesso.
+     */
+    public <T> T execute(UpstreamQuota quota, int estimatedTokens, long deadline, Supplier<T> call) {
+        for (int attempt = 1; ; attempt++) {
+            awaitQuota(quota, estimatedTokens, deadline);
+            try {
+                return call.get();
+            } catch (RestClientResponseException e) {
+                long now = System.nanoTime();
+                quota.update(e.getResponseHeaders(), now);
+                int status = e.getStatusCode().value();
+                metrics.upstreamError(status == 429 ? "http_429" : "http_" + status / 100 + "xx");
+                boolean retryable = status == 429 || e.getStatusCode().is5xxServerError();
+                long delay = retryDelayNanos(attempt, status == 429 ? e.getResponseHeaders() : null);
+                if (status == 429 && (attempt >= maxAttempts || now + delay > deadline)) {
+                    // throttling do provedor: o cliente recebe Retry-After; o roteador conta a falha no circuit breaker
+                    long retryAfterSeconds = Math.max(1, (delay + 999_999_999) / 1_000_000_000);
+                    log.warn("GroqCloud API still rate limited after {} attempt(s); giving up", attempt);
+                    throw new UpstreamUnavailableException(UpstreamUnavailableException.Reason.QUOTA_EXHAUSTED,
+                            "Upstream rate limited; retry in " + retryAfterSeconds + "s", retryAfterSeconds, e);
+                }
+                if (!retryable && e.getStatusCode().is4xxClientError()) {
+                    log.warn("GroqCloud API rejected the request with {}: {}", status, e.getMessage());
+                    throw new UpstreamRejectedException(status,
+                            "GroqCloud API rejected the request: " + e.getMessage(), e);
+                }
+                if (!retryable || attempt >= maxAttempts || now + delay > deadline) {
+                    log.error("Error calling GroqCloud API: {}", e.getMessage());
+                    throw new GroqApiException("Failed to call GroqCloud API: " + e.getMessage(), e);
+                }
+                log.warn("GroqCloud API returned {} (attempt {}/{}); retrying in {}ms",
+                        status, attempt, maxAttempts, delay / 1_000_000);
+                sleep(delay);
+            } catch (RestClientException e) {
+                metrics.upstreamError("io");
+                log.error("Error calling GroqCloud API: {}", e.getMessage());
+                throw new GroqApiException("Failed to call GroqCloud API: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Fila curta: se a cota acabou e volta dentro do prazo (e de {@code groq.quota.max-wait}),
+     * espera; senão recusa sem chamar o upstream.
+     */
+    private void awaitQuota(UpstreamQuota quota, int tokens, long deadline) {
+        long limit = Math.min(deadline, System.nanoTime() + maxQueueWaitNanos);
+        while (true) {
+            long now = System.nanoTime();
+            long wait = quota.tryReserve(tokens, now);
+            if (wait == 0) {
+                return;
+            }
+            if (now + wait > limit) {
+                long retryAfterSeconds = Math.max(1, (wait + 999_999_999) / 1_000_000_000);
+                throw new UpstreamUnavailableException(UpstreamUnavailableException.Reason.QUOTA_EXHAUSTED,
+                        "Upstream rate limit exhausted; retry in " + retryAfterSeconds + "s", retryAfterSeconds);
+            }
+            log.debug("Upstream quota exhausted; queueing for {}ms", wait / 1_000_000);
+            sleep(wait);
+        }
+    }
+
+    // retry-after do 429 quando presente; senão "full jitter" sobre o backoff exponencial
+    private long retryDelayNanos(int attempt, HttpHeaders headers) {
+        Long retryAfter = headers != null ? UpstreamQuota.parseRetryAfterNanos(headers.getFirst(HttpHeaders.RETRY_AFTER)) : null;
+        if (retryAfter != null) {
+            return retryAfter;
+        }
+        long ceiling = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt - 1, 20));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GroqApiException("Interrupted while waiting for GroqCloud API quota", e);
+        }
+    }
+}
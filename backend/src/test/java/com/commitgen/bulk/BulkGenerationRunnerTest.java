@@ -0,0 +1,131 @@
+package com.commitgen.bulk;
+
+import com.commitgen.config.BulkProperties;
+import com.commitgen.dto.CommitResponse;
+import com.commitgen.dto.CommitResponse.Suggestion;
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.service.CommitService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BulkGenerationRunnerTest {
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    private CommitService commitService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<RevCommit> commits = new ArrayList<>();
+    private BulkProperties properties;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path repo = dir.resolve("repo");
+        try (Git git = Git.init().setDirectory(repo.toFile()).setInitialBranch("main").call()) {
+            for (int i = 1; i <= 4; i++) {
+                commits.add(GitDiffReaderTest.commit(git, "file" + i + ".txt", "line " + i + "\n", "wip " + i));
+            }
+        }
+        properties = new BulkProperties();
+        properties.setRepository(repo);
+        properties.setOutput(dir.resolve("out/results.jsonl"));
+        properties.setWorkers(2);
+    }
+
+    @Test
+    @DisplayName("deve gravar uma linha JSONL por commit")
+    void shouldWriteOneLinePerCommit() throws Exception {
+        when(commitService.generateCommitMessages(any())).thenReturn(response("feat: add file"));
+
+        BulkGenerationRunner.Summary summary = runner().generate();
+
+        assertThat(summary.succeeded()).isEqualTo(4);
+        List<JsonNode> lines = readLines();
+        assertThat(lines).extracting(line -> line.path("commit").asText())
+                .containsExactlyInAnyOrderElementsOf(commits.stream().map(RevCommit::getName).toList());
+        assertThat(lines.get(0).path("status").asText()).isEqualTo("ok");
+        assertThat(lines.get(0).path("suggestions").path(0).path("message").asText()).isEqualTo("feat: add file");
+        assertThat(lines.get(0).path("originalMessage").asText()).startsWith("wip ");
+    }
+
+    @Test
+    @DisplayName("deve retomar após crash: pula os concluídos, refaz os com erro e descarta a linha cortada")
+    void shouldResumeFromCheckpoint() throws Exception {
+        Files.createDirectories(properties.getOutput().getParent());
+        Files.writeString(properties.getOutput(), String.join("\n",
+                        "{\"commit\":\"" + commits.get(0).getName() + "\",\"status\":\"ok\"}",
+                        "{\"commit\":\"" + commits.get(1).getName() + "\",\"status\":\"error\",\"error\":\"503\"}",
+                        "{\"commit\":\"" + commits.get(2).getName() + "\",\"sta"),
+                StandardOpenOption.CREATE);
+        when(commitService.generateCommitMessages(any())).thenReturn(response("feat: add file"));
+
+        BulkGenerationRunner.Summary summary = runner().generate();
+
+        assertThat(summary.alreadyDone()).isEqualTo(1);
+        assertThat(summary.succeeded()).isEqualTo(3);
+        verify(commitService, times(3)).generateCommitMessages(any());
+        List<JsonNode> lines = readLines();
+        assertThat(lines).hasSize(5);
+        assertThat(lines.subList(2, 5)).extracting(line -> line.path("status").asText()).containsOnly("ok");
+    }
+
+    @Test
+    @DisplayName("falha na geração deve virar linha de erro, sem interromper os demais commits")
+    void shouldRecordFailures() throws Exception {
+        when(commitService.generateCommitMessages(any()))
+                .thenThrow(new GroqApiException("Failed to call GroqCloud API: 500"))
+                .thenReturn(response("feat: add file"));
+
+        BulkGenerationRunner.Summary summary = runner().generate();
+
+        assertThat(summary.failed()).isEqualTo(1);
+        assertThat(summary.succeeded()).isEqualTo(3);
+        assertThat(readLines()).filteredOn(line -> "error".equals(line.path("status").asText()))
+                .singleElement()
+                .satisfies(line -> assertThat(line.path("error").asText()).contains("500"));
+    }
+
+    private BulkGenerationRunner runner() {
+        return new BulkGenerationRunner(commitService, properties, objectMapper);
+    }
+
+    private List<JsonNode> readLines() throws Exception {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(properties.getOutput())) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private static CommitResponse response(String message) {
+        return CommitResponse.builder()
+                .suggestions(List.of(Suggestion.builder().message(message).type("feat").build()))
+                .model("llama-3.3-70b-versatile")
+                .processingTimeMs(5L)
+                .build();
+    }
+}
@@ -0,0 +1,94 @@
+package com.commitgen.bulk;
+
+import com.commitgen.bulk.GitDiffReader.CommitDiff;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GitDiffReaderTest {
+
+    @TempDir
+    Path repo;
+
+    private final List<RevCommit> commits = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try (Git git = Git.init().setDirectory(repo.toFile()).setInitialBranch("main").call()) {
+            commits.add(commit(git, "README.md", "# demo\n", "initial"));
+            commits.add(commit(git, "src/App.java", "class App {}\n", "add app"));
+            commits.add(commit(git, "README.md", "# demo\n\nusage\n", "docs"));
+        }
+    }
+
+    @Test
+    @DisplayName("deve ler o histórico do mais antigo para o mais novo, com o diff contra o pai")
+    void shouldReadHistoryOldestFirst() throws Exception {
+        List<CommitDiff> read = read("HEAD", 1_000_000);
+
+        assertThat(read).extracting(CommitDiff::id)
+                .containsExactly(commits.get(0).getName(), commits.get(1).getName(), commits.get(2).getName());
+        assertThat(read.get(0).diff()).contains("new file mode").contains("+# demo");
+        assertThat(read.get(1).diff()).contains("diff --git a/src/App.java b/src/App.java").doesNotContain("README");
+        assertThat(read.get(2).diff()).contains("+usage");
+        assertThat(read.get(2).message()).isEqualTo("docs");
+    }
+
+    @Test
+    @DisplayName("intervalo A..B deve trazer só os commits depois de A")
+    void shouldReadRange() throws Exception {
+        List<CommitDiff> read = read(commits.get(0).getName() + "..HEAD", 1_000_000);
+
+        assertThat(read).extracting(CommitDiff::message).containsExactly("add app", "docs");
+    }
+
+    @Test
+    @DisplayName("deve pular commits já processados e devolver diff null acima do limite")
+    void shouldSkipAndBoundDiffs() throws Exception {
+        List<CommitDiff> read = new ArrayList<>();
+        try (GitDiffReader reader = new GitDiffReader(repo)) {
+            reader.forEachCommit("HEAD", false, 80, commits.get(0).getName()::equals, read::add);
+        }
+
+        assertThat(read).extracting(CommitDiff::message).containsExactly("add app", "docs");
+        assertThat(read).extracting(CommitDiff::diff).containsOnlyNulls();
+    }
+
+    @Test
+    @DisplayName("revisão inexistente deve falhar")
+    void shouldRejectUnknownRevision() throws Exception {
+        try (GitDiffReader reader = new GitDiffReader(repo)) {
+            assertThatThrownBy(() -> reader.forEachCommit("v9.9..HEAD", false, 1000, id -> false, c -> { }))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("v9.9");
+        }
+    }
+
+    private List<CommitDiff> read(String range, int maxDiffChars) throws Exception {
+        List<CommitDiff> read = new ArrayList<>();
+        try (GitDiffReader reader = new GitDiffReader(repo)) {
+            reader.forEachCommit(range, false, maxDiffChars, id -> false, read::add);
+        }
+        return read;
+    }
+
+    static RevCommit commit(Git git, String file, String content, String message) throws Exception {
+        Path path = git.getRepository().getWorkTree().toPath().resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content);
+        git.add().addFilepattern(file).call();
+        return git.commit().setMessage(message).setAuthor("Dev", "dev@example.com")
+                .setCommitter("Dev", "dev@example.com").setSign(false).call();
+    }
+}
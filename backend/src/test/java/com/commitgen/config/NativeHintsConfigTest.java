@@ -0,0 +1,54 @@
+package com.commitgen.config;
+
+import com.commitgen.service.CommitService;
+import com.commitgen.service.BucketRateLimitBackend;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NativeHintsConfigTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    NativeHintsConfigTest() {
+        new NativeHintsConfig.CommitGenRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    @DisplayName("deve registrar os DTOs para o Jackson")
+    void shouldRegisterDtos() {
+        for (Class<?> type : NativeHintsConfig.JSON_TYPES) {
+            assertThat(RuntimeHintsPredicates.reflection().onType(type)
+                    .withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS)).accepts(hints);
+        }
+    }
+
+    @Test
+    @DisplayName("deve incluir os templates de prompt lidos do classpath")
+    void shouldRegisterPromptTemplates() {
+        assertThat(RuntimeHintsPredicates.resource().forResource("prompts/styles/conventional.txt")).accepts(hints);
+    }
+
+    @Test
+    @DisplayName("deve cobrir as classes que o Caffeine escolhe para os caches dos services")
+    void shouldCoverCaffeineClassesUsedByServices() {
+        Object rateLimitCache = ReflectionTestUtils.getField(new BucketRateLimitBackend(), "buckets");
+        Object responseCache = ReflectionTestUtils.getField(new CommitService(null, null, null, null, null), "responseCache");
+
+        for (Object cache : new Object[]{rateLimitCache, responseCache}) {
+            Object localCache = ReflectionTestUtils.getField(cache, "cache");
+            Object nodeFactory = ReflectionTestUtils.getField(localCache, "nodeFactory");
+            for (Class<?> type : new Class<?>[]{localCache.getClass(), nodeFactory.getClass()}) {
+                assertThat(RuntimeHintsPredicates.reflection().onType(type)
+                        .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS))
+                        .as(type.getName())
+                        .accepts(hints);
+            }
+        }
+    }
+}
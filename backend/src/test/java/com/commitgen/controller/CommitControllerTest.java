@@ -1,7 +1,17 @@
 package com.commitgen.controller;
 
+import com.commitgen.dto.BatchItemResult;
+import com.commitgen.dto.BatchResponse;
+import com.commitgen.dto.CommitRequest;
 import com.commitgen.dto.CommitResponse;
+import com.commitgen.exception.ErrorResponse;
 import com.commitgen.dto.CommitResponse.Suggestion;
+import com.commitgen.exception.ServiceOverloadedException;
+import com.commitgen.service.AdmissionService;
+import com.commitgen.service.AdmissionService.Permit;
+import com.commitgen.service.AdmissionService.Priority;
+import com.commitgen.service.BatchService;
+import com.commitgen.service.BatchService.Charge;
 import com.commitgen.service.CommitService;
 import com.commitgen.service.RateLimitService;
 import com.commitgen.service.RateLimitService.RateLimitInfo;
@@ -18,10 +28,21 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -38,6 +59,12 @@ class CommitControllerTest {
     @MockitoBean
     private RateLimitService rateLimitService;
 
+    @MockitoBean
+    private AdmissionService admissionService;
+
+    @MockitoBean
+    private BatchService batchService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -47,8 +74,9 @@ class CommitControllerTest {
     @DisplayName("POST /api/generate retorna 200 com sugestões e headers de rate limit")
     void shouldReturn200WithSuggestions() throws Exception {
         RateLimitInfo info = new RateLimitInfo(true, 9, 10, RESET_EPOCH, 0);
-        when(rateLimitService.consume(anyString())).thenReturn(info);
-        when(commitService.generateCommitMessages(any())).thenReturn(CommitResponse.builder()
+        when(rateLimitService.consume(anyString(), any())).thenReturn(info);
+        when(admissionService.acquire(any())).thenReturn(mock(Permit.class));
+        when(commitService.generateCommitMessages(any(), anyLong())).thenReturn(CommitResponse.builder()
                 .suggestions(List.of(Suggestion.builder()
                         .message("feat: add feature")
                         .type("feat")
@@ -82,7 +110,7 @@ class CommitControllerTest {
     @DisplayName("POST /api/generate retorna 429 quando rate limit excedido com headers")
     void shouldReturn429WhenRateLimited() throws Exception {
         RateLimitInfo info = new RateLimitInfo(false, 0, 10, RESET_EPOCH, 360);
-        when(rateLimitService.consume(anyString())).thenReturn(info);
+        when(rateLimitService.consume(anyString(), any())).thenReturn(info);
 
         String body = """
                 {
@@ -104,6 +132,33 @@ class CommitControllerTest {
                 .andExpect(jsonPath("$.status").value(429));
     }
 
+    @Test
+    @DisplayName("POST /api/generate retorna 503 com Retry-After quando a admissão descarta a requisição")
+    void shouldReturn503WhenShed() throws Exception {
+        RateLimitInfo info = new RateLimitInfo(true, 9, 10, RESET_EPOCH, 0);
+        when(rateLimitService.consume(anyString(), any())).thenReturn(info);
+        when(admissionService.acquire(Priority.INTERACTIVE))
+                .thenThrow(new ServiceOverloadedException("Server is overloaded; retry in 4s", 4));
+
+        String body = """
+                {
+                    "diff": "+ some change",
+                    "language": "en",
+                    "style": "conventional",
+                    "quantity": 1
+                }
+                """;
+
+        mockMvc.perform(post("/api/generate")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "4"))
+                .andExpect(jsonPath("$.reason").value("overloaded"));
+        verify(commitService, never()).generateCommitMessages(any(), anyLong());
+        verify(rateLimitService).refund(anyString(), eq(info));
+    }
+
     @ParameterizedTest(name = "POST /api/generate retorna 400 para body inválido: [{index}]")
     @ValueSource(strings = {
             "{\"diff\": \"\", \"language\": \"en\", \"style\": \"conventional\", \"quantity\": 1}",
@@ -117,6 +172,145 @@ class CommitControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    @DisplayName("POST /api/generate/batch cobra o rate limit por item, roda como bulk e devolve erros na posição")
+    void shouldReturnBatchResultsWithPerItemErrors() throws Exception {
+        when(rateLimitService.consume(anyString(), any())).thenReturn(
+                new RateLimitInfo(true, 9, 10, RESET_EPOCH, 0),
+                new RateLimitInfo(false, 0, 10, RESET_EPOCH, 360));
+        // o header do cliente não promove lotes
+        when(batchService.generate(any(), eq(Priority.BULK), any(), any())).thenAnswer(invocation -> {
+            List<CommitRequest> items = invocation.getArgument(0);
+            Function<CommitRequest, Charge> charge = invocation.getArgument(2);
+            ErrorResponse first = charge.apply(items.get(0)).rejected();
+            ErrorResponse second = charge.apply(items.get(1)).rejected();
+            return BatchResponse.builder()
+                    .results(List.of(
+                            BatchItemResult.builder().index(0).error(first).response(CommitResponse.builder()
+                                    .suggestions(List.of()).model("llama-3.3-70b-versatile").build()).build(),
+                            BatchItemResult.builder().index(1).error(second).build()))
+                    .succeeded(1)
+                    .failed(1)
+                    .processingTimeMs(10L)
+                    .build();
+        });
+
+        String body = """
+                {"items": [{"diff": "+ first"}, {"diff": "+ second"}]}
+                """;
+
+        mockMvc.perform(post("/api/generate/batch")
+                        .header("X-Request-Priority", "interactive")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].response.model").value("llama-3.3-70b-versatile"))
+                .andExpect(jsonPath("$.results[0].error").doesNotExist())
+                .andExpect(jsonPath("$.results[1].error.status").value(429))
+                .andExpect(header().string("X-RateLimit-Remaining", "0"));
+    }
+
+    @Test
+    @DisplayName("POST /api/generate/batch/stream emite um evento item por item e um evento done")
+    void shouldStreamBatchItems() throws Exception {
+        AtomicReference<Thread> streamThread = new AtomicReference<>();
+        when(batchService.generate(any(), any(), any(), any())).thenAnswer(invocation -> {
+            streamThread.set(Thread.currentThread());
+            Consumer<BatchItemResult> onResult = invocation.getArgument(3);
+            BatchItemResult item = BatchItemResult.builder().index(0).response(CommitResponse.builder()
+                    .suggestions(List.of()).model("llama-3.3-70b-versatile").build()).build();
+            onResult.accept(item);
+            return BatchResponse.builder().results(List.of(item)).succeeded(1).processingTimeMs(5L).build();
+        });
+
+        var result = mockMvc.perform(post("/api/generate/batch/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\": [{\"diff\": \"+ first\"}]}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("event:item")))
+                .andExpect(content().string(containsString("\"index\":0")))
+                .andExpect(content().string(containsString("event:done")));
+        assertThat(streamThread.get().isVirtual()).isTrue();
+        assertThat(streamThread.get().getName()).startsWith("sse-stream-");
+    }
+
+    @ParameterizedTest(name = "POST /api/generate/batch retorna 400 para lote inválido: [{index}]")
+    @ValueSource(strings = {
+            "{\"items\": []}",
+            "{}",
+            "{\"items\": [{\"diff\": \"+ ok\"}, {\"diff\": \"\"}]}"
+    })
+    void shouldReturn400ForInvalidBatch(String body) throws Exception {
+        mockMvc.perform(post("/api/generate/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("POST /api/generate/stream emite uma sugestão por evento e um evento done, numa virtual thread")
+    void shouldStreamSuggestionsAsEvents() throws Exception {
+        RateLimitInfo info = new RateLimitInfo(true, 9, 10, RESET_EPOCH, 0);
+        when(rateLimitService.consume(anyString(), any())).thenReturn(info);
+        Suggestion suggestion = Suggestion.builder()
+                .message("feat: add feature")
+                .type("feat")
+                .description("add feature")
+                .build();
+        AtomicReference<Thread> streamThread = new AtomicReference<>();
+        when(admissionService.acquire(any())).thenReturn(mock(Permit.class));
+        when(commitService.streamCommitMessages(any(), anyLong(), any())).thenAnswer(invocation -> {
+            streamThread.set(Thread.currentThread());
+            Consumer<Suggestion> onSuggestion = invocation.getArgument(2);
+            onSuggestion.accept(suggestion);
+            return CommitResponse.builder()
+                    .suggestions(List.of(suggestion))
+                    .model("llama-3.3-70b-versatile")
+                    .processingTimeMs(80L)
+                    .build();
+        });
+
+        String body = """
+                {
+                    "diff": "+ new line added",
+                    "quantity": 1
+                }
+                """;
+
+        var result = mockMvc.perform(post("/api/generate/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-RateLimit-Remaining", "9"))
+                .andExpect(content().string(containsString("event:suggestion")))
+                .andExpect(content().string(containsString("\"message\":\"feat: add feature\"")))
+                .andExpect(content().string(containsString("event:done")));
+        assertThat(streamThread.get().isVirtual()).isTrue();
+        assertThat(streamThread.get().getName()).startsWith("sse-stream-");
+    }
+
+    @Test
+    @DisplayName("POST /api/generate/stream retorna 429 com evento error quando rate limit excedido")
+    void shouldReturn429OnStreamWhenRateLimited() throws Exception {
+        RateLimitInfo info = new RateLimitInfo(false, 0, 10, RESET_EPOCH, 360);
+        when(rateLimitService.consume(anyString(), any())).thenReturn(info);
+
+        mockMvc.perform(post("/api/generate/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"diff\": \"+ some change\"}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "360"))
+                .andExpect(content().string(containsString("event:error")));
+    }
+
     @Test
     @DisplayName("GET /api/rate-limit retorna status do rate limit")
     void shouldReturnRateLimitInfo() throws Exception {
@@ -132,6 +326,31 @@ class CommitControllerTest {
                 .andExpect(header().string("X-RateLimit-Limit", "10"));
     }
 
+    @Test
+    @DisplayName("POST /api/generate no modo weighted expõe custo e orçamento de tokens nos headers")
+    void shouldExposeWeightedCostHeaders() throws Exception {
+        RateLimitInfo tokens = new RateLimitInfo(false, 300, 40000, RESET_EPOCH, 120)
+                .charged(RateLimitService.UNIT_TOKEN, 3400, null);
+        RateLimitInfo info = new RateLimitInfo(false, 6, 10, RESET_EPOCH, 120)
+                .charged(RateLimitService.UNIT_COST, 4, tokens);
+        when(rateLimitService.consume(anyString(), any())).thenReturn(info);
+
+        mockMvc.perform(post("/api/generate")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"diff\": \"+ big change\", \"quantity\": 5}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("X-RateLimit-Unit", "cost"))
+                .andExpect(header().string("X-RateLimit-Cost", "4"))
+                .andExpect(header().string("X-RateLimit-Remaining", "6"))
+                .andExpect(header().string("X-RateLimit-Limit-Tokens", "40000"))
+                .andExpect(header().string("X-RateLimit-Remaining-Tokens", "300"))
+                .andExpect(header().string("X-RateLimit-Cost-Tokens", "3400"))
+                .andExpect(header().string("Retry-After", "120"))
+                .andExpect(jsonPath("$.message").value(containsString("4 unidades")));
+
+        verify(commitService, never()).generateCommitMessages(any(), anyLong());
+    }
+
     @Test
     @DisplayName("GET /api/health retorna status UP")
     void shouldReturnHealthUp() throws Exception {
@@ -38,4 +38,23 @@ class GlobalExceptionHandlerTest {
         assertThat(ex.getMessage()).isEqualTo("timeout");
         assertThat(ex.getCause()).isNull();
     }
+
+    @Test
+    @DisplayName("motivos de 503 devem ser distintos e UpstreamUnavailable deve enviar Retry-After")
+    void shouldReportDistinct503Reasons() {
+        GlobalExceptionHandler handler = new GlobalExceptionHandler();
+
+        var upstream = handler.handleGroqApiException(new GroqApiException("500 from upstream"));
+        var circuit = handler.handleUpstreamUnavailableException(new UpstreamUnavailableException(
+                UpstreamUnavailableException.Reason.CIRCUIT_OPEN, "Circuit open", 12));
+        var limited = handler.handleUpstreamUnavailableException(new UpstreamUnavailableException(
+                UpstreamUnavailableException.Reason.CONCURRENCY_LIMITED, "Too many calls", 1));
+
+        assertThat(upstream.getStatusCode().value()).isEqualTo(503);
+        assertThat(upstream.getBody().getReason()).isEqualTo("upstream_error");
+        assertThat(circuit.getStatusCode().value()).isEqualTo(503);
+        assertThat(circuit.getBody().getReason()).isEqualTo("circuit_open");
+        assertThat(circuit.getHeaders().getFirst("Retry-After")).isEqualTo("12");
+        assertThat(limited.getBody().getReason()).isEqualTo("concurrency_limited");
+    }
 }
@@ -0,0 +1,154 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MS = 1_000_000L;
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit) {
+        return new AdaptiveConcurrencyLimiter(true, initialLimit, 2, 100, 2.0, 0.5);
+    }
+
+    @Test
+    @DisplayName("deve recusar com CONCURRENCY_LIMITED acima do limite")
+    void shouldRejectAboveLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(2);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 2; i++) {
+                executor.submit(() -> limiter.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "ok";
+                }));
+            }
+            assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+
+            assertThatThrownBy(() -> limiter.execute(() -> "third"))
+                    .isInstanceOf(UpstreamUnavailableException.class)
+                    .extracting(e -> ((UpstreamUnavailableException) e).getReason())
+                    .isEqualTo(UpstreamUnavailableException.Reason.CONCURRENCY_LIMITED);
+            release.countDown();
+        }
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("latência recente muito acima da média longa deve reduzir o limite")
+    void shouldDecreaseOnLatencyGrowth() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20);
+        for (int i = 0; i < 20; i++) {
+            simulate(limiter, 100 * MS, true);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            simulate(limiter, 500 * MS, true);
+        }
+
+        assertThat(limiter.getLimit()).isLessThan(20);
+    }
+
+    @Test
+    @DisplayName("uma amostra lenta isolada não deve reduzir o limite")
+    void shouldIgnoreSingleSlowSample() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20);
+        for (int i = 0; i < 20; i++) {
+            simulate(limiter, 100 * MS, true);
+        }
+
+        simulate(limiter, 500 * MS, true);
+
+        assertThat(limiter.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    @DisplayName("a base deve acompanhar um upstream que ficou mais lento de vez")
+    void shouldAdaptBaselineToSustainedLatency() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4);
+        for (int i = 0; i < 20; i++) {
+            simulate(limiter, 100 * MS, true);
+        }
+        for (int i = 0; i < 10; i++) {
+            simulate(limiter, 500 * MS, true);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(2);
+
+        for (int i = 0; i < 2000; i++) {
+            simulate(limiter, 500 * MS, true, 1);
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(2);
+    }
+
+    @Test
+    @DisplayName("falha deve reduzir o limite, sem passar do mínimo")
+    void shouldDecreaseOnFailureDownToMin() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8);
+
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> limiter.execute(() -> {
+                throw new GroqApiException("500");
+            })).isInstanceOf(GroqApiException.class);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("recusa local (circuito aberto) não deve reduzir o limite")
+    void shouldIgnoreLocalRejections() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8);
+
+        assertThatThrownBy(() -> limiter.execute(() -> {
+            throw new UpstreamUnavailableException(UpstreamUnavailableException.Reason.CIRCUIT_OPEN, "open", 1);
+        })).isInstanceOf(UpstreamUnavailableException.class);
+
+        assertThat(limiter.getLimit()).isEqualTo(8);
+    }
+
+    @Test
+    @DisplayName("latência estável com o limite em uso deve aumentar o limite aos poucos")
+    void shouldIncreaseWhenHealthyAndUtilized() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4);
+
+        for (int i = 0; i < 40; i++) {
+            simulate(limiter, 100 * MS, true, 3);
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(4);
+    }
+
+    private static void simulate(AdaptiveConcurrencyLimiter limiter, long latencyNanos, boolean success) {
+        simulate(limiter, latencyNanos, success, 0);
+    }
+
+    // libera uma vaga como se outras inFlightOthers chamadas ainda estivessem em andamento
+    private static void simulate(AdaptiveConcurrencyLimiter limiter, long latencyNanos, boolean success,
+                                 int inFlightOthers) {
+        for (int i = 0; i <= inFlightOthers; i++) {
+            limiter.acquire();
+        }
+        limiter.release(latencyNanos, success, true);
+        for (int i = 0; i < inFlightOthers; i++) {
+            limiter.release(0, true, false);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.ServiceOverloadedException;
+import com.commitgen.service.AdmissionService.Permit;
+import com.commitgen.service.AdmissionService.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private AdmissionService admission(int maxConcurrent, int queueCapacity, Duration slo, Duration serviceTime) {
+        return new AdmissionService(maxConcurrent, queueCapacity, slo, slo, serviceTime, registry);
+    }
+
+    @Test
+    @DisplayName("deve admitir direto enquanto houver vaga e liberar no close")
+    void shouldAdmitImmediately() {
+        AdmissionService admission = admission(2, 10, Duration.ofSeconds(5), Duration.ofSeconds(1));
+
+        try (Permit first = admission.acquire(Priority.BULK);
+             Permit second = admission.acquire(Priority.INTERACTIVE)) {
+            assertThat(admission.getInFlight()).isEqualTo(2);
+            assertThat(registry.get("commitgen.admission.in.flight").gauge().value()).isEqualTo(2);
+        }
+        assertThat(admission.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("o prazo da vaga deve ser a chegada mais o SLO da classe")
+    void shouldExposeDeadlineFromSlo() {
+        AdmissionService admission = admission(1, 10, Duration.ofSeconds(5), Duration.ofSeconds(1));
+
+        long before = System.nanoTime();
+        try (Permit permit = admission.acquire(Priority.BULK)) {
+            assertThat(permit.deadlineNanos() - before).isBetween(5_000_000_000L, 5_100_000_000L);
+        }
+    }
+
+    @Test
+    @DisplayName("gerações marcadas (cache) não devem entrar no tempo médio de serviço")
+    void shouldNotSampleSkippedGenerations() {
+        AdmissionService admission = admission(2, 10, Duration.ofSeconds(5), Duration.ofSeconds(2));
+
+        for (int i = 0; i < 5; i++) {
+            try (Permit permit = admission.acquire(Priority.BULK)) {
+                permit.skipServiceTime();
+            }
+        }
+        assertThat(admission.getServiceTimeMillis()).isEqualTo(2000);
+
+        try (Permit permit = admission.acquire(Priority.BULK)) {
+            assertThat(permit).isNotNull();
+        }
+        assertThat(admission.getServiceTimeMillis()).isLessThan(2000);
+    }
+
+    @Test
+    @DisplayName("deve descartar na hora quando a espera prevista passa do SLO")
+    void shouldShedWhenPredictedWaitExceedsSlo() {
+        // 1 vaga ocupada, 2s por geração, SLO de 1s: o próximo esperaria ~2s
+        AdmissionService admission = admission(1, 10, Duration.ofSeconds(1), Duration.ofSeconds(2));
+
+        try (Permit busy = admission.acquire(Priority.INTERACTIVE)) {
+            assertThatThrownBy(() -> admission.acquire(Priority.INTERACTIVE))
+                    .isInstanceOf(ServiceOverloadedException.class)
+                    .extracting(e -> ((ServiceOverloadedException) e).getRetryAfterSeconds())
+                    .isEqualTo(2L);
+        }
+        assertThat(registry.get("commitgen.admission.shed").tag("priority", "interactive").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("deve descartar quando a fila está cheia")
+    void shouldShedWhenQueueIsFull() throws Exception {
+        AdmissionService admission = admission(1, 1, Duration.ofSeconds(5), Duration.ofMillis(10));
+        Permit busy = admission.acquire(Priority.BULK);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> queued = executor.submit(() -> admission.acquire(Priority.BULK).close());
+            awaitQueueDepth(admission, Priority.BULK, 1);
+
+            assertThatThrownBy(() -> admission.acquire(Priority.BULK))
+                    .isInstanceOf(ServiceOverloadedException.class);
+
+            busy.close();
+            queued.get(2, TimeUnit.SECONDS);
+        }
+        assertThat(admission.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("interativas devem passar na frente das bulk já enfileiradas")
+    void shouldServeInteractiveBeforeBulk() throws Exception {
+        AdmissionService admission = admission(1, 10, Duration.ofSeconds(5), Duration.ofMillis(10));
+        Permit busy = admission.acquire(Priority.BULK);
+        List<Priority> order = new CopyOnWriteArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> {
+                try (Permit permit = admission.acquire(Priority.BULK)) {
+                    order.add(Priority.BULK);
+                }
+            });
+            awaitQueueDepth(admission, Priority.BULK, 1);
+            executor.submit(() -> {
+                try (Permit permit = admission.acquire(Priority.INTERACTIVE)) {
+                    order.add(Priority.INTERACTIVE);
+                }
+            });
+            awaitQueueDepth(admission, Priority.INTERACTIVE, 1);
+            assertThat(registry.get("commitgen.admission.queue.depth").tag("priority", "bulk").gauge().value())
+                    .isEqualTo(1);
+
+            busy.close();
+        }
+        assertThat(order).containsExactly(Priority.INTERACTIVE, Priority.BULK);
+        assertThat(registry.get("commitgen.admission.wait").tag("priority", "interactive").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("deve descartar quem esperou além do SLO e tirá-lo da fila")
+    void shouldShedWaiterAfterSlo() {
+        AdmissionService admission = admission(1, 10, Duration.ofMillis(200), Duration.ofMillis(10));
+
+        try (Permit busy = admission.acquire(Priority.BULK)) {
+            assertThatThrownBy(() -> admission.acquire(Priority.BULK))
+                    .isInstanceOf(ServiceOverloadedException.class);
+            assertThat(admission.getQueueDepth(Priority.BULK)).isZero();
+        }
+        assertThat(admission.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("close repetido não deve liberar a vaga duas vezes")
+    void shouldReleaseOnlyOnce() {
+        AdmissionService admission = admission(2, 10, Duration.ofSeconds(5), Duration.ofSeconds(1));
+        Permit first = admission.acquire(Priority.BULK);
+        Permit second = admission.acquire(Priority.BULK);
+
+        first.close();
+        first.close();
+
+        assertThat(admission.getInFlight()).isEqualTo(1);
+        second.close();
+    }
+
+    @Test
+    @DisplayName("requisição simples deve ser interactive; o header só pode rebaixar para bulk")
+    void shouldParsePriorityHeader() {
+        assertThat(Priority.ofRequest(null)).isEqualTo(Priority.INTERACTIVE);
+        assertThat(Priority.ofRequest("interactive")).isEqualTo(Priority.INTERACTIVE);
+        assertThat(Priority.ofRequest("urgent")).isEqualTo(Priority.INTERACTIVE);
+        assertThat(Priority.ofRequest(" Bulk ")).isEqualTo(Priority.BULK);
+    }
+
+    private static void awaitQueueDepth(AdmissionService admission, Priority priority, int depth)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (admission.getQueueDepth(priority) < depth && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(admission.getQueueDepth(priority)).isEqualTo(depth);
+    }
+}
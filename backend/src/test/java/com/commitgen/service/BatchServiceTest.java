@@ -0,0 +1,187 @@
+package com.commitgen.service;
+
+import com.commitgen.dto.BatchItemResult;
+import com.commitgen.dto.BatchResponse;
+import com.commitgen.dto.CommitRequest;
+import com.commitgen.dto.CommitResponse;
+import com.commitgen.exception.ErrorResponse;
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.ServiceOverloadedException;
+import com.commitgen.service.AdmissionService.Permit;
+import com.commitgen.service.AdmissionService.Priority;
+import com.commitgen.service.BatchService.Charge;
+import com.commitgen.service.RateLimitService.RateLimitInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BatchServiceTest {
+
+    @Mock
+    private CommitService commitService;
+
+    private BatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        AdmissionService admission = new AdmissionService(16, 64, Duration.ofSeconds(10), Duration.ofSeconds(10),
+                Duration.ofMillis(10), new SimpleMeterRegistry());
+        batchService = new BatchService(commitService, admission, 2);
+        lenient().when(commitService.cacheKey(any())).thenAnswer(invocation ->
+                invocation.<CommitRequest>getArgument(0).getDiff());
+    }
+
+    @Test
+    @DisplayName("deve devolver os resultados na ordem e gerar diffs repetidos uma vez só")
+    void shouldKeepOrderAndDeduplicate() {
+        when(commitService.generateCommitMessages(any(), anyLong())).thenAnswer(invocation ->
+                response(invocation.<CommitRequest>getArgument(0).getDiff()));
+
+        BatchResponse batch = batchService.generate(List.of(request("+ a"), request("+ b"), request("+ a")),
+                Priority.BULK, item -> Charge.FREE, result -> { });
+
+        assertThat(batch.getResults()).extracting(BatchItemResult::getIndex).containsExactly(0, 1, 2);
+        assertThat(batch.getResults()).extracting(result -> result.getResponse().getModel())
+                .containsExactly("+ a", "+ b", "+ a");
+        assertThat(batch.getResults()).extracting(BatchItemResult::getDuplicateOf)
+                .containsExactly(null, null, 0);
+        assertThat(batch.getSucceeded()).isEqualTo(3);
+        verify(commitService, times(2)).generateCommitMessages(any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("não deve passar do paralelismo configurado")
+    void shouldBoundParallelism() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(commitService.generateCommitMessages(any(), anyLong())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return response("ok");
+        });
+
+        List<CommitRequest> items = List.of(request("+ 1"), request("+ 2"), request("+ 3"),
+                request("+ 4"), request("+ 5"), request("+ 6"));
+        BatchResponse batch = batchService.generate(items, Priority.BULK, item -> Charge.FREE, result -> { });
+
+        assertThat(batch.getSucceeded()).isEqualTo(6);
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("deve cobrar o rate limit por item distinto e recusar os que passarem do limite")
+    void shouldChargePerDistinctItem() {
+        when(commitService.generateCommitMessages(any(), anyLong())).thenReturn(response("ok"));
+        AtomicInteger charges = new AtomicInteger();
+
+        BatchResponse batch = batchService.generate(
+                List.of(request("+ a"), request("+ a"), request("+ b")), Priority.BULK,
+                item -> charges.incrementAndGet() > 1
+                        ? Charge.rejected(ErrorResponse.of(429, "Rate limit")) : Charge.FREE,
+                result -> { });
+
+        assertThat(charges.get()).isEqualTo(2);
+        assertThat(batch.getResults().get(1).getResponse()).isNotNull();
+        assertThat(batch.getResults().get(2).getError().getStatus()).isEqualTo(429);
+        assertThat(batch.getFailed()).isEqualTo(1);
+        verify(commitService, times(1)).generateCommitMessages(any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("lote interrompido deve parar de cobrar itens e lançar CancellationException")
+    void shouldStopChargingWhenCancelled() {
+        lenient().when(commitService.generateCommitMessages(any(), anyLong())).thenReturn(response("ok"));
+        AtomicInteger charges = new AtomicInteger();
+
+        try {
+            assertThatThrownBy(() -> batchService.generate(
+                    List.of(request("+ a"), request("+ b"), request("+ c")), Priority.BULK,
+                    item -> {
+                        charges.incrementAndGet();
+                        // como o cancelamento do stream quando o cliente desconecta
+                        Thread.currentThread().interrupt();
+                        return Charge.FREE;
+                    }, result -> { }))
+                    .isInstanceOf(CancellationException.class);
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertThat(charges.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("item descartado pela admissão deve ter a cobrança do rate limit devolvida")
+    void shouldRefundShedItems() {
+        AdmissionService admission = mock(AdmissionService.class);
+        when(admission.acquire(Priority.BULK))
+                .thenReturn(mock(Permit.class))
+                .thenThrow(new ServiceOverloadedException("Server is overloaded; retry in 2s", 2));
+        when(commitService.generateCommitMessages(any(), anyLong())).thenReturn(response("ok"));
+        BatchService sheddingBatch = new BatchService(commitService, admission, 1);
+        RateLimitService rateLimit = new RateLimitService();
+        String ip = "10.1.1.1";
+
+        BatchResponse batch = sheddingBatch.generate(List.of(request("+ a"), request("+ b")), Priority.BULK,
+                item -> {
+                    RateLimitInfo info = rateLimit.consume(ip, item);
+                    return new Charge(null, () -> rateLimit.refund(ip, info));
+                }, result -> { });
+
+        assertThat(batch.getSucceeded()).isEqualTo(1);
+        assertThat(batch.getResults().get(1).getError().getReason()).isEqualTo("overloaded");
+        assertThat(rateLimit.getAvailableTokens(ip)).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("erro num item não deve derrubar o lote e deve manter o motivo do 503")
+    void shouldReportPerItemErrors() {
+        when(commitService.generateCommitMessages(any(), anyLong())).thenAnswer(invocation -> {
+            if ("+ bad".equals(invocation.<CommitRequest>getArgument(0).getDiff())) {
+                throw new GroqApiException("Failed to call GroqCloud API: 500");
+            }
+            return response("ok");
+        });
+        List<BatchItemResult> streamed = new CopyOnWriteArrayList<>();
+
+        BatchResponse batch = batchService.generate(
+                List.of(request("+ ok"), request("+ bad")), Priority.BULK, item -> Charge.FREE, streamed::add);
+
+        assertThat(batch.getResults().get(0).getError()).isNull();
+        assertThat(batch.getResults().get(1).getError().getStatus()).isEqualTo(503);
+        assertThat(batch.getResults().get(1).getError().getReason()).isEqualTo("upstream_error");
+        assertThat(streamed).extracting(BatchItemResult::getIndex).containsExactlyInAnyOrder(0, 1);
+    }
+
+    private static CommitRequest request(String diff) {
+        CommitRequest request = new CommitRequest();
+        request.setDiff(diff);
+        return request;
+    }
+
+    private static CommitResponse response(String model) {
+        return CommitResponse.builder().suggestions(List.of()).model(model).processingTimeMs(1L).build();
+    }
+}
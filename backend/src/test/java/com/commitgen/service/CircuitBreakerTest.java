@@ -0,0 +1,85 @@
+package com.commitgen.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final CircuitBreaker breaker =
+            new CircuitBreaker(new CircuitBreaker.Settings(0.5, 10, 4, Duration.ofSeconds(30)));
+
+    @Test
+    @DisplayName("deve abrir quando a taxa de falha na janela passa do limite")
+    void shouldOpenOnFailureRate() {
+        breaker.onSuccess();
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        breaker.onFailure(0); // 2 de 4 = 50%
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire(SECOND)).isFalse();
+        assertThat(breaker.retryAfterNanos(SECOND)).isEqualTo(29 * SECOND);
+    }
+
+    @Test
+    @DisplayName("não deve abrir antes do mínimo de chamadas")
+    void shouldWaitForMinCalls() {
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("após openDuration deve liberar uma única chamada de teste")
+    void shouldAllowSingleTrialWhenHalfOpen() {
+        openBreaker();
+
+        assertThat(breaker.tryAcquire(31 * SECOND)).isTrue();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire(31 * SECOND)).isFalse();
+    }
+
+    @Test
+    @DisplayName("chamada de teste com sucesso fecha, com falha reabre")
+    void shouldCloseOrReopenAfterTrial() {
+        openBreaker();
+        breaker.tryAcquire(31 * SECOND);
+        breaker.onFailure(31 * SECOND);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        breaker.tryAcquire(62 * SECOND);
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire(62 * SECOND)).isTrue();
+    }
+
+    @Test
+    @DisplayName("falhas antigas devem sair da janela")
+    void shouldSlideWindow() {
+        CircuitBreaker small = new CircuitBreaker(new CircuitBreaker.Settings(0.5, 4, 4, Duration.ofSeconds(30)));
+        small.onFailure(0);
+        for (int i = 0; i < 6; i++) {
+            small.onSuccess();
+        }
+        small.onFailure(0);
+
+        assertThat(small.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(0);
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
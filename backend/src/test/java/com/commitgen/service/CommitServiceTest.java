@@ -3,6 +3,11 @@ package com.commitgen.service;
 import com.commitgen.dto.CommitRequest;
 import com.commitgen.dto.CommitResponse;
 import com.commitgen.dto.CommitResponse.Suggestion;
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.PromptTooLargeException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import com.commitgen.service.GroqApiService.Completion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -10,10 +15,26 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,6 +43,21 @@ class CommitServiceTest {
     @Mock
     private GroqApiService groqApiService;
 
+    @Spy
+    private DiffCompactor diffCompactor =
+            new DiffCompactor(1, 150, 12000, DiffCompactor.DEFAULT_GENERATED_PATTERNS.split(","));
+
+    @Spy
+    private TokenEstimator tokenEstimator = new TokenEstimator();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private GenerationMetrics metrics = new GenerationMetrics(registry);
+
+    @Spy
+    private PromptTemplateRegistry prompts = PromptTemplateRegistry.classpath();
+
     @InjectMocks
     private CommitService commitService;
 
@@ -34,6 +70,8 @@ class CommitServiceTest {
         request.setLanguage("en");
         request.setStyle("conventional");
         request.setQuantity(3);
+        ReflectionTestUtils.setField(commitService, "contextWindowTokens", 131072);
+        ReflectionTestUtils.setField(commitService, "maxPromptTokens", 8000);
     }
 
     @Nested
@@ -48,8 +86,8 @@ class CommitServiceTest {
                     2. refactor(core): remove old code
                     3. chore: update dependencies
                     """;
-            when(groqApiService.chat(anyString(), anyString())).thenReturn(aiResponse);
-            when(groqApiService.getModel()).thenReturn("llama-3.3-70b-versatile");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(new Completion(aiResponse, "llama-3.3-70b-versatile"));
 
             CommitResponse response = commitService.generateCommitMessages(request);
 
@@ -66,8 +104,8 @@ class CommitServiceTest {
         @Test
         @DisplayName("deve lidar com resposta vazia da IA")
         void shouldHandleEmptyAiResponse() {
-            when(groqApiService.chat(anyString(), anyString())).thenReturn("");
-            when(groqApiService.getModel()).thenReturn("llama-3.3-70b-versatile");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(""));
 
             CommitResponse response = commitService.generateCommitMessages(request);
 
@@ -77,8 +115,8 @@ class CommitServiceTest {
         @Test
         @DisplayName("deve lidar com resposta null da IA")
         void shouldHandleNullAiResponse() {
-            when(groqApiService.chat(anyString(), anyString())).thenReturn(null);
-            when(groqApiService.getModel()).thenReturn("llama-3.3-70b-versatile");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(null));
 
             CommitResponse response = commitService.generateCommitMessages(request);
 
@@ -86,14 +124,16 @@ class CommitServiceTest {
         }
 
         @Test
-        @DisplayName("deve usar o model dinâmico do GroqApiService")
-        void shouldUseDynamicModel() {
-            when(groqApiService.chat(anyString(), anyString())).thenReturn("1. feat: test");
-            when(groqApiService.getModel()).thenReturn("mixtral-8x7b-32768");
+        @DisplayName("deve usar o model do endpoint que respondeu, também no cache")
+        void shouldUseModelOfServingEndpoint() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(new Completion("1. feat: test", "mixtral-8x7b-32768"));
 
             CommitResponse response = commitService.generateCommitMessages(request);
+            CommitResponse cached = commitService.generateCommitMessages(request);
 
             assertThat(response.getModel()).isEqualTo("mixtral-8x7b-32768");
+            assertThat(cached.getModel()).isEqualTo("mixtral-8x7b-32768");
         }
     }
 
@@ -105,8 +145,8 @@ class CommitServiceTest {
         @DisplayName("conventional: deve extrair type, scope e description")
         void shouldParseConventionalFormat() {
             String aiResponse = "1. fix(auth): resolve login timeout";
-            when(groqApiService.chat(anyString(), anyString())).thenReturn(aiResponse);
-            when(groqApiService.getModel()).thenReturn("test-model");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(aiResponse));
 
             request.setStyle("conventional");
             CommitResponse response = commitService.generateCommitMessages(request);
@@ -121,8 +161,8 @@ class CommitServiceTest {
         @DisplayName("conventional sem scope: scope deve ser null")
         void shouldParseConventionalWithoutScope() {
             String aiResponse = "1. docs: update README";
-            when(groqApiService.chat(anyString(), anyString())).thenReturn(aiResponse);
-            when(groqApiService.getModel()).thenReturn("test-model");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(aiResponse));
 
             request.setStyle("conventional");
             CommitResponse response = commitService.generateCommitMessages(request);
@@ -137,8 +177,8 @@ class CommitServiceTest {
         @DisplayName("simple: deve retornar message sem type/scope")
         void shouldParseSimpleFormat() {
             String aiResponse = "1. Update the login page styling";
-            when(groqApiService.chat(anyString(), anyString())).thenReturn(aiResponse);
-            when(groqApiService.getModel()).thenReturn("test-model");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(aiResponse));
 
             request.setStyle("simple");
             CommitResponse response = commitService.generateCommitMessages(request);
@@ -153,8 +193,8 @@ class CommitServiceTest {
         @DisplayName("emoji: deve retornar mensagem inteira como description")
         void shouldParseEmojiFormat() {
             String aiResponse = "1. ✨ Add dark mode support";
-            when(groqApiService.chat(anyString(), anyString())).thenReturn(aiResponse);
-            when(groqApiService.getModel()).thenReturn("test-model");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(aiResponse));
 
             request.setStyle("emoji");
             CommitResponse response = commitService.generateCommitMessages(request);
@@ -167,8 +207,8 @@ class CommitServiceTest {
         @DisplayName("fallback: deve parsear linhas não numeradas quando formato não bate")
         void shouldFallbackToNonNumberedLines() {
             String aiResponse = "feat: add new endpoint\nfix: resolve bug";
-            when(groqApiService.chat(anyString(), anyString())).thenReturn(aiResponse);
-            when(groqApiService.getModel()).thenReturn("test-model");
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(aiResponse));
 
             request.setStyle("conventional");
             CommitResponse response = commitService.generateCommitMessages(request);
@@ -176,4 +216,486 @@ class CommitServiceTest {
             assertThat(response.getSuggestions()).hasSizeGreaterThanOrEqualTo(2);
         }
     }
+
+    @Nested
+    @DisplayName("métricas")
+    class Metrics {
+
+        @Test
+        @DisplayName("deve medir cada etapa, o total e os tamanhos por estilo e idioma")
+        void shouldRecordStagesAndSizes() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: add feature"));
+            request.setLanguage("PT-BR");
+
+            commitService.generateCommitMessages(request);
+            commitService.generateCommitMessages(request);
+
+            for (String stage : List.of("prompt", "upstream", "parse")) {
+                assertThat(registry.get("commitgen.generation.stage").tag("stage", stage).tag("mode", "sync")
+                        .timer().count()).as(stage).isEqualTo(1);
+            }
+            assertThat(registry.get("commitgen.generation").tag("cached", "false").timer().count()).isEqualTo(1);
+            assertThat(registry.get("commitgen.generation").tag("cached", "true").timer().count()).isEqualTo(1);
+            assertThat(registry.get("commitgen.prompt.tokens").tag("style", "conventional")
+                    .tag("language", "pt-br").summary().totalAmount()).isPositive();
+            assertThat(registry.get("commitgen.parse").tag("format", "text").tag("outcome", "ok")
+                    .counter().count()).isEqualTo(1);
+            assertThat(registry.find("commitgen.parse.fallback").counter()).isNull();
+        }
+
+        @Test
+        @DisplayName("deve contar o fallback do parse e marcar a falha do upstream")
+        void shouldCountFallbackAndFailures() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("feat: add new endpoint"))
+                    .thenThrow(new GroqApiException("boom"));
+            request.setStyle("Weird");
+
+            commitService.generateCommitMessages(request);
+            request.setDiff("+ other change");
+            assertThatThrownBy(() -> commitService.generateCommitMessages(request))
+                    .isInstanceOf(GroqApiException.class);
+
+            assertThat(registry.get("commitgen.parse.fallback").tag("style", "conventional").counter().count())
+                    .isEqualTo(1);
+            assertThat(registry.get("commitgen.generation").tag("outcome", "error").timer().count()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("JSON mode")
+    class JsonMode {
+
+        @BeforeEach
+        void enableJsonMode() {
+            ReflectionTestUtils.setField(commitService, "outputFormat", "json");
+        }
+
+        @Test
+        @DisplayName("deve pedir json_object e decodificar as sugestões sem o parser de texto")
+        void shouldRequestAndDecodeJson() {
+            when(groqApiService.chat(anyString(), contains("Respond with a JSON object"),
+                    anyInt(), eq(true), anyLong()))
+                    .thenReturn(completion("""
+                            {"suggestions": [{"type": "feat", "scope": "core", "description": "add new feature"}]}
+                            """));
+
+            CommitResponse response = commitService.generateCommitMessages(request);
+
+            assertThat(response.getSuggestions()).singleElement().satisfies(suggestion -> {
+                assertThat(suggestion.getMessage()).isEqualTo("feat(core): add new feature");
+                assertThat(suggestion.getScope()).isEqualTo("core");
+            });
+            assertThat(registry.get("commitgen.parse").tag("format", "json").tag("outcome", "ok")
+                    .counter().count()).isEqualTo(1);
+            assertThat(registry.find("commitgen.parse.fallback").counter()).isNull();
+        }
+
+        @Test
+        @DisplayName("resposta fora do formato deve cair no parser de texto e contar o fallback")
+        void shouldFallBackToTextParserOnSchemaFailure() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(true), anyLong()))
+                    .thenReturn(completion("1. feat: add new feature\n2. fix: handle null input"));
+
+            CommitResponse response = commitService.generateCommitMessages(request);
+
+            assertThat(response.getSuggestions()).extracting(Suggestion::getType).containsExactly("feat", "fix");
+            assertThat(registry.get("commitgen.parse").tag("format", "json").tag("outcome", "fallback")
+                    .counter().count()).isEqualTo(1);
+            assertThat(registry.find("commitgen.parse").tag("format", "text").counter()).isNull();
+        }
+
+        @Test
+        @DisplayName("max_tokens deve reservar a estrutura do JSON")
+        void shouldReserveTokensForJsonStructure() {
+            int json = commitService.maxTokensFor(request);
+            ReflectionTestUtils.setField(commitService, "outputFormat", "text");
+
+            assertThat(json).isGreaterThan(commitService.maxTokensFor(request));
+        }
+    }
+
+    @Nested
+    @DisplayName("cache de respostas")
+    class ResponseCache {
+
+        private static final String DIFF_V1 = """
+                diff --git a/src/App.java b/src/App.java
+                index 3f2a1b4..9c8d7e6 100644
+                --- a/src/App.java
+                +++ b/src/App.java
+                @@ -10,6 +10,7 @@ public class App {
+                +    private boolean enabled = true;
+                """;
+
+        private static final String DIFF_V1_REBASED = """
+                diff --git a/src/App.java b/src/App.java
+                index 0aa11bb..77cc88d 100644
+                --- a/src/App.java
+                +++ b/src/App.java
+                @@ -42,6 +42,7 @@ public class App {
+                +    private boolean enabled = true;
+                """;
+
+        @Test
+        @DisplayName("segunda chamada com o mesmo diff deve vir do cache sem chamar a IA")
+        void shouldServeRepeatedDiffFromCache() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: add feature"));
+
+            CommitResponse first = commitService.generateCommitMessages(request);
+            CommitResponse second = commitService.generateCommitMessages(request);
+
+            assertThat(first.isCached()).isFalse();
+            assertThat(second.isCached()).isTrue();
+            assertThat(second.getModel()).isEqualTo("test-model");
+            assertThat(second.getSuggestions()).isEqualTo(first.getSuggestions());
+            verify(groqApiService, times(1)).chat(anyString(), anyString(), anyInt(), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("alterar uma sugestão devolvida não deve alterar o cache")
+        void shouldIsolateCachedSuggestionsFromCallers() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: add feature"));
+
+            commitService.generateCommitMessages(request).getSuggestions().get(0).setMessage("changed");
+            commitService.generateCommitMessages(request).getSuggestions().get(0).setDescription("changed");
+            CommitResponse third = commitService.generateCommitMessages(request);
+
+            assertThat(third.isCached()).isTrue();
+            assertThat(third.getSuggestions().get(0).getMessage()).isEqualTo("feat: add feature");
+            assertThat(third.getSuggestions().get(0).getDescription()).isEqualTo("add feature");
+        }
+
+        @Test
+        @DisplayName("linhas index e offsets de @@ não devem afetar a chave")
+        void shouldIgnoreVolatileDiffParts() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: enable app"));
+
+            request.setDiff(DIFF_V1);
+            commitService.generateCommitMessages(request);
+            request.setDiff(DIFF_V1_REBASED);
+            CommitResponse response = commitService.generateCommitMessages(request);
+
+            assertThat(response.isCached()).isTrue();
+            verify(groqApiService, times(1)).chat(anyString(), anyString(), anyInt(), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("style, language e quantity diferentes devem gerar chaves diferentes")
+        void shouldMissOnDifferentParameters() {
+            String base = commitService.cacheKey(request);
+
+            request.setStyle("emoji");
+            String otherStyle = commitService.cacheKey(request);
+            request.setStyle("conventional");
+            request.setLanguage("pt-br");
+            String otherLanguage = commitService.cacheKey(request);
+            request.setLanguage("en");
+            request.setQuantity(5);
+            String otherQuantity = commitService.cacheKey(request);
+
+            assertThat(base).isNotEqualTo(otherStyle)
+                    .isNotEqualTo(otherLanguage)
+                    .isNotEqualTo(otherQuantity);
+            verify(groqApiService, never()).chat(anyString(), anyString(), anyInt(), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("respostas sem sugestões não devem ser cacheadas")
+        void shouldNotCacheEmptyResponses() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion(""));
+
+            commitService.generateCommitMessages(request);
+            CommitResponse second = commitService.generateCommitMessages(request);
+
+            assertThat(second.isCached()).isFalse();
+            verify(groqApiService, times(2)).chat(anyString(), anyString(), anyInt(), eq(false), anyLong());
+        }
+    }
+
+    @Nested
+    @DisplayName("streamCommitMessages")
+    class StreamCommitMessages {
+
+        private void streamDeltas(String... deltas) {
+            when(groqApiService.chatStream(anyString(), anyString(), anyInt(), anyLong(), any()))
+                    .thenAnswer(invocation -> {
+                Consumer<String> onDelta = invocation.getArgument(4);
+                for (String delta : deltas) {
+                    onDelta.accept(delta);
+                }
+                return completion(String.join("", deltas));
+            });
+        }
+
+        @Test
+        @DisplayName("deve emitir cada sugestão assim que a linha completa chega")
+        void shouldEmitSuggestionsPerCompletedLine() {
+            List<String> emittedAtDelta = new ArrayList<>();
+            List<Suggestion> emitted = new ArrayList<>();
+            when(groqApiService.chatStream(anyString(), anyString(), anyInt(), anyLong(), any()))
+                    .thenAnswer(invocation -> {
+                Consumer<String> onDelta = invocation.getArgument(4);
+                onDelta.accept("1. feat(api): add ");
+                emittedAtDelta.add("after-1:" + emitted.size());
+                onDelta.accept("endpoint\n2. fix: han");
+                emittedAtDelta.add("after-2:" + emitted.size());
+                onDelta.accept("dle null");
+                return completion("1. feat(api): add endpoint\n2. fix: handle null");
+            });
+
+            CommitResponse response = commitService.streamCommitMessages(request, emitted::add);
+
+            assertThat(emittedAtDelta).containsExactly("after-1:0", "after-2:1");
+            assertThat(emitted).extracting(Suggestion::getMessage)
+                    .containsExactly("feat(api): add endpoint", "fix: handle null");
+            assertThat(emitted.get(0).getScope()).isEqualTo("api");
+            assertThat(response.getSuggestions()).isEqualTo(emitted);
+            assertThat(response.isCached()).isFalse();
+        }
+
+        @Test
+        @DisplayName("fallback: deve emitir linhas não numeradas ao final do stream")
+        void shouldFallbackToNonNumberedLines() {
+            streamDeltas("feat: add new endpoint\n", "fix: resolve bug");
+
+            List<Suggestion> emitted = new ArrayList<>();
+            commitService.streamCommitMessages(request, emitted::add);
+
+            assertThat(emitted).hasSize(2);
+        }
+
+        @Test
+        @DisplayName("deve reaproveitar o cache do modo não-streaming")
+        void shouldServeFromCache() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: add feature"));
+            commitService.generateCommitMessages(request);
+
+            List<Suggestion> emitted = new ArrayList<>();
+            CommitResponse response = commitService.streamCommitMessages(request, emitted::add);
+
+            assertThat(response.isCached()).isTrue();
+            assertThat(emitted).extracting(Suggestion::getMessage).containsExactly("feat: add feature");
+            verify(groqApiService, never()).chatStream(anyString(), anyString(), anyInt(), anyLong(), any());
+        }
+    }
+
+    @Nested
+    @DisplayName("map-reduce para diffs grandes")
+    class MapReduce {
+
+        private static final String MAP_PROMPT_MARKER = "one part of a larger git diff";
+
+        @BeforeEach
+        void enableMapReduce() {
+            ReflectionTestUtils.setField(commitService, "mapReduceEnabled", true);
+            ReflectionTestUtils.setField(commitService, "mapReduceThresholdChars", 200);
+            ReflectionTestUtils.setField(commitService, "mapReduceChunkChars", 300);
+            ReflectionTestUtils.setField(commitService, "mapReduceMaxChunks", 12);
+            ReflectionTestUtils.setField(commitService, "mapReduceConcurrency", 2);
+
+            StringBuilder diff = new StringBuilder();
+            for (String file : List.of("api/UserController.java", "api/UserService.java", "db/UserRepository.java")) {
+                diff.append("diff --git a/").append(file).append(" b/").append(file).append('\n')
+                        .append("@@ -1,0 +1,4 @@\n");
+                for (int i = 0; i < 4; i++) {
+                    diff.append("+    void handleUserRegistrationStep").append(i).append("() {}\n");
+                }
+            }
+            request.setDiff(diff.toString());
+        }
+
+        @Test
+        @DisplayName("deve resumir cada pedaço e gerar as sugestões a partir dos resumos")
+        void shouldMapChunksAndReduceSummaries() {
+            when(groqApiService.chat(contains(MAP_PROMPT_MARKER), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("- adds user registration"));
+            when(groqApiService.chat(startsWith("You are a senior software engineer analyzing"), anyString(),
+                    anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat(user): add registration flow"));
+
+            CommitResponse response = commitService.generateCommitMessages(request);
+
+            assertThat(response.getSuggestions()).extracting(Suggestion::getMessage)
+                    .containsExactly("feat(user): add registration flow");
+            verify(groqApiService, times(3)).chat(contains(MAP_PROMPT_MARKER), anyString(),
+                    anyInt(), eq(false), anyLong());
+            verify(groqApiService).chat(startsWith("You are a senior software engineer analyzing"),
+                    contains("<BEGIN_SUMMARIES>"), anyInt(), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("pedaço com falha não deve impedir a geração")
+        void shouldTolerateFailedChunk() {
+            when(groqApiService.chat(contains(MAP_PROMPT_MARKER), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenThrow(new GroqApiException("timeout"))
+                    .thenReturn(completion("- adds user registration"));
+            when(groqApiService.chat(startsWith("You are a senior software engineer analyzing"), anyString(),
+                    anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat(user): add registration flow"));
+
+            CommitResponse response = commitService.generateCommitMessages(request);
+            CommitResponse retry = commitService.generateCommitMessages(request);
+
+            assertThat(response.getSuggestions()).hasSize(1);
+            verify(groqApiService).chat(startsWith("You are a senior software engineer analyzing"),
+                    contains("(summary unavailable)"), anyInt(), eq(false), anyLong());
+            assertThat(retry.isCached()).as("resposta de um diff parcial não vai para o cache").isFalse();
+        }
+
+        @Test
+        @DisplayName("recusa local em um pedaço deve cancelar a geração")
+        void shouldRethrowLocalRejection() {
+            when(groqApiService.chat(contains(MAP_PROMPT_MARKER), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("- adds user registration"))
+                    .thenThrow(new UpstreamUnavailableException(
+                            UpstreamUnavailableException.Reason.CONCURRENCY_LIMITED, "limited", 1))
+                    .thenReturn(completion("- adds user registration"));
+
+            assertThatThrownBy(() -> commitService.generateCommitMessages(request))
+                    .isInstanceOf(UpstreamUnavailableException.class)
+                    .hasMessage("limited");
+            verify(groqApiService, never()).chat(startsWith("You are a senior software engineer analyzing"),
+                    anyString(), anyInt(), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("diff que cabe no limite depois de compactado deve ir direto para o prompt")
+        void shouldDecideOnCompactedSize() {
+            StringBuilder diff = new StringBuilder(
+                    "diff --git a/package-lock.json b/package-lock.json\n@@ -1,0 +1,40 @@\n");
+            for (int i = 0; i < 40; i++) {
+                diff.append("+    \"node_modules/dependency-").append(i).append("\": { \"version\": \"1.0.0\" },\n");
+            }
+            diff.append("diff --git a/api/App.java b/api/App.java\n@@ -1,0 +1,1 @@\n+    void start() {}\n");
+            request.setDiff(diff.toString());
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. chore: update dependencies"));
+
+            commitService.generateCommitMessages(request);
+
+            verify(groqApiService, never()).chat(contains(MAP_PROMPT_MARKER), anyString(),
+                    anyInt(), eq(false), anyLong());
+            verify(groqApiService, times(1)).chat(anyString(), contains("<BEGIN_DIFF>"),
+                    anyInt(), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("deve falhar quando todos os pedaços falham")
+        void shouldFailWhenAllChunksFail() {
+            when(groqApiService.chat(contains(MAP_PROMPT_MARKER), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenThrow(new GroqApiException("upstream down"));
+
+            assertThatThrownBy(() -> commitService.generateCommitMessages(request))
+                    .isInstanceOf(GroqApiException.class)
+                    .hasMessage("upstream down");
+        }
+
+        @Test
+        @DisplayName("diffs abaixo do limite devem ir direto para o prompt")
+        void shouldSkipMapReduceForSmallDiffs() {
+            ReflectionTestUtils.setField(commitService, "mapReduceThresholdChars", 100_000);
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: add feature"));
+
+            commitService.generateCommitMessages(request);
+
+            verify(groqApiService, times(1)).chat(anyString(), contains("<BEGIN_DIFF>"),
+                    anyInt(), eq(false), anyLong());
+        }
+    }
+
+    @Nested
+    @DisplayName("orçamento de tokens")
+    class TokenBudget {
+
+        @Test
+        @DisplayName("max_tokens deve acompanhar quantity e o limite de caracteres do estilo")
+        void shouldSizeMaxTokensFromQuantityAndStyle() {
+            request.setStyle("simple");
+            request.setQuantity(1);
+            int simpleSingle = commitService.maxTokensFor(request);
+
+            request.setStyle("conventional");
+            request.setQuantity(5);
+            int conventionalFive = commitService.maxTokensFor(request);
+
+            assertThat(simpleSingle).isLessThan(conventionalFive);
+            assertThat(conventionalFive).isLessThan(GroqApiService.DEFAULT_MAX_TOKENS);
+        }
+
+        @Test
+        @DisplayName("custo estimado no upstream deve crescer com o diff, a quantity e o estilo")
+        void shouldEstimateUpstreamTokensFromDiffQuantityAndStyle() {
+            request.setStyle("simple");
+            request.setQuantity(1);
+            int small = commitService.estimateUpstreamTokens(request);
+
+            request.setStyle("conventional");
+            int conventional = commitService.estimateUpstreamTokens(request);
+
+            request.setQuantity(5);
+            request.setDiff("+ int value = compute(input, options);\n".repeat(250));
+            int large = commitService.estimateUpstreamTokens(request);
+
+            assertThat(conventional).isGreaterThan(small);
+            assertThat(large).isGreaterThan(small * 3);
+            assertThat(large).isEqualTo(commitService.estimateUpstreamTokens(request));
+        }
+
+        @Test
+        @DisplayName("deve enviar o max_tokens calculado para a API")
+        void shouldPassComputedMaxTokens() {
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: add feature"));
+
+            int expected = commitService.maxTokensFor(request);
+
+            commitService.generateCommitMessages(request);
+
+            verify(groqApiService).chat(anyString(), anyString(), eq(expected), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("deve recompactar o diff quando o prompt estoura o orçamento")
+        void shouldRecompactOversizedPrompt() {
+            ReflectionTestUtils.setField(commitService, "mapReduceEnabled", false);
+            ReflectionTestUtils.setField(commitService, "maxPromptTokens", 2500);
+            StringBuilder diff = new StringBuilder();
+            for (int f = 0; f < 8; f++) {
+                diff.append("diff --git a/F").append(f).append(".java b/F").append(f).append(".java\n")
+                        .append("@@ -1,0 +1,25 @@\n");
+                for (int i = 0; i < 25; i++) {
+                    diff.append("+    private final String field").append(i).append(" = \"v\";\n");
+                }
+            }
+            request.setDiff(diff.toString());
+            when(groqApiService.chat(anyString(), anyString(), anyInt(), eq(false), anyLong()))
+                    .thenReturn(completion("1. feat: add fields"));
+
+            commitService.generateCommitMessages(request);
+
+            verify(groqApiService).chat(anyString(), contains("changed lines omitted"), anyInt(), eq(false), anyLong());
+        }
+
+        @Test
+        @DisplayName("deve recusar sem chamar a API quando nem o prompt mínimo cabe")
+        void shouldRejectPromptThatCannotFit() {
+            ReflectionTestUtils.setField(commitService, "maxPromptTokens", 100);
+
+            assertThatThrownBy(() -> commitService.generateCommitMessages(request))
+                    .isInstanceOf(PromptTooLargeException.class);
+            verify(groqApiService, never()).chat(anyString(), anyString(), anyInt(), eq(false), anyLong());
+        }
+    }
+
+    private static Completion completion(String content) {
+        return new Completion(content, "test-model");
+    }
 }
@@ -0,0 +1,250 @@
+package com.commitgen.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiffCompactorTest {
+
+    private final DiffCompactor compactor =
+            new DiffCompactor(1, 150, 12000, DiffCompactor.DEFAULT_GENERATED_PATTERNS.split(","));
+
+    @Test
+    @DisplayName("deve remover linhas index, offsets de @@ e contexto distante")
+    void shouldDropIndexOffsetsAndFarContext() {
+        String diff = """
+                diff --git a/src/Auth.java b/src/Auth.java
+                index 3f2a1b4..9c8d7e6 100644
+                --- a/src/Auth.java
+                +++ b/src/Auth.java
+                @@ -10,9 +10,10 @@ public class Auth {
+                     line1
+                     line2
+                     line3
+                     line4
+                +    validateToken(token);
+                     line5
+                     line6
+                     line7
+                """;
+
+        String compacted = compactor.compact(diff);
+
+        assertThat(compacted).isEqualTo("""
+                diff --git a/src/Auth.java b/src/Auth.java
+                @@ public class Auth {
+                     line4
+                +    validateToken(token);
+                     line5""");
+    }
+
+    @Test
+    @DisplayName("deve resumir lockfiles e arquivos gerados")
+    void shouldSummarizeGeneratedFiles() {
+        String diff = """
+                diff --git a/package-lock.json b/package-lock.json
+                index 1111111..2222222 100644
+                --- a/package-lock.json
+                +++ b/package-lock.json
+                @@ -1,3 +1,4 @@
+                -    "version": "1.0.0",
+                +    "version": "1.1.0",
+                +    "resolved": "https://registry.npmjs.org/x",
+                """;
+
+        assertThat(compactor.compact(diff)).isEqualTo("""
+                diff --git a/package-lock.json b/package-lock.json
+                [generated file omitted: +2 -1 lines]""");
+    }
+
+    @Test
+    @DisplayName("deve substituir binários por um marcador")
+    void shouldMarkBinaryFiles() {
+        String diff = """
+                diff --git a/logo.png b/logo.png
+                new file mode 100644
+                index 0000000..1234567
+                Binary files /dev/null and b/logo.png differ
+                """;
+
+        assertThat(compactor.compact(diff)).isEqualTo("""
+                diff --git a/logo.png b/logo.png
+                new file mode 100644
+                [binary file changed]""");
+    }
+
+    @Test
+    @DisplayName("deve descartar hunks que só mudam whitespace")
+    void shouldDropWhitespaceOnlyHunks() {
+        String diff = """
+                diff --git a/app.js b/app.js
+                --- a/app.js
+                +++ b/app.js
+                @@ -1,2 +1,2 @@
+                -function a() {  return 1; }
+                +function a() {
+                +    return 1;
+                +}
+                @@ -20,1 +22,1 @@
+                -const limit = 10;
+                +const limit = 20;
+                """;
+
+        String compacted = compactor.compact(diff);
+
+        assertThat(compacted).doesNotContain("function a()")
+                .contains("+const limit = 20;")
+                .contains("[1 whitespace-only hunk(s) omitted]");
+    }
+
+    @Test
+    @DisplayName("deve manter hunks que juntam tokens ou mudam a indentação em arquivos sensíveis a ela")
+    void shouldKeepMeaningfulWhitespaceChanges() {
+        String diff = """
+                diff --git a/Calc.java b/Calc.java
+                --- a/Calc.java
+                +++ b/Calc.java
+                @@ -1,1 +1,1 @@
+                -    int x = 1;
+                +    intx = 1;
+                diff --git a/app.py b/app.py
+                --- a/app.py
+                +++ b/app.py
+                @@ -3,2 +3,2 @@
+                 if enabled:
+                     start()
+                -stop()
+                +    stop()
+                @@ -9,1 +9,1 @@
+                -retry = 3\s\s
+                +retry = 3
+                """;
+
+        String compacted = compactor.compact(diff);
+
+        assertThat(compacted).contains("+    intx = 1;")
+                .contains("+    stop()")
+                .doesNotContain("retry = 3")
+                .contains("[1 whitespace-only hunk(s) omitted]");
+    }
+
+    @Test
+    @DisplayName("deve manter hunks que só reordenam linhas em volta do contexto")
+    void shouldKeepReorderedLines() {
+        String diff = """
+                diff --git a/Main.java b/Main.java
+                --- a/Main.java
+                +++ b/Main.java
+                @@ -1,3 +1,3 @@
+                -import java.util.Map;
+                 import java.util.List;
+                +import java.util.Map;
+                 import java.util.Set;
+                """;
+
+        String compacted = compactor.compact(diff);
+
+        assertThat(compacted).contains("-import java.util.Map;", "+import java.util.Map;")
+                .doesNotContain("whitespace-only");
+    }
+
+    @Test
+    @DisplayName("deve cortar arquivos enormes em max-file-lines")
+    void shouldTruncateHugeFiles() {
+        DiffCompactor small = new DiffCompactor(0, 3, 12000, new String[0]);
+        StringBuilder diff = new StringBuilder("""
+                diff --git a/Big.java b/Big.java
+                @@ -1,0 +1,10 @@
+                """);
+        for (int i = 0; i < 10; i++) {
+            diff.append("+line").append(i).append('\n');
+        }
+
+        String compacted = small.compact(diff.toString());
+
+        assertThat(compacted).contains("+line2").doesNotContain("+line3")
+                .endsWith("[... +7 -0 more lines in this file]");
+    }
+
+    @Test
+    @DisplayName("deve resumir os maiores arquivos até caber no orçamento de caracteres")
+    void shouldSummarizeLargestFilesToFitBudget() {
+        StringBuilder diff = new StringBuilder("""
+                diff --git a/Small.java b/Small.java
+                @@ -1 +1 @@
+                -int a = 1;
+                +int a = 2;
+                diff --git a/Large.java b/Large.java
+                @@ -1,0 +1,200 @@
+                """);
+        for (int i = 0; i < 200; i++) {
+            diff.append("+    String field").append(i).append(" = \"value\";\n");
+        }
+
+        String compacted = compactor.compact(diff.toString(), 500);
+
+        assertThat(compacted.length()).isLessThanOrEqualTo(500);
+        assertThat(compacted).contains("+int a = 2;")
+                .contains("diff --git a/Large.java b/Large.java\n[200 changed lines omitted: +200 -0]");
+    }
+
+    @Test
+    @DisplayName("texto livre (não diff) deve passar intacto")
+    void shouldKeepFreeText() {
+        String text = "+ added new feature\n- removed old code\nadded login validation";
+
+        assertThat(compactor.compact(text)).isEqualTo(text);
+    }
+
+    @Test
+    @DisplayName("split: deve agrupar arquivos vizinhos em pedaços de até chunkChars")
+    void shouldSplitIntoFileChunks() {
+        StringBuilder diff = new StringBuilder();
+        for (int f = 0; f < 6; f++) {
+            diff.append("diff --git a/src/F").append(f).append(".java b/src/F").append(f).append(".java\n")
+                    .append("@@ -1,0 +1,2 @@\n")
+                    .append("+    int value").append(f).append(" = 1;\n")
+                    .append("+    int other").append(f).append(" = 2;\n");
+        }
+
+        List<String> chunks = compactor.split(diff.toString(), 200, 10);
+
+        assertThat(chunks).hasSizeGreaterThan(1)
+                .allSatisfy(chunk -> assertThat(chunk.length()).isLessThanOrEqualTo(200));
+        assertThat(String.join("\n", chunks)).contains("+    int value0 = 1;").contains("+    int other5 = 2;");
+    }
+
+    @Test
+    @DisplayName("split: deve respeitar maxChunks resumindo os maiores arquivos")
+    void shouldRespectMaxChunks() {
+        StringBuilder diff = new StringBuilder();
+        for (int f = 0; f < 20; f++) {
+            diff.append("diff --git a/F").append(f).append(".java b/F").append(f).append(".java\n")
+                    .append("@@ -1,0 +1,5 @@\n");
+            for (int i = 0; i < 5; i++) {
+                diff.append("+    String field").append(i).append(" = \"some reasonably long value\";\n");
+            }
+        }
+
+        List<String> chunks = compactor.split(diff.toString(), 400, 4);
+
+        assertThat(chunks).hasSizeLessThanOrEqualTo(4);
+        assertThat(String.join("\n", chunks)).contains("changed lines omitted");
+    }
+
+    @Test
+    @DisplayName("split: diff de um único arquivo deve virar um único pedaço")
+    void shouldNotSplitSingleFile() {
+        String diff = """
+                diff --git a/A.java b/A.java
+                @@ -1 +1 @@
+                -int a = 1;
+                +int a = 2;
+                """;
+
+        assertThat(compactor.split(diff, 200, 10)).hasSize(1);
+    }
+}
@@ -0,0 +1,245 @@
+package com.commitgen.service;
+
+import com.commitgen.service.RateLimitService.RateLimitInfo;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GcraRateLimitBackendTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(START);
+
+    private GcraRateLimitBackend backend(int capacity) {
+        return new GcraRateLimitBackend(capacity, 10, Duration.ofHours(1), clock::get);
+    }
+
+    @Test
+    @DisplayName("deve permitir 10 requisições e recusar a 11ª com Retry-After de um intervalo")
+    void shouldAllowBurstThenReject() {
+        GcraRateLimitBackend backend = backend(1024);
+
+        for (int i = 9; i >= 0; i--) {
+            RateLimitInfo info = backend.consume("10.0.0.1");
+            assertThat(info.isAllowed()).isTrue();
+            assertThat(info.getRemaining()).isEqualTo(i);
+        }
+        RateLimitInfo rejected = backend.consume("10.0.0.1");
+
+        assertThat(rejected.isAllowed()).isFalse();
+        assertThat(rejected.getRemaining()).isZero();
+        assertThat(rejected.getRetryAfterSeconds()).isEqualTo(360);
+        assertThat(rejected.getResetAtEpochSeconds()).isEqualTo(START / 1000 + 3600);
+        assertThat(backend.consume("10.0.0.2").isAllowed()).isTrue();
+    }
+
+    @Test
+    @DisplayName("deve repor uma requisição a cada período/limite")
+    void shouldRefillContinuously() {
+        GcraRateLimitBackend backend = backend(1024);
+        for (int i = 0; i < 10; i++) backend.consume("10.0.0.1");
+
+        clock.addAndGet(Duration.ofMinutes(6).toMillis());
+
+        assertThat(backend.consume("10.0.0.1").isAllowed()).isTrue();
+        assertThat(backend.consume("10.0.0.1").isAllowed()).isFalse();
+        clock.addAndGet(Duration.ofHours(1).toMillis());
+        assertThat(backend.available("10.0.0.1")).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("custo maior que 1 deve avançar o TAT proporcionalmente e o refund devolver")
+    void shouldConsumeAndRefundCost() {
+        GcraRateLimitBackend backend = backend(1024);
+
+        assertThat(backend.consume("10.0.0.1", 4).getRemaining()).isEqualTo(6);
+        assertThat(backend.consume("10.0.0.1", 7).isAllowed()).isFalse();
+        assertThat(backend.available("10.0.0.1")).isEqualTo(6);
+
+        backend.refund("10.0.0.1", 3);
+        assertThat(backend.available("10.0.0.1")).isEqualTo(9);
+        backend.refund("10.0.0.1", 5);
+        assertThat(backend.available("10.0.0.1")).isEqualTo(10);
+        backend.refund("10.9.9.9", 5);
+        assertThat(backend.peek("10.9.9.9").getRemaining()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("newLimit deve criar um limite independente com outra capacidade")
+    void shouldCreateIndependentLimit() {
+        GcraRateLimitBackend backend = backend(1024);
+        RateLimitBackend tokens = backend.newLimit("tokens", 36_000, Duration.ofHours(1));
+
+        backend.consume("10.0.0.1");
+        tokens.consume("10.0.0.1", 1000);
+
+        assertThat(backend.available("10.0.0.1")).isEqualTo(9);
+        assertThat(tokens.peek("10.0.0.1").getLimit()).isEqualTo(36_000);
+        assertThat(tokens.available("10.0.0.1")).isEqualTo(35_000);
+    }
+
+    @Test
+    @DisplayName("peek não deve consumir nem inserir o cliente")
+    void shouldPeekWithoutSideEffects() {
+        GcraRateLimitBackend backend = backend(1024);
+        backend.consume("10.0.0.1");
+        backend.consume("10.0.0.1");
+
+        RateLimitInfo info = backend.peek("10.0.0.1");
+        assertThat(info.getRemaining()).isEqualTo(8);
+        assertThat(backend.peek("10.0.0.1").getRemaining()).isEqualTo(8);
+        assertThat(backend.peek("10.9.9.9").getRemaining()).isEqualTo(10);
+        assertThat(backend.peek("10.9.9.9").getResetAtEpochSeconds()).isEqualTo(START / 1000);
+    }
+
+    @Test
+    @DisplayName("available não deve alocar")
+    void shouldNotAllocateOnAvailable() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        GcraRateLimitBackend backend = backend(1024);
+        String[] clients = {"10.0.0.1", "2001:db8:1::7", "198.51.100.23"};
+        for (String client : clients) backend.consume(client);
+        long sink = 0;
+        for (int i = 0; i < 50_000; i++) sink += backend.available(clients[i % clients.length]);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) sink += backend.available(clients[i % clients.length]);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertThat(sink).isPositive();
+        // só o ruído da própria medição; um objeto por chamada daria > 100 KB
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    @Test
+    @DisplayName("1024 posições devem ocupar 16 KB e a capacidade padrão, 32 MB")
+    void shouldUseSixteenBytesPerSlot() {
+        assertThat(backend(1024).memoryBytes()).isEqualTo(16 * 1024);
+        assertThat(new GcraRateLimitBackend(GcraRateLimitBackend.DEFAULT_CAPACITY).memoryBytes())
+                .isEqualTo(32L * 1024 * 1024);
+    }
+
+    @Test
+    @DisplayName("chamadas concorrentes do mesmo IP devem liberar exatamente o limite")
+    void shouldBeExactUnderContention() throws Exception {
+        GcraRateLimitBackend backend = backend(1024);
+        AtomicInteger allowed = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 200; i++) {
+                executor.submit(() -> {
+                    if (backend.consume("10.0.0.1").isAllowed()) allowed.incrementAndGet();
+                });
+            }
+        }
+
+        assertThat(allowed.get()).isEqualTo(10);
+    }
+
+    @Nested
+    @DisplayName("tabela cheia")
+    class FullTable {
+
+        @Test
+        @DisplayName("clientes com bucket já cheio devem ceder a posição para novos")
+        void shouldReclaimExpiredSlots() {
+            GcraRateLimitBackend backend = backend(32);
+            for (int i = 0; i < 32; i++) backend.consume("10.1.0." + i);
+
+            clock.addAndGet(Duration.ofMinutes(7).toMillis());
+            for (int i = 0; i < 32; i++) {
+                String client = "10.2.0." + i;
+                for (int j = 0; j < 10; j++) backend.consume(client);
+                assertThat(backend.consume(client).isAllowed()).as(client).isFalse();
+            }
+            assertThat(backend.untrackedRequests()).isZero();
+        }
+
+        @Test
+        @DisplayName("rodar IPs não deve resetar o limite de clientes ativos")
+        void shouldNotEvictActiveClients() {
+            GcraRateLimitBackend backend = backend(32);
+            for (int i = 0; i < 10; i++) backend.consume("10.0.0.1");
+
+            for (int i = 0; i < 1000; i++) backend.consume("172.16." + (i / 256) + "." + (i % 256));
+
+            assertThat(backend.consume("10.0.0.1").isAllowed()).isFalse();
+            assertThat(backend.untrackedRequests()).isPositive();
+        }
+
+        @Test
+        @DisplayName("várias threads inserindo a mesma chave durante um reaproveitamento devem ver um só limite")
+        void shouldNotDuplicateKeyWhileReclaiming() throws Exception {
+            GcraRateLimitBackend backend = backend(64);
+            for (int i = 0; i < 48; i++) backend.consume("10.1.0." + i);
+
+            try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+                for (int round = 0; round < 300; round++) {
+                    // todas as posições ocupadas expiram: o cliente novo disputa reaproveitamentos e vazias
+                    clock.addAndGet(Duration.ofHours(2).toMillis());
+                    String client = "10.2." + (round / 256) + "." + (round % 256);
+                    AtomicInteger allowed = new AtomicInteger();
+                    CountDownLatch start = new CountDownLatch(1);
+                    List<Future<?>> calls = new ArrayList<>();
+                    for (int i = 0; i < 32; i++) {
+                        calls.add(executor.submit(() -> {
+                            start.await();
+                            if (backend.consume(client).isAllowed()) allowed.incrementAndGet();
+                            return null;
+                        }));
+                    }
+                    start.countDown();
+                    for (Future<?> call : calls) call.get();
+
+                    assertThat(allowed.get()).as(client).isEqualTo(10);
+                }
+            }
+            assertThat(backend.untrackedRequests()).isZero();
+        }
+    }
+
+    @Nested
+    @DisplayName("chaves")
+    class Keys {
+
+        @Test
+        @DisplayName("IPv6 do mesmo /64 deve compartilhar o limite")
+        void shouldKeyIpv6ByPrefix() {
+            assertThat(GcraRateLimitBackend.keyOf("2001:db8:0:1::1"))
+                    .isEqualTo(GcraRateLimitBackend.keyOf("2001:DB8:0:1:ffff:1:2:3"))
+                    .isEqualTo(GcraRateLimitBackend.keyOf("2001:db8::1:0:0:0:9%eth0"))
+                    .isNotEqualTo(GcraRateLimitBackend.keyOf("2001:db8:0:2::1"));
+        }
+
+        @Test
+        @DisplayName("IPv4 mapeado em IPv6 deve ser o mesmo cliente do IPv4")
+        void shouldMapIpv4InIpv6() {
+            assertThat(GcraRateLimitBackend.keyOf("::ffff:192.0.2.1"))
+                    .isEqualTo(GcraRateLimitBackend.keyOf("192.0.2.1"))
+                    .isEqualTo((1L << 32) | 0xc0000201L);
+        }
+
+        @Test
+        @DisplayName("strings que não são IP devem virar chaves distintas e não nulas")
+        void shouldHashOtherStrings() {
+            assertThat(GcraRateLimitBackend.keyOf("new-ip")).isNotZero()
+                    .isNotEqualTo(GcraRateLimitBackend.keyOf("300.0.0.1"));
+            assertThat(GcraRateLimitBackend.keyOf("1.2.3")).isNotEqualTo(GcraRateLimitBackend.keyOf("1.2.3.0"));
+            assertThat(GcraRateLimitBackend.keyOf("::1")).isNotZero();
+        }
+    }
+}
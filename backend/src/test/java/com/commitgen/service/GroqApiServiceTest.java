@@ -1,6 +1,7 @@
 package com.commitgen.service;
 
 import com.commitgen.exception.GroqApiException;
+import com.commitgen.service.GroqApiService.Completion;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,6 +11,10 @@ import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
@@ -41,9 +46,96 @@ class GroqApiServiceTest {
         GroqApiService service = new GroqApiService(builder.build());
         ReflectionTestUtils.setField(service, "model", "llama-3.3-70b-versatile");
 
-        String result = service.chat("system prompt", "user prompt");
+        Completion result = service.chat("system prompt", "user prompt");
 
-        assertThat(result).isEqualTo("1. feat: add new endpoint");
+        assertThat(result).isEqualTo(new Completion("1. feat: add new endpoint", "llama-3.3-70b-versatile"));
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("deve devolver o model do endpoint que respondeu após failover")
+    void shouldReturnModelOfServingEndpoint() {
+        RestClient.Builder primaryBuilder = RestClient.builder().baseUrl("https://primary.example/v1");
+        MockRestServiceServer primary = MockRestServiceServer.bindTo(primaryBuilder).build();
+        RestClient.Builder fallbackBuilder = RestClient.builder().baseUrl("https://fallback.example/v1");
+        MockRestServiceServer fallback = MockRestServiceServer.bindTo(fallbackBuilder).build();
+
+        primary.expect(requestTo("https://primary.example/v1/chat/completions"))
+                .andRespond(withServerError());
+        fallback.expect(requestTo("https://fallback.example/v1/chat/completions"))
+                .andExpect(jsonPath("$.model").value("llama-3.1-8b-instant"))
+                .andRespond(withSuccess("""
+                        {"choices": [{"message": {"content": "1. feat: add login"}}]}
+                        """, MediaType.APPLICATION_JSON));
+
+        LlmRouter router = new LlmRouter(List.of(
+                new LlmEndpoint("primary", "llama-3.3-70b-versatile", primaryBuilder.build()),
+                new LlmEndpoint("fallback", "llama-3.1-8b-instant", fallbackBuilder.build())),
+                Duration.ofSeconds(10), Duration.ofSeconds(30));
+        GroqApiService service = new GroqApiService(router, new TokenEstimator());
+
+        Completion result = service.chat("sys", "user");
+
+        assertThat(result.model()).isEqualTo("llama-3.1-8b-instant");
+        primary.verify();
+        fallback.verify();
+    }
+
+    @Test
+    @DisplayName("JSON mode deve enviar response_format json_object")
+    void shouldRequestJsonObjectFormat() {
+        RestClient.Builder builder = RestClient.builder()
+                .baseUrl("https://api.groq.com/openai/v1");
+        MockRestServiceServer server = MockRestServiceServer.bindTo(builder).build();
+
+        server.expect(requestTo("https://api.groq.com/openai/v1/chat/completions"))
+                .andExpect(jsonPath("$.response_format").doesNotExist())
+                .andRespond(withSuccess("""
+                        {"choices": [{"message": {"content": "1. feat: add login"}}]}
+                        """, MediaType.APPLICATION_JSON));
+        server.expect(requestTo("https://api.groq.com/openai/v1/chat/completions"))
+                .andExpect(jsonPath("$.response_format.type").value("json_object"))
+                .andRespond(withSuccess("""
+                        {"choices": [{"message": {"content": "{\\"suggestions\\": []}"}}]}
+                        """, MediaType.APPLICATION_JSON));
+
+        GroqApiService service = new GroqApiService(builder.build());
+        ReflectionTestUtils.setField(service, "model", "llama-3.3-70b-versatile");
+
+        service.chat("system prompt", "user prompt", 120);
+        String result = service.chat("system prompt", "user prompt", 120, true).content();
+
+        assertThat(result).isEqualTo("{\"suggestions\": []}");
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("deve enviar max_tokens e registrar o usage real")
+    void shouldSendMaxTokensAndRecordUsage() {
+        RestClient.Builder builder = RestClient.builder()
+                .baseUrl("https://api.groq.com/openai/v1");
+        MockRestServiceServer server = MockRestServiceServer.bindTo(builder).build();
+
+        server.expect(requestTo("https://api.groq.com/openai/v1/chat/completions"))
+                .andExpect(jsonPath("$.max_tokens").value(120))
+                .andRespond(withSuccess("""
+                        {
+                            "choices": [{"message": {"content": "1. fix: handle null"}}],
+                            "usage": {"prompt_tokens": 42, "completion_tokens": 9}
+                        }
+                        """, MediaType.APPLICATION_JSON));
+
+        TokenEstimator estimator = new TokenEstimator();
+        GroqApiService service = new GroqApiService(builder.build(), estimator);
+        ReflectionTestUtils.setField(service, "model", "llama-3.3-70b-versatile");
+
+        service.chat("system prompt", "user prompt", 120);
+
+        TokenEstimator.UsageStats stats = estimator.getStats();
+        assertThat(stats.samples()).isEqualTo(1);
+        assertThat(stats.actualPromptTokens()).isEqualTo(42);
+        assertThat(stats.maxTokens()).isEqualTo(120);
+        assertThat(stats.actualCompletionTokens()).isEqualTo(9);
         server.verify();
     }
 
@@ -108,4 +200,55 @@ class GroqApiServiceTest {
                 .hasMessageContaining("No choices");
         server.verify();
     }
+
+    @Test
+    @DisplayName("stream: deve repassar cada fragmento e retornar o conteúdo completo")
+    void shouldStreamDeltas() {
+        RestClient.Builder builder = RestClient.builder()
+                .baseUrl("https://api.groq.com/openai/v1");
+        MockRestServiceServer server = MockRestServiceServer.bindTo(builder).build();
+
+        String sseBody = """
+                data: {"choices":[{"delta":{"role":"assistant"}}]}
+
+                data: {"choices":[{"delta":{"content":"1. feat: add"}}]}
+
+                data: {"choices":[{"delta":{"content":" endpoint\\n2. fix: bug"}}]}
+
+                data: [DONE]
+
+                """;
+
+        server.expect(requestTo("https://api.groq.com/openai/v1/chat/completions"))
+                .andExpect(jsonPath("$.stream").value(true))
+                .andRespond(withSuccess(sseBody, MediaType.TEXT_EVENT_STREAM));
+
+        GroqApiService service = new GroqApiService(builder.build());
+        ReflectionTestUtils.setField(service, "model", "llama-3.3-70b-versatile");
+
+        List<String> deltas = new ArrayList<>();
+        Completion result = service.chatStream("sys", "user", deltas::add);
+
+        assertThat(deltas).containsExactly("1. feat: add", " endpoint\n2. fix: bug");
+        assertThat(result.content()).isEqualTo("1. feat: add endpoint\n2. fix: bug");
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("stream: deve lançar GroqApiException no erro HTTP")
+    void shouldThrowOnStreamHttpError() {
+        RestClient.Builder builder = RestClient.builder()
+                .baseUrl("https://api.groq.com/openai/v1");
+        MockRestServiceServer server = MockRestServiceServer.bindTo(builder).build();
+
+        server.expect(requestTo("https://api.groq.com/openai/v1/chat/completions"))
+                .andRespond(withServerError());
+
+        GroqApiService service = new GroqApiService(builder.build());
+        ReflectionTestUtils.setField(service, "model", "llama-3.3-70b-versatile");
+
+        assertThatThrownBy(() -> service.chatStream("sys", "user", delta -> { }))
+                .isInstanceOf(GroqApiException.class);
+        server.verify();
+    }
 }
@@ -0,0 +1,128 @@
+package com.commitgen.service;
+
+import com.hazelcast.config.Config;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Três membros Hazelcast na mesma JVM, como três réplicas do backend.
+ */
+class HazelcastRateLimitBackendTest {
+
+    private static final List<String> MEMBERS = List.of("127.0.0.1:15701", "127.0.0.1:15702", "127.0.0.1:15703");
+
+    private static HazelcastRateLimitBackend[] exact;
+    private static HazelcastRateLimitBackend[] batched;
+
+    @BeforeAll
+    static void startCluster() {
+        String cluster = "commitgen-test-" + UUID.randomUUID();
+        // Mesmo cluster: réplicas que vão ao cluster a cada requisição e réplicas com sincronização em lote
+        exact = new HazelcastRateLimitBackend[3];
+        batched = new HazelcastRateLimitBackend[3];
+        for (int i = 0; i < 3; i++) {
+            Config config = HazelcastRateLimitBackend.config(cluster, 15701, MEMBERS);
+            config.setInstanceName(cluster + "-" + i);
+            exact[i] = HazelcastRateLimitBackend.start(config, null);
+        }
+        for (int i = 0; i < 3; i++) {
+            batched[i] = new HazelcastRateLimitBackend(exact[i].hazelcast(),
+                    new DelayParameters(3, Duration.ofHours(1)));
+        }
+        assertThat(exact[0].hazelcast().getCluster().getMembers()).hasSize(3);
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        for (HazelcastRateLimitBackend backend : exact) {
+            if (backend != null) backend.close();
+        }
+    }
+
+    @Test
+    @DisplayName("o limite de 10/hora deve valer para o cluster, não por réplica")
+    void shouldShareLimitAcrossNodes() {
+        int allowed = 0;
+        for (int i = 0; i < 30; i++) {
+            if (exact[i % 3].consume("10.0.0.1").isAllowed()) allowed++;
+        }
+
+        assertThat(allowed).isEqualTo(10);
+        assertThat(exact[1].peek("10.0.0.1").getRemaining()).isZero();
+        assertThat(exact[2].consume("10.0.0.1").getRetryAfterSeconds()).isPositive();
+    }
+
+    @Test
+    @DisplayName("réplica que nunca viu o IP deve enxergar o consumo das outras")
+    void shouldPeekStateFromOtherNodes() {
+        exact[0].consume("10.0.0.2");
+        exact[0].consume("10.0.0.2");
+
+        assertThat(exact[2].peek("10.0.0.2").getRemaining()).isEqualTo(8);
+        assertThat(exact[2].available("10.0.0.2")).isEqualTo(8);
+    }
+
+    @Test
+    @DisplayName("peek de IP desconhecido não deve criar entrada no cluster")
+    void shouldNotCreateEntryOnPeek() {
+        assertThat(exact[1].peek("10.0.0.3").getRemaining()).isEqualTo(10);
+
+        assertThat(exact[0].hazelcast().getMap(HazelcastRateLimitBackend.MAP_NAME).containsKey("10.0.0.3")).isFalse();
+    }
+
+    @Test
+    @DisplayName("com sincronização em lote, consumos locais só chegam ao cluster a cada N requisições")
+    void shouldBatchGrantsLocally() {
+        // 1ª requisição vai ao cluster; as seguintes ficam locais até passar de maxUnsynchronizedTokens
+        for (int i = 0; i < 3; i++) {
+            assertThat(batched[0].consume("10.0.0.4").isAllowed()).isTrue();
+        }
+
+        assertThat(exact[1].available("10.0.0.4")).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("com sincronização em lote, o excesso fica limitado a réplicas × N")
+    void shouldBoundOvershootWhenBatching() {
+        int allowed = 0;
+        for (int i = 0; i < 60; i++) {
+            if (batched[i % 3].consume("10.0.0.5").isAllowed()) allowed++;
+        }
+
+        assertThat(allowed).isBetween(10, 10 + 3 * 3);
+    }
+
+    @Test
+    @DisplayName("newLimit deve compartilhar o orçamento entre réplicas em outro mapa")
+    void shouldShareSecondLimitAcrossNodes() {
+        RateLimitBackend tokensA = exact[0].newLimit("tokens", 5000, Duration.ofHours(1));
+        RateLimitBackend tokensB = exact[1].newLimit("tokens", 5000, Duration.ofHours(1));
+
+        assertThat(tokensA.consume("10.0.0.7", 3000).isAllowed()).isTrue();
+        assertThat(tokensB.consume("10.0.0.7", 3000).isAllowed()).isFalse();
+        tokensB.refund("10.0.0.7", 1000);
+
+        assertThat(tokensA.available("10.0.0.7")).isEqualTo(3000);
+        assertThat(exact[2].available("10.0.0.7")).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("com o membro fora do cluster, a requisição deve passar (fail-open)")
+    void shouldFailOpenWhenClusterIsDown() {
+        Config config = HazelcastRateLimitBackend.config("commitgen-down-" + UUID.randomUUID(), 15711,
+                List.of("127.0.0.1:15711"));
+        HazelcastRateLimitBackend backend = HazelcastRateLimitBackend.start(config, null);
+        backend.close();
+
+        assertThat(backend.consume("10.0.0.6").isAllowed()).isTrue();
+    }
+}
@@ -0,0 +1,270 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.UpstreamRejectedException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmRouterTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000 * MS);
+    private final LlmEndpoint fast = new LlmEndpoint("fast", null, null);
+    private final LlmEndpoint slow = new LlmEndpoint("slow", null, null);
+
+    private LlmRouter router(LlmEndpoint... endpoints) {
+        return new LlmRouter(List.of(endpoints), Duration.ofSeconds(10), Duration.ofSeconds(30),
+                CircuitBreaker.Settings.DEFAULTS, clock::get);
+    }
+
+    // simula uma chamada que leva latencyMs e falha ou não
+    private void call(LlmRouter router, long latencyMs, boolean fail) {
+        try {
+            router.execute(endpoint -> {
+                clock.addAndGet(latencyMs * MS);
+                if (fail) throw new GroqApiException("boom");
+                return endpoint.name();
+            }, () -> false);
+        } catch (GroqApiException ignored) {
+            // esperado
+        }
+    }
+
+    @Test
+    @DisplayName("deve preferir o endpoint com menor latência EWMA")
+    void shouldPreferLowerLatency() {
+        LlmRouter router = router(slow, fast);
+        call(router, 900, false); // slow (primeiro da config)
+        call(router, 100, false); // fast é sondado por não ter amostra
+
+        assertThat(router.rankedEndpoints()).containsExactly(fast, slow);
+    }
+
+    @Test
+    @DisplayName("taxa de erro recente deve penalizar o endpoint mesmo mais rápido")
+    void shouldPenalizeErrors() {
+        LlmRouter router = router(fast, slow);
+        call(router, 100, false);
+        call(router, 300, false);
+        call(router, 100, true); // fast falha: latência sobe e ainda é multiplicada pela taxa de erro
+
+        assertThat(router.rankedEndpoints()).containsExactly(slow, fast);
+    }
+
+    @Test
+    @DisplayName("endpoint sem amostra recente deve receber uma sondagem")
+    void shouldProbeStaleEndpoint() {
+        LlmRouter router = router(fast, slow);
+        call(router, 100, false);
+        call(router, 900, false);
+        assertThat(router.rankedEndpoints().get(0)).isEqualTo(fast);
+
+        clock.addAndGet(5_000 * MS);
+        call(router, 100, false);
+        clock.addAndGet(6_000 * MS); // slow sem amostra há mais de 10s
+
+        assertThat(router.rankedEndpoints().get(0)).isEqualTo(slow);
+    }
+
+    @Test
+    @DisplayName("deve fazer failover para o próximo endpoint e lançar a última falha se todos falharem")
+    void shouldFailOver() {
+        LlmRouter router = router(slow, fast);
+        List<String> attempts = new ArrayList<>();
+
+        String result = router.execute(endpoint -> {
+            attempts.add(endpoint.name());
+            if (endpoint == slow) throw new GroqApiException("down");
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(attempts).containsExactly("slow", "fast");
+        assertThatThrownBy(() -> router.execute(endpoint -> {
+            throw new GroqApiException("all down " + endpoint.name());
+        })).isInstanceOf(GroqApiException.class).hasMessageStartingWith("all down");
+    }
+
+    @Test
+    @DisplayName("não deve fazer failover quando canFailover é falso")
+    void shouldNotFailOverWhenDisallowed() {
+        LlmRouter router = router(slow, fast);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> router.execute(endpoint -> {
+            attempts.incrementAndGet();
+            throw new GroqApiException("mid-stream");
+        }, () -> false)).isInstanceOf(GroqApiException.class);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("com o circuito aberto em todos os endpoints deve falhar na hora com CIRCUIT_OPEN")
+    void shouldFailFastWhenAllCircuitsOpen() {
+        LlmRouter router = new LlmRouter(List.of(fast), Duration.ofSeconds(10), Duration.ofSeconds(30),
+                new CircuitBreaker.Settings(0.5, 4, 2, Duration.ofSeconds(30)), clock::get);
+        call(router, 10, true);
+        call(router, 10, true);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> router.execute(endpoint -> attempts.incrementAndGet()))
+                .isInstanceOf(UpstreamUnavailableException.class)
+                .hasMessageContaining("Circuit open");
+        assertThat(attempts).hasValue(0);
+        assertThat(router.circuitState(fast)).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    @DisplayName("400 repetidos devem voltar direto, sem failover e com o circuito fechado")
+    void shouldNotCountClientErrorsAsFailures() {
+        LlmRouter router = new LlmRouter(List.of(slow, fast), Duration.ofSeconds(10), Duration.ofSeconds(30),
+                new CircuitBreaker.Settings(0.5, 4, 2, Duration.ofSeconds(30)), clock::get);
+        List<String> attempts = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> router.execute(endpoint -> {
+                attempts.add(endpoint.name());
+                throw new UpstreamRejectedException(400, "bad request", null);
+            })).isInstanceOf(UpstreamRejectedException.class);
+        }
+
+        assertThat(attempts).hasSize(10).containsOnly("slow");
+        assertThat(router.circuitState(slow)).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("429 do upstream que esgotou os retries deve contar como falha no circuit breaker")
+    void shouldCountExhaustedTooManyRequestsAsFailure() {
+        LlmRouter router = new LlmRouter(List.of(fast), Duration.ofSeconds(10), Duration.ofSeconds(30),
+                new CircuitBreaker.Settings(0.5, 4, 2, Duration.ofSeconds(30)), clock::get);
+        RestClientResponseException tooManyRequests = new RestClientResponseException(
+                "429", HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null);
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> router.execute(endpoint -> {
+                throw new UpstreamUnavailableException(UpstreamUnavailableException.Reason.QUOTA_EXHAUSTED,
+                        "Upstream rate limited", 1, tooManyRequests);
+            })).isInstanceOf(UpstreamUnavailableException.class);
+        }
+
+        assertThat(router.circuitState(fast)).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    @DisplayName("deve pular endpoint com circuito aberto e usar o próximo")
+    void shouldSkipOpenCircuit() {
+        LlmRouter router = new LlmRouter(List.of(slow, fast), Duration.ofSeconds(10), Duration.ofSeconds(30),
+                new CircuitBreaker.Settings(0.5, 4, 1, Duration.ofSeconds(30)), clock::get);
+        List<String> attempts = new ArrayList<>();
+        router.execute(endpoint -> {
+            if (endpoint == slow) throw new GroqApiException("down");
+            return "ok";
+        });
+
+        clock.addAndGet(20_000 * MS); // slow ficaria "stale" e seria sondado, mas o circuito está aberto
+        router.execute(endpoint -> attempts.add(endpoint.name()));
+
+        assertThat(router.circuitState(slow)).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(attempts).containsExactly("fast");
+    }
+
+    @Nested
+    @DisplayName("com servidores stub")
+    class WithStubServers {
+
+        private final List<HttpServer> servers = new ArrayList<>();
+
+        @AfterEach
+        void stopServers() {
+            servers.forEach(server -> server.stop(0));
+        }
+
+        private LlmEndpoint stub(String name, int status, long delayMs, AtomicInteger hits) throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/chat/completions", exchange -> {
+                hits.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = ("{\"choices\":[{\"message\":{\"content\":\"1. feat: from " + name + "\"}}]}")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            servers.add(server);
+            RestClient client = RestClient.builder()
+                    .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                    .requestFactory(new JdkClientHttpRequestFactory())
+                    .build();
+            return new LlmEndpoint(name, name + "-model", client);
+        }
+
+        @Test
+        @DisplayName("deve contornar um upstream com erro e concentrar tráfego no saudável")
+        void shouldRouteAroundFailingUpstream() throws IOException {
+            AtomicInteger brokenHits = new AtomicInteger();
+            AtomicInteger healthyHits = new AtomicInteger();
+            LlmRouter router = new LlmRouter(List.of(
+                    stub("broken", 500, 0, brokenHits),
+                    stub("healthy", 200, 0, healthyHits)), Duration.ofMinutes(1), Duration.ofMinutes(1));
+            GroqApiService service = new GroqApiService(router, new TokenEstimator());
+            ReflectionTestUtils.setField(service, "model", "default-model");
+
+            for (int i = 0; i < 10; i++) {
+                assertThat(service.chat("sys", "user " + i).content()).isEqualTo("1. feat: from healthy");
+            }
+
+            assertThat(brokenHits).hasValue(1);
+            assertThat(healthyHits).hasValue(10);
+        }
+
+        @Test
+        @DisplayName("deve preferir o upstream mais rápido")
+        void shouldPreferFasterUpstream() throws IOException {
+            AtomicInteger slowHits = new AtomicInteger();
+            AtomicInteger fastHits = new AtomicInteger();
+            LlmRouter router = new LlmRouter(List.of(
+                    stub("slow", 200, 150, slowHits),
+                    stub("fast", 200, 0, fastHits)), Duration.ofMinutes(1), Duration.ofMinutes(1));
+            GroqApiService service = new GroqApiService(router, new TokenEstimator());
+
+            for (int i = 0; i < 10; i++) {
+                service.chat("sys", "user " + i);
+            }
+
+            // uma chamada em cada para medir, depois só o mais rápido
+            assertThat(slowHits).hasValue(1);
+            assertThat(fastHits).hasValue(9);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.commitgen.service;
+
+import com.commitgen.service.PromptTemplateRegistry.SystemPrompt;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PromptTemplateRegistryTest {
+
+    private final TokenEstimator tokenEstimator = new TokenEstimator();
+
+    @Nested
+    @DisplayName("templates do classpath")
+    class Classpath {
+
+        private final PromptTemplateRegistry prompts = PromptTemplateRegistry.classpath();
+
+        @Test
+        @DisplayName("deve montar um prompt por estilo e idioma, com o limite de caracteres no texto")
+        void shouldAssembleEveryStyleAndLanguage() {
+            assertThat(prompts.systemPrompts()).hasSize(6);
+
+            SystemPrompt simple = prompts.systemPrompt("simple", "pt-br");
+            assertThat(simple.style().maxMessageChars()).isEqualTo(50);
+            assertThat(simple.text())
+                    .startsWith("You are a senior software engineer analyzing git diffs.")
+                    .contains("Max 50 characters.\nWrite the commit messages in Brazilian Portuguese.")
+                    .doesNotContain("{max-chars}");
+            assertThat(simple.tokens()).isEqualTo(tokenEstimator.estimate(simple.text()));
+
+            assertThat(prompts.style("conventional").conventional()).isTrue();
+            assertThat(prompts.style("emoji").conventional()).isFalse();
+            assertThat(prompts.style("emoji").maxMessageChars()).isEqualTo(72);
+        }
+
+        @Test
+        @DisplayName("estilo e idioma desconhecidos devem cair no padrão, ignorando maiúsculas")
+        void shouldFallBackToDefaults() {
+            SystemPrompt fallback = prompts.systemPrompt("Weird", "fr");
+
+            assertThat(fallback.style().name()).isEqualTo(PromptTemplateRegistry.DEFAULT_STYLE);
+            assertThat(fallback.language()).isEqualTo(PromptTemplateRegistry.DEFAULT_LANGUAGE);
+            assertThat(prompts.systemPrompt(" EMOJI ", "PT-BR").style().name()).isEqualTo("emoji");
+            assertThat(prompts.systemPrompt(null, null)).isSameAs(prompts.systemPrompt("conventional", "en"));
+        }
+
+        @Test
+        @DisplayName("deve devolver o mesmo prompt pré-montado a cada chamada")
+        void shouldReturnPrecompiledPrompt() {
+            assertThat(prompts.systemPrompt("emoji", "en")).isSameAs(prompts.systemPrompt("emoji", "en"));
+        }
+    }
+
+    @Nested
+    @DisplayName("diretório externo")
+    class ExternalDirectory {
+
+        @TempDir
+        Path dir;
+
+        private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        private PromptTemplateRegistry prompts(Duration reloadInterval) {
+            return new PromptTemplateRegistry(tokenEstimator, registry, dir.toString(), reloadInterval);
+        }
+
+        private void write(String path, String content) throws IOException {
+            Path file = dir.resolve(path);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, content);
+        }
+
+        @Test
+        @DisplayName("deve acrescentar estilos e substituir templates do classpath")
+        void shouldAddAndOverrideTemplates() throws IOException {
+            write("styles/angular.txt", """
+                    max-chars: 100
+                    parse: conventional
+                    ---
+                    Follow the Angular convention.
+                    Max {max-chars} characters.
+                    """);
+            write("languages/en.txt", "Write the commit messages in US English.");
+
+            PromptTemplateRegistry prompts = prompts(Duration.ZERO);
+
+            SystemPrompt angular = prompts.systemPrompt("angular", "en");
+            assertThat(angular.style().maxMessageChars()).isEqualTo(100);
+            assertThat(angular.style().conventional()).isTrue();
+            assertThat(angular.text()).endsWith("Max 100 characters.\nWrite the commit messages in US English.");
+            assertThat(prompts.systemPrompt("simple", "pt-br").text()).endsWith("Brazilian Portuguese.");
+            assertThat(registry.get("commitgen.prompt.template.tokens").tag("style", "angular").tag("language", "en")
+                    .gauge().value()).isEqualTo(angular.tokens());
+        }
+
+        @Test
+        @DisplayName("template inválido no reload deve manter os anteriores")
+        void shouldKeepPreviousTemplatesWhenReloadFails() throws IOException {
+            write("styles/angular.txt", "max-chars: 100\n---\nFollow the Angular convention.");
+            PromptTemplateRegistry prompts = prompts(Duration.ZERO);
+
+            write("styles/angular.txt", "max-chars: lots\n---\nFollow the Angular convention.");
+
+            assertThatThrownBy(prompts::reload).isInstanceOf(NumberFormatException.class);
+            assertThat(prompts.style("angular").maxMessageChars()).isEqualTo(100);
+        }
+
+        @Test
+        @DisplayName("deve recarregar sozinho quando um arquivo muda")
+        void shouldHotReloadChangedFiles() throws Exception {
+            write("styles/angular.txt", "max-chars: 100\n---\nFollow the Angular convention.");
+            PromptTemplateRegistry prompts = prompts(Duration.ofMillis(20));
+            prompts.start();
+            try {
+                write("styles/angular.txt", "max-chars: 60\n---\nFollow the Angular convention.");
+                // garante mtime diferente mesmo em sistemas de arquivos com resolução de segundos
+                Files.setLastModifiedTime(dir.resolve("styles/angular.txt"), FileTime.fromMillis(0));
+
+                long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+                while (prompts.style("angular").maxMessageChars() != 60 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertThat(prompts.style("angular").maxMessageChars()).isEqualTo(60);
+            } finally {
+                prompts.close();
+            }
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package com.commitgen.service;
 
+import com.commitgen.dto.CommitRequest;
 import com.commitgen.service.RateLimitService.RateLimitInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class RateLimitServiceTest {
 
@@ -103,6 +111,18 @@ class RateLimitServiceTest {
             assertThat(info.getRetryAfterSeconds()).isZero();
         }
 
+        @Test
+        @DisplayName("refund deve devolver o que a requisição cobrou")
+        void shouldRefundChargedRequest() {
+            String ip = "200.0.0.9";
+            RateLimitInfo charged = rateLimitService.consume(ip);
+
+            RateLimitInfo refunded = rateLimitService.refund(ip, charged);
+
+            assertThat(refunded.getRemaining()).isEqualTo(10);
+            assertThat(rateLimitService.getAvailableTokens(ip)).isEqualTo(10);
+        }
+
         @Test
         @DisplayName("deve bloquear e retornar retryAfter > 0")
         void shouldBlockAndReturnRetryInfo() {
@@ -186,4 +206,125 @@ class RateLimitServiceTest {
             assertThat(info.getRemaining()).isZero();
         }
     }
+
+    // ===== Modo weighted =====
+
+    @Nested
+    @DisplayName("modo weighted")
+    class WeightedTests {
+
+        private final CommitService commitService = mock(CommitService.class);
+        // 1 unidade a cada 1.000 tokens; orçamento de 5.000 tokens por hora
+        private final RateLimitService weighted =
+                new RateLimitService(new BucketRateLimitBackend(), commitService, 1000, 5000);
+
+        private CommitRequest costing(int tokens) {
+            CommitRequest request = new CommitRequest();
+            request.setDiff("+ " + tokens);
+            when(commitService.estimateUpstreamTokens(request)).thenReturn(tokens);
+            return request;
+        }
+
+        @Test
+        @DisplayName("requisição leve deve custar 1 unidade e os tokens estimados")
+        void shouldChargeLightRequest() {
+            RateLimitInfo info = weighted.consume("201.0.0.1", costing(400));
+
+            assertThat(info.isAllowed()).isTrue();
+            assertThat(info.getUnit()).isEqualTo(RateLimitService.UNIT_COST);
+            assertThat(info.getCost()).isEqualTo(1);
+            assertThat(info.getRemaining()).isEqualTo(9);
+            assertThat(info.getTokens().getUnit()).isEqualTo(RateLimitService.UNIT_TOKEN);
+            assertThat(info.getTokens().getCost()).isEqualTo(400);
+            assertThat(info.getTokens().getRemaining()).isEqualTo(4600);
+            assertThat(info.getTokens().getLimit()).isEqualTo(5000);
+        }
+
+        @Test
+        @DisplayName("requisição pesada deve custar proporcionalmente mais")
+        void shouldChargeHeavyRequestProportionally() {
+            RateLimitInfo info = weighted.consume("201.0.0.2", costing(3200));
+
+            assertThat(info.getCost()).isEqualTo(4);
+            assertThat(info.getRemaining()).isEqualTo(6);
+            assertThat(weighted.consume("201.0.0.2", costing(3200)).isAllowed()).isFalse();
+        }
+
+        @Test
+        @DisplayName("recusa do orçamento de tokens deve devolver as unidades cobradas")
+        void shouldRefundUnitsWhenTokenBudgetRejects() {
+            String ip = "201.0.0.3";
+            weighted.consume(ip, costing(2500));
+
+            RateLimitInfo rejected = weighted.consume(ip, costing(2900));
+
+            assertThat(rejected.isAllowed()).isFalse();
+            assertThat(rejected.getRetryAfterSeconds()).isPositive();
+            assertThat(rejected.getTokens().isAllowed()).isFalse();
+            assertThat(rejected.getRemaining()).isEqualTo(7);
+            assertThat(weighted.getInfo(ip).getRemaining()).isEqualTo(7);
+        }
+
+        @Test
+        @DisplayName("custo acima da capacidade deve esvaziar o bucket em vez de nunca passar")
+        void shouldClampCostToCapacity() {
+            RateLimitInfo info = weighted.consume("201.0.0.4", costing(60_000));
+
+            assertThat(info.isAllowed()).isTrue();
+            assertThat(info.getCost()).isEqualTo(10);
+            assertThat(info.getTokens().getCost()).isEqualTo(5000);
+            assertThat(weighted.consume("201.0.0.4", costing(10)).isAllowed()).isFalse();
+        }
+
+        @Test
+        @DisplayName("getInfo deve trazer os dois limites sem consumir")
+        void shouldPeekBothLimits() {
+            weighted.consume("201.0.0.5", costing(1500));
+
+            RateLimitInfo info = weighted.getInfo("201.0.0.5");
+
+            assertThat(info.getCost()).isZero();
+            assertThat(info.getRemaining()).isEqualTo(8);
+            assertThat(info.getTokens().getRemaining()).isEqualTo(3500);
+            assertThat(weighted.getInfo("201.0.0.5").getTokens().getRemaining()).isEqualTo(3500);
+        }
+
+        @Test
+        @DisplayName("modo requests deve cobrar 1 sem estimar tokens")
+        void shouldChargeOnePerRequestInRequestsMode() {
+            RateLimitInfo info = rateLimitService.consume("201.0.0.6", costing(9000));
+
+            assertThat(info.getCost()).isEqualTo(1);
+            assertThat(info.getUnit()).isEqualTo(RateLimitService.UNIT_REQUEST);
+            assertThat(info.getTokens()).isNull();
+            verify(commitService, never()).estimateUpstreamTokens(any());
+        }
+
+        @Test
+        @DisplayName("recusas devem ser contadas pelo limite que recusou")
+        void shouldCountRejectionsByLimit() {
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            RateLimitService measured = new RateLimitService(new BucketRateLimitBackend(), commitService,
+                    "weighted", 1000, 5000, new GenerationMetrics(registry));
+            measured.consume("201.0.0.7", costing(4500));
+            measured.consume("201.0.0.7", costing(900));
+            measured.consume("201.0.0.7", costing(8000));
+
+            assertThat(registry.get("commitgen.rate_limit.rejected").tag("limit", "tokens").counter().count())
+                    .isEqualTo(1);
+            assertThat(registry.get("commitgen.rate_limit.rejected").tag("limit", "requests").counter().count())
+                    .isEqualTo(1);
+            assertThat(registry.get("commitgen.generation.stage").tag("stage", "rate_limit").timer().count())
+                    .isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("modo desconhecido deve falhar no startup")
+        void shouldRejectUnknownMode() {
+            assertThatThrownBy(() ->
+                    new RateLimitService(new BucketRateLimitBackend(), commitService, "tokens", 1000, 5000))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("rate-limit.mode");
+        }
+    }
 }
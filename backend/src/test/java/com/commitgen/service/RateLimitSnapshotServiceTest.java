@@ -0,0 +1,162 @@
+package com.commitgen.service;
+
+import com.commitgen.service.RateLimitSnapshotFile.Snapshot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class RateLimitSnapshotServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private RateLimitSnapshotService start(RateLimitService rateLimitService) throws IOException {
+        RateLimitSnapshotService snapshots =
+                new RateLimitSnapshotService(rateLimitService, dir.toString(), Duration.ofHours(1));
+        snapshots.restore();
+        return snapshots;
+    }
+
+    @Test
+    @DisplayName("buckets em uso devem sobreviver ao restart")
+    void shouldRestoreBuckets() throws IOException {
+        RateLimitService before = new RateLimitService();
+        RateLimitSnapshotService snapshots = start(before);
+        for (int i = 0; i < 7; i++) before.consume("10.0.0.1");
+        for (int i = 0; i < 10; i++) before.consume("10.0.0.2");
+        snapshots.close();
+
+        RateLimitService after = new RateLimitService();
+        start(after).close();
+
+        assertThat(after.getAvailableTokens("10.0.0.1")).isEqualTo(3);
+        assertThat(after.consume("10.0.0.2").isAllowed()).isFalse();
+        assertThat(after.getAvailableTokens("10.0.0.3")).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("tabela GCRA com 300 mil clientes deve ser restaurada rápido e sem perdas")
+    void shouldRestoreLargeGcraTableQuickly() throws IOException {
+        GcraRateLimitBackend table = new GcraRateLimitBackend(1 << 20);
+        RateLimitSnapshotService snapshots = start(new RateLimitService(table));
+        for (int i = 0; i < 300_000; i++) {
+            table.consume("10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff), 1 + i % 10);
+        }
+        snapshots.close();
+
+        GcraRateLimitBackend restored = new GcraRateLimitBackend(1 << 20);
+        long start = System.nanoTime();
+        start(new RateLimitService(restored)).close();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        for (int i = 0; i < 300_000; i += 997) {
+            String ip = "10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+            assertThat(restored.available(ip)).as(ip).isEqualTo(table.available(ip));
+        }
+        // inclui abrir o arquivo e gravar o snapshot de volta no close
+        assertThat(elapsedMillis).isLessThan(2000);
+    }
+
+    @Test
+    @DisplayName("modo weighted deve gravar e restaurar também o orçamento de tokens")
+    void shouldRestoreTokenBudget() throws IOException {
+        RateLimitService before =
+                new RateLimitService(new BucketRateLimitBackend(), mock(CommitService.class), 1000, 5000);
+        RateLimitSnapshotService snapshots = start(before);
+        before.limits().get("tokens").consume("10.0.0.1", 1200);
+        snapshots.close();
+
+        RateLimitService after =
+                new RateLimitService(new BucketRateLimitBackend(), mock(CommitService.class), 1000, 5000);
+        start(after).close();
+
+        assertThat(Files.exists(dir.resolve("tokens.snapshot"))).isTrue();
+        assertThat(after.getInfo("10.0.0.1").getTokens().getRemaining()).isEqualTo(3800);
+    }
+
+    @Test
+    @DisplayName("diretório vazio deve desativar os snapshots")
+    void shouldDoNothingWhenDisabled() throws IOException {
+        RateLimitService service = new RateLimitService();
+        RateLimitSnapshotService snapshots = new RateLimitSnapshotService(service, "", Duration.ofSeconds(1));
+        snapshots.restore();
+        service.consume("10.0.0.1");
+        snapshots.snapshot();
+        snapshots.close();
+
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("arquivo de snapshot")
+    class SnapshotFileTests {
+
+        private RateLimitSnapshotFile open(long limit) throws IOException {
+            return RateLimitSnapshotFile.open(dir.resolve("test.snapshot"), 7, limit, 3_600_000, 64);
+        }
+
+        private void write(RateLimitSnapshotFile file, long value) {
+            ByteBuffer data = file.beginWrite();
+            data.putLong(value);
+            file.commit(data, 1, value);
+        }
+
+        @Test
+        @DisplayName("deve ler o snapshot mais novo após reabrir")
+        void shouldReadLatest() throws IOException {
+            try (RateLimitSnapshotFile file = open(10)) {
+                assertThat(file.latest()).isNull();
+                write(file, 1);
+                write(file, 2);
+                write(file, 3);
+            }
+            try (RateLimitSnapshotFile file = open(10)) {
+                Snapshot latest = file.latest();
+                assertThat(latest.count()).isEqualTo(1);
+                assertThat(latest.data().getLong()).isEqualTo(3);
+                write(file, 4);
+                assertThat(file.latest().data().getLong()).isEqualTo(4);
+            }
+        }
+
+        @Test
+        @DisplayName("slot corrompido deve cair no snapshot anterior")
+        void shouldFallBackWhenLatestIsCorrupted() throws IOException {
+            try (RateLimitSnapshotFile file = open(10)) {
+                write(file, 1);
+                write(file, 2);
+            }
+            // 2º slot: header (64) + slot 0 (32 + 64) + header do slot (32)
+            byte[] bytes = Files.readAllBytes(dir.resolve("test.snapshot"));
+            bytes[64 + 96 + 32] ^= 0x7f;
+            Files.write(dir.resolve("test.snapshot"), bytes);
+
+            try (RateLimitSnapshotFile file = open(10)) {
+                assertThat(file.latest().data().getLong()).isEqualTo(1);
+            }
+        }
+
+        @Test
+        @DisplayName("configuração diferente deve descartar o conteúdo")
+        void shouldDiscardOnConfigurationChange() throws IOException {
+            try (RateLimitSnapshotFile file = open(10)) {
+                write(file, 1);
+            }
+            try (RateLimitSnapshotFile file = open(20)) {
+                assertThat(file.latest()).isNull();
+            }
+        }
+    }
+}
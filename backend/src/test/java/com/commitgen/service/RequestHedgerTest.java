@@ -0,0 +1,155 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestHedgerTest {
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GroqApiException("interrupted", e);
+        }
+    }
+
+    @Test
+    @DisplayName("desativado deve apenas executar a chamada")
+    void shouldPassThroughWhenDisabled() {
+        RequestHedger hedger = RequestHedger.disabled();
+
+        assertThat(hedger.execute(() -> "ok")).isEqualTo("ok");
+        assertThat(hedger.getStats().calls()).isZero();
+    }
+
+    @Test
+    @DisplayName("chamada lenta deve disparar hedge, usar o mais rápido e cancelar o perdedor")
+    void shouldHedgeSlowCallAndCancelLoser() throws InterruptedException {
+        RequestHedger hedger = new RequestHedger(true, Duration.ofMillis(50), 0.95, 1.0, 1);
+        AtomicInteger attempt = new AtomicInteger();
+        CountDownLatch loserInterrupted = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        String result = hedger.execute(() -> {
+            if (attempt.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    loserInterrupted.countDown();
+                }
+                return "primary";
+            }
+            return "hedge";
+        });
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(elapsedMs).isLessThan(2_000);
+        assertThat(loserInterrupted.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(hedger.getStats().hedges()).isEqualTo(1);
+        assertThat(hedger.getStats().hedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("chamada rápida não deve disparar hedge")
+    void shouldNotHedgeFastCall() {
+        RequestHedger hedger = new RequestHedger(true, Duration.ofMillis(500), 0.95, 1.0, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        hedger.execute(() -> attempts.incrementAndGet());
+
+        assertThat(attempts).hasValue(1);
+        assertThat(hedger.getStats().hedges()).isZero();
+    }
+
+    @Test
+    @DisplayName("orçamento deve limitar hedges à fração configurada das chamadas")
+    void shouldRespectHedgeBudget() {
+        RequestHedger hedger = new RequestHedger(true, Duration.ofMillis(1), 0.95, 0.1, 1);
+
+        for (int i = 0; i < 30; i++) {
+            hedger.execute(() -> {
+                sleep(10);
+                return "slow";
+            });
+        }
+
+        assertThat(hedger.getStats().hedges()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("se a primeira a terminar falhar, deve usar a outra")
+    void shouldFallBackToOtherWhenFirstFails() {
+        RequestHedger hedger = new RequestHedger(true, Duration.ofMillis(20), 0.95, 1.0, 1);
+        AtomicInteger attempt = new AtomicInteger();
+
+        String result = hedger.execute(() -> {
+            if (attempt.incrementAndGet() == 1) {
+                sleep(100);
+                return "primary";
+            }
+            throw new GroqApiException("hedge failed");
+        });
+
+        assertThat(result).isEqualTo("primary");
+    }
+
+    @Test
+    @DisplayName("deve propagar a falha quando não houve hedge")
+    void shouldPropagateFailure() {
+        RequestHedger hedger = new RequestHedger(true, Duration.ofMillis(500), 0.95, 1.0, 1);
+
+        assertThatThrownBy(() -> hedger.execute(() -> {
+            throw new GroqApiException("down");
+        })).isInstanceOf(GroqApiException.class).hasMessage("down");
+    }
+
+    @Test
+    @DisplayName("sem atraso fixo deve aprender o percentil das latências recentes")
+    void shouldLearnPercentileDelay() {
+        RequestHedger hedger = new RequestHedger(true, Duration.ZERO, 0.5, 0.0, 4);
+        assertThat(hedger.hedgeDelayNanos()).isNegative();
+
+        for (int i = 0; i < 4; i++) {
+            hedger.execute(() -> {
+                sleep(20);
+                return "ok";
+            });
+        }
+
+        assertThat(hedger.hedgeDelayNanos()).isBetween(15_000_000L, 500_000_000L);
+    }
+
+    @Test
+    @DisplayName("hedge vencedor deve amostrar a latência desde o início da primária")
+    void shouldMeasureHedgedCallsFromPrimaryStart() {
+        RequestHedger hedger = new RequestHedger(true, Duration.ZERO, 0.5, 1.0, 1);
+        hedger.execute(() -> {
+            sleep(30);
+            return "warmup";
+        });
+
+        for (int i = 0; i < 15; i++) {
+            AtomicInteger attempt = new AtomicInteger();
+            hedger.execute(() -> {
+                if (attempt.incrementAndGet() == 1) {
+                    sleep(300);
+                }
+                return "ok";
+            });
+        }
+
+        assertThat(hedger.getStats().hedgeWins()).isEqualTo(15);
+        assertThat(hedger.hedgeDelayNanos()).isGreaterThanOrEqualTo(25_000_000L);
+    }
+}
@@ -0,0 +1,139 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    @DisplayName("chamadas concorrentes com a mesma chave devem executar uma única vez")
+    void shouldCoalesceConcurrentCalls() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(5)) {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                awaitQuietly(release);
+                return "result";
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            List<Future<String>> followers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                followers.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    executions.incrementAndGet();
+                    return "duplicate";
+                })));
+            }
+            // dá tempo para os seguidores se registrarem na chamada em andamento
+            Thread.sleep(200);
+            release.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            for (Future<String> follower : followers) {
+                assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            }
+        }
+
+        assertThat(executions).hasValue(1);
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("chamadas sequenciais não devem reaproveitar resultado anterior")
+    void shouldNotCacheCompletedCalls() {
+        AtomicInteger executions = new AtomicInteger();
+
+        singleFlight.execute("key", () -> "v" + executions.incrementAndGet());
+        String second = singleFlight.execute("key", () -> "v" + executions.incrementAndGet());
+
+        assertThat(second).isEqualTo("v2");
+        assertThat(executions).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("exceção do líder deve ser propagada a todos e liberar a chave")
+    void shouldPropagateFailureAndReleaseKey() {
+        assertThatThrownBy(() -> singleFlight.execute("key", () -> {
+            throw new GroqApiException("upstream down");
+        })).isInstanceOf(GroqApiException.class).hasMessage("upstream down");
+
+        assertThat(singleFlight.inFlightCount()).isZero();
+        assertThat(singleFlight.execute("key", () -> "recovered")).isEqualTo("recovered");
+    }
+
+    @Test
+    @DisplayName("seguidor deve desistir no próprio prazo sem interromper o líder")
+    void shouldBoundFollowerWaitByDeadline() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return "result";
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            assertThatThrownBy(() -> singleFlight.execute("key", deadline, () -> "duplicate"))
+                    .isInstanceOf(GroqApiException.class)
+                    .hasMessageContaining("deadline");
+
+            release.countDown();
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        }
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("a chave deve estar livre quando os seguidores recebem o resultado")
+    void shouldReleaseKeyBeforeCompleting() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return "result";
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<Integer> follower = executor.submit(() -> {
+                singleFlight.execute("key", () -> "duplicate");
+                return singleFlight.inFlightCount();
+            });
+            Thread.sleep(200);
+            release.countDown();
+
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isZero();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.commitgen.service;
+
+import com.commitgen.dto.CommitResponse.Suggestion;
+import com.commitgen.service.SuggestionJsonDecoder.SchemaException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SuggestionJsonDecoderTest {
+
+    private final PromptTemplateRegistry prompts = PromptTemplateRegistry.classpath();
+
+    @Test
+    @DisplayName("conventional: deve montar a mensagem a partir de type, scope e description")
+    void shouldDecodeConventionalSuggestions() {
+        List<Suggestion> suggestions = SuggestionJsonDecoder.decode("""
+                {"suggestions": [
+                  {"type": "feat", "scope": "auth", "description": "allow login with one-time codes"},
+                  {"type": "chore", "scope": null, "description": "update dependencies", "confidence": 0.9}
+                ], "notes": {"ignored": [1, 2]}}
+                """, prompts.style("conventional"));
+
+        assertThat(suggestions).extracting(Suggestion::getMessage)
+                .containsExactly("feat(auth): allow login with one-time codes", "chore: update dependencies");
+        assertThat(suggestions.get(0).getType()).isEqualTo("feat");
+        assertThat(suggestions.get(0).getScope()).isEqualTo("auth");
+        assertThat(suggestions.get(1).getScope()).isNull();
+        assertThat(suggestions.get(1).getDescription()).isEqualTo("update dependencies");
+    }
+
+    @Test
+    @DisplayName("estilos sem type/scope: description deve ser a mensagem inteira")
+    void shouldUseDescriptionAsMessageForPlainStyles() {
+        List<Suggestion> suggestions = SuggestionJsonDecoder.decode("""
+                {"suggestions": [{"type": "feat", "scope": null, "description": "✨ feat: add dark mode"}]}
+                """, prompts.style("emoji"));
+
+        assertThat(suggestions).singleElement().satisfies(suggestion -> {
+            assertThat(suggestion.getMessage()).isEqualTo("✨ feat: add dark mode");
+            assertThat(suggestion.getType()).isNull();
+        });
+    }
+
+    @ParameterizedTest
+    @DisplayName("respostas fora do formato devem ser recusadas")
+    @ValueSource(strings = {
+            "1. feat: add login",
+            "[{\"type\": \"feat\", \"description\": \"add login\"}]",
+            "{\"commits\": [\"feat: add login\"]}",
+            "{\"suggestions\": []}",
+            "{\"suggestions\": [\"feat: add login\"]}",
+            "{\"suggestions\": [{\"type\": \"feat\"}]}",
+            "{\"suggestions\": [{\"type\": \"new feature\", \"description\": \"add login\"}]}",
+            "{\"suggestions\": [{\"type\": \"feat\", \"scope\": \"a)b\", \"description\": \"add login\"}]}",
+            "{\"suggestions\": [{\"type\": \"feat\", \"description\": [\"add\", \"login\"]}]}",
+            "{\"suggestions\": [{\"type\": \"feat\", \"description\": \"add\\nlogin\"}]}",
+            "{\"suggestions\": [{\"type\": \"feat\", \"description\": \"add login\"}]} trailing",
+            "{\"suggestions\": [{\"type\": \"feat\", \"description\": \"add lo"
+    })
+    void shouldRejectSchemaViolations(String content) {
+        assertThatThrownBy(() -> SuggestionJsonDecoder.decode(content, prompts.style("conventional")))
+                .isInstanceOf(SchemaException.class);
+    }
+}
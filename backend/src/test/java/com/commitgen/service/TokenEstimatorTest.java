@@ -0,0 +1,78 @@
+package com.commitgen.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenEstimatorTest {
+
+    private final TokenEstimator estimator = new TokenEstimator();
+
+    @Test
+    @DisplayName("texto vazio ou null deve custar zero tokens")
+    void shouldReturnZeroForEmptyText() {
+        assertThat(estimator.estimate(null)).isZero();
+        assertThat(estimator.estimate("")).isZero();
+    }
+
+    @Test
+    @DisplayName("palavras curtas custam um token e identificadores longos são quebrados")
+    void shouldSplitLongIdentifiers() {
+        assertThat(estimator.estimate("add user login")).isEqualTo(3);
+        assertThat(estimator.estimate("handleUserRegistration")).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("pontuação, quebras de linha e emoji devem custar mais")
+    void shouldChargePunctuationAndEmoji() {
+        assertThat(estimator.estimate("feat(auth): x;\n")).isEqualTo(8);
+        assertThat(estimator.estimate("✨")).isEqualTo(2);
+        assertThat(estimator.estimate("🐛")).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("estimativa deve ficar próxima do tokenizer real para um diff típico")
+    void shouldApproximateTypicalDiff() {
+        // ~60 tokens no tokenizer do Llama 3
+        String diff = """
+                diff --git a/src/Auth.java b/src/Auth.java
+                @@ public class Auth {
+                +    if (token == null) {
+                +        throw new IllegalArgumentException("token");
+                +    }
+                """;
+
+        assertThat(estimator.estimate(diff)).isBetween(50, 90);
+    }
+
+    @Test
+    @DisplayName("max_tokens deve crescer com quantity e com o limite de caracteres")
+    void shouldSizeCompletionTokens() {
+        int simpleOne = estimator.maxCompletionTokens(1, 50);
+        int conventionalFive = estimator.maxCompletionTokens(5, 72);
+
+        assertThat(simpleOne).isEqualTo(44);
+        assertThat(conventionalFive).isEqualTo(198);
+        assertThat(estimator.maxCompletionTokens(3, 72)).isBetween(simpleOne, conventionalFive);
+    }
+
+    @Test
+    @DisplayName("max_tokens do JSON mode deve reservar a estrutura de cada sugestão")
+    void shouldSizeJsonCompletionTokens() {
+        assertThat(estimator.maxJsonCompletionTokens(5, 72)).isEqualTo(328);
+        assertThat(estimator.maxJsonCompletionTokens(1, 50)).isGreaterThan(estimator.maxCompletionTokens(1, 50));
+    }
+
+    @Test
+    @DisplayName("deve acumular estimado vs. real")
+    void shouldAccumulateUsage() {
+        estimator.recordUsage(100, 80, 150, 60);
+        estimator.recordUsage(100, 120, 150, 90);
+
+        TokenEstimator.UsageStats stats = estimator.getStats();
+        assertThat(stats.samples()).isEqualTo(2);
+        assertThat(stats.promptRatio()).isEqualTo(1.0);
+        assertThat(stats.completionUtilization()).isEqualTo(0.5);
+    }
+}
@@ -0,0 +1,173 @@
+package com.commitgen.service;
+
+import com.commitgen.exception.GroqApiException;
+import com.commitgen.exception.UpstreamRejectedException;
+import com.commitgen.exception.UpstreamUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class UpstreamRetryTest {
+
+    private static final String URL = "https://api.groq.com/openai/v1/chat/completions";
+    private static final String OK_BODY = """
+            {"choices": [{"message": {"content": "1. feat: add endpoint"}}]}
+            """;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private MockRestServiceServer server;
+    private GroqApiService service;
+
+    @BeforeEach
+    void setUp() {
+        RestClient.Builder builder = RestClient.builder().baseUrl("https://api.groq.com/openai/v1");
+        server = MockRestServiceServer.bindTo(builder).ignoreExpectOrder(false).build();
+        GenerationMetrics metrics = new GenerationMetrics(registry);
+        UpstreamRetry retry = new UpstreamRetry(3, Duration.ofMillis(10), Duration.ofMillis(50),
+                Duration.ofSeconds(5), Duration.ofMillis(500), metrics);
+        service = new GroqApiService(LlmRouter.single(new LlmEndpoint("groq", null, builder.build())),
+                new TokenEstimator(), RequestHedger.disabled(), AdaptiveConcurrencyLimiter.unlimited(), retry,
+                metrics);
+        ReflectionTestUtils.setField(service, "model", "llama-3.3-70b-versatile");
+    }
+
+    @Test
+    @DisplayName("deve repetir 429 respeitando retry-after e depois ter sucesso")
+    void shouldRetryTooManyRequests() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.RETRY_AFTER, "0.05");
+        server.expect(once(), requestTo(URL)).andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(headers));
+        server.expect(once(), requestTo(URL)).andRespond(withSuccess(OK_BODY, MediaType.APPLICATION_JSON));
+
+        long start = System.nanoTime();
+        assertThat(service.chat("sys", "user").content()).isEqualTo("1. feat: add endpoint");
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(50_000_000L);
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("429 que esgota as tentativas deve virar QUOTA_EXHAUSTED com a resposta como causa")
+    void shouldMapExhaustedTooManyRequestsToQuotaExhausted() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.RETRY_AFTER, "0.01");
+        server.expect(times(3), requestTo(URL)).andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(headers));
+
+        assertThatThrownBy(() -> service.chat("sys", "user"))
+                .isInstanceOf(UpstreamUnavailableException.class)
+                .hasCauseInstanceOf(RestClientResponseException.class)
+                .extracting(e -> ((UpstreamUnavailableException) e).getReason())
+                .isEqualTo(UpstreamUnavailableException.Reason.QUOTA_EXHAUSTED);
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("não deve esperar um retry que passaria do prazo da requisição")
+    void shouldRespectRequestDeadline() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.RETRY_AFTER, "1");
+        server.expect(once(), requestTo(URL)).andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(headers));
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> service.chat("sys", "user", 100, false, start + 500_000_000L))
+                .isInstanceOf(UpstreamUnavailableException.class)
+                .extracting(e -> ((UpstreamUnavailableException) e).getRetryAfterSeconds())
+                .isEqualTo(1L);
+
+        assertThat(System.nanoTime() - start).isLessThan(500_000_000L);
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("deve repetir 5xx com backoff até max-attempts")
+    void shouldRetryServerErrorsUpToMaxAttempts() {
+        server.expect(times(3), requestTo(URL)).andRespond(withStatus(HttpStatus.BAD_GATEWAY));
+
+        assertThatThrownBy(() -> service.chat("sys", "user"))
+                .isInstanceOf(GroqApiException.class)
+                .hasMessageContaining("Failed to call GroqCloud API");
+        server.verify();
+        assertThat(registry.get("commitgen.upstream.errors").tag("type", "http_5xx").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("não deve repetir erros 4xx que não sejam 429")
+    void shouldNotRetryClientErrors() {
+        server.expect(once(), requestTo(URL)).andRespond(withStatus(HttpStatus.BAD_REQUEST));
+
+        assertThatThrownBy(() -> service.chat("sys", "user"))
+                .isInstanceOf(UpstreamRejectedException.class)
+                .extracting(e -> ((UpstreamRejectedException) e).getStatus())
+                .isEqualTo(400);
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("cota esgotada por muito tempo deve recusar sem chamar o upstream")
+    void shouldRejectWhenQuotaExhausted() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-remaining-requests", "0");
+        headers.add("x-ratelimit-reset-requests", "2m59.56s");
+        server.expect(once(), requestTo(URL))
+                .andRespond(withSuccess(OK_BODY, MediaType.APPLICATION_JSON).headers(headers));
+
+        service.chat("sys", "first");
+
+        assertThatThrownBy(() -> service.chat("sys", "second"))
+                .isInstanceOf(UpstreamUnavailableException.class)
+                .satisfies(e -> {
+                    UpstreamUnavailableException unavailable = (UpstreamUnavailableException) e;
+                    assertThat(unavailable.getReason()).isEqualTo(UpstreamUnavailableException.Reason.QUOTA_EXHAUSTED);
+                    assertThat(unavailable.getRetryAfterSeconds()).isBetween(170L, 180L);
+                });
+        server.verify();
+        assertThat(registry.get("commitgen.upstream.errors").tag("type", "quota_exhausted").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("cota que volta logo deve enfileirar a chamada em vez de falhar")
+    void shouldQueueUntilQuotaResets() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-remaining-tokens", "10");
+        headers.add("x-ratelimit-reset-tokens", "100ms");
+        server.expect(times(2), requestTo(URL))
+                .andRespond(withSuccess(OK_BODY, MediaType.APPLICATION_JSON).headers(headers));
+
+        service.chat("sys", "first");
+        long start = System.nanoTime();
+        service.chat("sys", "second");
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(80_000_000L);
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("deve interpretar as durações dos headers da GroqCloud")
+    void shouldParseGroqDurations() {
+        assertThat(UpstreamQuota.parseDurationNanos("2m59.56s")).isEqualTo(179_560_000_000L);
+        assertThat(UpstreamQuota.parseDurationNanos("7.66s")).isEqualTo(7_660_000_000L);
+        assertThat(UpstreamQuota.parseDurationNanos("120ms")).isEqualTo(120_000_000L);
+        assertThat(UpstreamQuota.parseDurationNanos("1h2m")).isEqualTo(3_720_000_000_000L);
+        assertThat(UpstreamQuota.parseDurationNanos("soon")).isNull();
+        assertThat(UpstreamQuota.parseRetryAfterNanos("2")).isEqualTo(2_000_000_000L);
+    }
+}
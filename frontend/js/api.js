@@ -31,7 +31,9 @@ function extractRateLimitHeaders(response) {
 export async function generateCommitMessages(diff, style, language, quantity = 3) {
     const response = await fetch(`${API_BASE}/generate`, {
         method: 'POST',
-        headers: { 'Content-Type': 'application/json' },
+        headers: {
+            'Content-Type': 'application/json',
+        },
         body: JSON.stringify({ diff, style, language, quantity }),
     });
 